@@ -19,7 +19,10 @@ import net.sf.jabref.export.layout.format.CreateDocBookAuthors;
 import net.sf.jabref.util.Util;
 
 import java.util.Vector;
-import java.util.WeakHashMap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
 /**
  * This is an immutable class representing information of either <CODE>author</CODE>
@@ -213,7 +216,19 @@ public class AuthorList {
         AuthorList.tex_names.add("j");
     }
 
-    private static final WeakHashMap<String, AuthorList> authorCache = new WeakHashMap<String, AuthorList>();
+    /**
+     * The maximum number of parsed author strings kept in the cache.
+     */
+    private static final int CACHE_SIZE = 20000;
+
+    /**
+     * Parsed author strings, shared by all threads. The cache is bounded, dropping
+     * the least recently used lists first, so that its memory does not grow with the
+     * number of distinct author strings ever parsed. Each list keeps its formatted
+     * variants itself.
+     */
+    private static final Cache<String, AuthorList> authorCache = CacheBuilder.newBuilder()
+            .maximumSize(AuthorList.CACHE_SIZE).recordStats().build();
 
 
     /**
@@ -253,7 +268,9 @@ public class AuthorList {
      * @return An AuthorList object representing the given authors.
      */
     public static AuthorList getAuthorList(String authors) {
-        AuthorList authorList = AuthorList.authorCache.get(authors);
+        // Parsing needs no lock. Two threads may parse the same string at once,
+        // which yields equal lists.
+        AuthorList authorList = AuthorList.authorCache.getIfPresent(authors);
         if (authorList == null) {
             authorList = new AuthorList(authors);
             AuthorList.authorCache.put(authors, authorList);
@@ -261,6 +278,14 @@ public class AuthorList {
         return authorList;
     }
 
+    /**
+     * Returns the hit, miss and eviction counts of the cache used by
+     * getAuthorList() so far.
+     */
+    public static CacheStats getCacheStats() {
+        return AuthorList.authorCache.stats();
+    }
+
     /**
      * This is a convenience method for getAuthorsFirstFirst()
      * 
@@ -97,7 +97,7 @@ import net.sf.jabref.imports.BibtexParser;
 import net.sf.jabref.imports.SPIRESFetcher;
 import net.sf.jabref.journals.AbbreviateAction;
 import net.sf.jabref.journals.UnabbreviateAction;
-import net.sf.jabref.labelPattern.LabelPatternUtil;
+import net.sf.jabref.labelPattern.KeyGenerator;
 import net.sf.jabref.labelPattern.SearchFixDuplicateLabels;
 import net.sf.jabref.search.matchers.NoSearchMatcher;
 import net.sf.jabref.search.matchers.SearchMatcher;
@@ -902,25 +902,23 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
                     }
                 }
 
-                HashMap<BibtexEntry, Object> oldvals = new HashMap<BibtexEntry, Object>();
-                // Iterate again, removing already set keys. This is skipped if overwriting
-                // is disabled, since all entries with keys set will have been removed.
-                if (!JabRefPreferences.getInstance().isAvoidOverwritingKey()) {
-                    for (BibtexEntry entry : entries) {
-                        bes = entry;
-                        // Store the old value:
-                        oldvals.put(bes, bes.getField(BibtexFields.KEY_FIELD));
-                        database.setCiteKeyForEntry(bes.getId(), null);
-                    }
+                // Generate all keys before setting any of them. The generator treats
+                // the keys of the selected entries as removed, so they can be reused.
+                List<String> keys;
+                try {
+                    keys = new KeyGenerator(metaData, database).generateKeys(entries);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelled = true;
+                    return;
                 }
 
                 // Finally, set the new keys:
-                for (BibtexEntry entry : entries) {
-                    bes = entry;
-                    bes = LabelPatternUtil.makeLabel(metaData, database, bes);
-                    ce.addEdit(new UndoableKeyChange
-                            (database, bes.getId(), (String) oldvals.get(bes),
-                                    bes.getField(BibtexFields.KEY_FIELD)));
+                for (int i = 0; i < entries.size(); i++) {
+                    bes = entries.get(i);
+                    String oldKey = bes.getCiteKey();
+                    database.setCiteKeyForEntry(bes.getId(), keys.get(i));
+                    ce.addEdit(new UndoableKeyChange(database, bes.getId(), oldKey, keys.get(i)));
                 }
                 ce.end();
                 undoManager.addEdit(ce);
@@ -1217,7 +1215,7 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
                                     Map<BibtexEntry, List<File>> result;
                                     if (Globals.prefs.isUseRegExpSearch()) {
                                         String regExp = Globals.prefs.get(JabRefPreferences.REG_EXP_SEARCH_EXPRESSION_KEY);
-                                        result = RegExpFileSearch.findFilesForSet(entries, extensions, dirs, regExp);
+                                        result = RegExpFileSearch.findFilesForSet(entries, database, extensions, dirs, regExp);
                                     } else {
                                         result = Util.findAssociatedFiles(entries, extensions, dirs);
                                     }
@@ -2034,8 +2032,13 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
         groupFilterList = new FilterList<BibtexEntry>(eventList.getTheList(), NoSearchMatcher.INSTANCE);
         searchFilterList = new FilterList<BibtexEntry>(groupFilterList, NoSearchMatcher.INSTANCE);
         //final SortedList sortedList = new SortedList(searchFilterList, null);
+        if (tableFormat != null) {
+            // the table is set up again on preference changes; drop the old cell cache
+            database.removeDatabaseChangeListener(tableFormat);
+        }
         tableFormat = new MainTableFormat(this);
         tableFormat.updateTableFormat();
+        database.addDatabaseChangeListener(tableFormat);
         //EventTableModel tableModel = new EventTableModel(sortedList, tableFormat);
         mainTable = new MainTable(tableFormat, searchFilterList, frame, this);
 
@@ -2805,20 +2808,29 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
      */
     public void autoGenerateKeysBeforeSaving() {
         if (Globals.prefs.isGenerateKeysBeforeSaving()) {
-            NamedCompound ce = new NamedCompound(Globals.lang("autogenerate keys"));
-            boolean any = false;
-
+            List<BibtexEntry> entries = new ArrayList<BibtexEntry>();
             for (BibtexEntry bes : database.getEntries()) {
                 String oldKey = bes.getCiteKey();
                 if ((oldKey == null) || (oldKey.isEmpty())) {
-                    LabelPatternUtil.makeLabel(metaData, database, bes);
-                    ce.addEdit(new UndoableKeyChange(database, bes.getId(), null,
-                            bes.getField(BibtexFields.KEY_FIELD)));
-                    any = true;
+                    entries.add(bes);
                 }
             }
+            List<String> keys;
+            try {
+                keys = new KeyGenerator(metaData, database).generateKeys(entries);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            NamedCompound ce = new NamedCompound(Globals.lang("autogenerate keys"));
+            for (int i = 0; i < entries.size(); i++) {
+                BibtexEntry bes = entries.get(i);
+                database.setCiteKeyForEntry(bes.getId(), keys.get(i));
+                ce.addEdit(new UndoableKeyChange(database, bes.getId(), null, keys.get(i)));
+            }
             // Store undo information, if any:
-            if (any) {
+            if (!entries.isEmpty()) {
                 ce.end();
                 undoManager.addEdit(ce);
             }
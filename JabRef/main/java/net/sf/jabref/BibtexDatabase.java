@@ -35,6 +35,8 @@ Modified for use in JabRef
 
 package net.sf.jabref;
 
+import net.sf.jabref.groups.GroupMembershipIndex;
+import net.sf.jabref.search.SearchIndex;
 import net.sf.jabref.util.MonthUtil;
 import net.sf.jabref.util.Util;
 
@@ -50,6 +52,7 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import javax.swing.JOptionPane;
 
@@ -64,9 +67,17 @@ public class BibtexDatabase {
 
     private final HashMap<String, BibtexString> _strings = new HashMap<String, BibtexString>();
 
-    private final Set<DatabaseChangeListener> changeListeners = new HashSet<DatabaseChangeListener>();
+    // Indexes register themselves from the threads that first use them, while events
+    // are fired on the event dispatch thread:
+    private final Set<DatabaseChangeListener> changeListeners = new CopyOnWriteArraySet<DatabaseChangeListener>();
 
     private boolean followCrossrefs = true;
+
+    private SearchIndex searchIndex = null;
+
+    private DuplicateIndex duplicateIndex = null;
+
+    private GroupMembershipIndex groupMembershipIndex = null;
     
     private static final Log LOGGER = LogFactory.getLog(BibtexDatabase.class);
 
@@ -176,6 +187,39 @@ public class BibtexDatabase {
         return _entries.values();
     }
 
+    /**
+     * Returns the word index searches use to narrow down the entries to check. Most
+     * databases are never searched, so the index is only built when first asked for.
+     */
+    public synchronized SearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new SearchIndex(this);
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Returns the blocking key index that DuplicateCheck.containsLikelyDuplicate()
+     * takes its candidates from. Creating it computes the keys of all entries.
+     */
+    public synchronized DuplicateIndex getDuplicateIndex() {
+        if (duplicateIndex == null) {
+            duplicateIndex = new DuplicateIndex(this);
+        }
+        return duplicateIndex;
+    }
+
+    /**
+     * Returns the bit sets of group members the group selector works with. Entries get
+     * their ordinals here; group members are only computed when a group asks for them.
+     */
+    public synchronized GroupMembershipIndex getGroupMembershipIndex() {
+        if (groupMembershipIndex == null) {
+            groupMembershipIndex = new GroupMembershipIndex(this);
+        }
+        return groupMembershipIndex;
+    }
+
     /**
      * Returns the entry with the given bibtex key.
      */
@@ -36,6 +36,7 @@ import java.beans.VetoableChangeListener;
 import java.beans.VetoableChangeSupport;
 import java.io.IOException;
 import java.io.Writer;
+import java.lang.ref.SoftReference;
 import java.text.DateFormat;
 import java.text.FieldPosition;
 import java.text.ParseException;
@@ -44,6 +45,7 @@ import java.text.SimpleDateFormat;
 import java.util.*;
 
 import net.sf.jabref.export.FieldFormatter;
+import net.sf.jabref.export.layout.format.RemoveLatexCommands;
 import net.sf.jabref.util.MonthUtil;
 
 public class BibtexEntry
@@ -87,6 +89,18 @@ public class BibtexEntry
     // Search and grouping status is stored in boolean fields for quick reference:
     private boolean searchHit, groupHit;
 
+    private static final RemoveLatexCommands REMOVE_LATEX_COMMANDS = new RemoveLatexCommands();
+
+    // Normalized field contents, computed on demand and dropped whenever a field changes.
+    // The soft reference lets the garbage collector reclaim them when memory runs low:
+    private volatile SoftReference<NormalizedFields> normalizedFields;
+
+    // The text a BibtexEntryWriter last serialized this entry to, dropped whenever the
+    // entry changes. The change count tells writers whether the entry changed while
+    // they were serializing it:
+    private volatile SoftReference<SerializedText> serializedText;
+    private int changeCount;
+
 
     public BibtexEntry() {
         this(IdGenerator.next());
@@ -151,6 +165,14 @@ public class BibtexEntry
         return new TreeSet<String>(_fields.keySet());
     }
 
+    /**
+     * Returns a read-only view of the names of all fields that are set for this
+     * entry. Unlike getAllFields(), the names are neither copied nor sorted.
+     */
+    public Set<String> getFieldNames() {
+        return Collections.unmodifiableSet(_fields.keySet());
+    }
+
     /**
      * Returns a string describing the required fields for this entry.
      */
@@ -214,13 +236,17 @@ public class BibtexEntry
      * BibtexEntryTypes.TYPELESS).
      */
     public boolean updateType() {
+        BibtexEntryType oldType = _type;
         BibtexEntryType newType = BibtexEntryType.getType(_type.getName());
-        if (newType != null) {
-            _type = newType;
-            return true;
+        _type = newType != null ? newType : BibtexEntryTypes.TYPELESS;
+        try {
+            // The name usually stays the same, so the type objects are passed to make
+            // sure listeners such as the search indexes hear about the new definition:
+            firePropertyChangedEvent(GUIGlobals.TYPE_HEADER, oldType, _type);
+        } catch (PropertyVetoException pve) {
+            pve.printStackTrace();
         }
-        _type = BibtexEntryTypes.TYPELESS;
-        return false;
+        return newType != null;
     }
 
     /**
@@ -259,6 +285,130 @@ public class BibtexEntry
         return _fields.get(name);
     }
 
+    /**
+     * Returns the lower case contents of the given field, or null if it is not set.
+     * The result is cached until the entry's fields change.
+     */
+    public String getLowerCaseField(String name) {
+        NormalizedFields normalized = getNormalizedFields();
+        synchronized (normalized) {
+            String result = normalized.lowerCase.get(name);
+            if (result == null) {
+                String value = _fields.get(name);
+                if (value == null) {
+                    return null;
+                }
+                result = value.toLowerCase();
+                normalized.lowerCase.put(name, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns the contents of the given field with all LaTeX commands removed,
+     * or null if it is not set. The result is cached until the entry's fields change.
+     *
+     * @param lowerCase true to get the result in lower case.
+     */
+    public String getLatexFreeField(String name, boolean lowerCase) {
+        NormalizedFields normalized = getNormalizedFields();
+        synchronized (normalized) {
+            Map<String, String> cache = lowerCase ? normalized.latexFreeLowerCase : normalized.latexFree;
+            String result = cache.get(name);
+            if (result == null) {
+                String value = lowerCase ? getLatexFreeField(name, false) : _fields.get(name);
+                if (value == null) {
+                    return null;
+                }
+                result = lowerCase ? value.toLowerCase() : BibtexEntry.REMOVE_LATEX_COMMANDS.format(value);
+                cache.put(name, result);
+            }
+            return result;
+        }
+    }
+
+    private NormalizedFields getNormalizedFields() {
+        SoftReference<NormalizedFields> ref = normalizedFields;
+        NormalizedFields normalized = ref == null ? null : ref.get();
+        if (normalized == null) {
+            normalized = new NormalizedFields();
+            normalizedFields = new SoftReference<NormalizedFields>(normalized);
+        }
+        return normalized;
+    }
+
+    private static class NormalizedFields {
+
+        final Map<String, String> lowerCase = new HashMap<String, String>();
+        final Map<String, String> latexFree = new HashMap<String, String>();
+        final Map<String, String> latexFreeLowerCase = new HashMap<String, String>();
+        final Map<String, Object> sortKeys = new HashMap<String, Object>();
+    }
+
+    /**
+     * Returns the key the given comparator sorts this entry by. The key is
+     * cached until the entry's fields change.
+     */
+    Object getSortKey(FieldComparator comparator) {
+        NormalizedFields normalized = getNormalizedFields();
+        synchronized (normalized) {
+            Object result = normalized.sortKeys.get(comparator.getSortKeyName());
+            if (result == null) {
+                result = comparator.computeSortKey(this);
+                normalized.sortKeys.put(comparator.getSortKeyName(), result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns the text this entry was last serialized to by a BibtexEntryWriter with
+     * the given settings, or null if the entry has changed since.
+     */
+    String getSerializedText(String settings) {
+        SoftReference<SerializedText> ref = serializedText;
+        SerializedText serialized = ref == null ? null : ref.get();
+        if ((serialized == null) || !serialized.settings.equals(settings)) {
+            return null;
+        }
+        return serialized.text;
+    }
+
+    /**
+     * Returns the number of changes made to this entry so far.
+     */
+    synchronized int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Keeps the text this entry was serialized to, unless the entry has changed since
+     * the given change count was taken.
+     */
+    synchronized void setSerializedText(String settings, String text, int serializedChangeCount) {
+        if (changeCount == serializedChangeCount) {
+            serializedText = new SoftReference<SerializedText>(new SerializedText(settings, text));
+        }
+    }
+
+    private synchronized void dropSerializedText() {
+        changeCount++;
+        serializedText = null;
+    }
+
+    private static class SerializedText {
+
+        final String settings;
+        final String text;
+
+
+        SerializedText(String settings, String text) {
+            this.settings = settings;
+            this.text = text;
+        }
+    }
+
     /**
      * Returns the contents of the given field, its alias or null if both are
      * not set.
@@ -389,6 +539,8 @@ public class BibtexEntry
      */
     public void setField(Map<String, String> fields) {
         _fields.putAll(fields);
+        normalizedFields = null;
+        dropSerializedText();
     }
 
     /**
@@ -415,6 +567,8 @@ public class BibtexEntry
             // Since we have already made the change, we must undo it since
             // the change was rejected:
             _fields.put(name, oldValue);
+            normalizedFields = null;
+            dropSerializedText();
             throw new IllegalArgumentException("Change rejected: " + pve);
         }
 
@@ -475,6 +629,9 @@ public class BibtexEntry
     private void firePropertyChangedEvent(String fieldName, Object oldValue,
             Object newValue) throws PropertyVetoException
     {
+        // Listeners may already ask for the normalized contents of the changed field:
+        normalizedFields = null;
+        dropSerializedText();
         _changeSupport.fireVetoableChange(new PropertyChangeEvent(this,
                 fieldName, oldValue, newValue));
     }
@@ -1,12 +1,22 @@
 package net.sf.jabref;
 
 import net.sf.jabref.export.FieldFormatter;
+import net.sf.jabref.export.LatexFieldFormatter;
 import net.sf.jabref.util.StringUtil;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.*;
 
+/**
+ * Writes entries in BibTeX format.
+ *
+ * Writers formatting with a LatexFieldFormatter keep the text of each written entry
+ * in the entry, until it changes. Writing an unchanged entry again with the same
+ * settings then just repeats that text. Like its formatter, a writer must only be
+ * used by one thread at a time.
+ */
 public class BibtexEntryWriter {
 
     /**
@@ -56,14 +66,56 @@ public class BibtexEntryWriter {
     private final boolean writeFieldAddSpaces = Globals.prefs.isWriteFieldAddSpaces();
     private final boolean includeEmptyFields = Globals.prefs.isIncludeEmptyFields();
     private final int writeFieldSortStyle = Globals.prefs.getWritefieldSortStyle();
+    private final String userDefinedOrder = JabRefPreferences.getWritefieldUserdefinedOrder();
+    /**
+     * All settings the written text depends on, or null if the text is not to be kept.
+     */
+    private final String settings;
 
 
     public BibtexEntryWriter(FieldFormatter fieldFormatter, boolean write) {
         this.fieldFormatter = fieldFormatter;
         this.write = write;
+        if (fieldFormatter instanceof LatexFieldFormatter) {
+            settings = ((LatexFieldFormatter) fieldFormatter).getSettings() + ',' + write + ','
+                    + writeFieldCameCaseName + ',' + writeFieldAddSpaces + ',' + includeEmptyFields + ','
+                    + writeFieldSortStyle + ',' + userDefinedOrder;
+        } else {
+            settings = null;
+        }
     }
 
     public void write(BibtexEntry entry, Writer out) throws IOException {
+        out.write(serialize(entry));
+    }
+
+    /**
+     * Returns the text the given entry is written as, reusing the text of its last
+     * serialization if it has not changed since.
+     */
+    public String serialize(BibtexEntry entry) throws IOException {
+        if (settings == null) {
+            return format(entry);
+        }
+        String text = entry.getSerializedText(settings);
+        if (text == null) {
+            int changeCount = entry.getChangeCount();
+            text = format(entry);
+            entry.setSerializedText(settings, text, changeCount);
+        }
+        return text;
+    }
+
+    /**
+     * Tells whether the given entry has to be formatted to be written, as it has
+     * changed since its last serialization.
+     */
+    public boolean needsFormatting(BibtexEntry entry) {
+        return (settings == null) || (entry.getSerializedText(settings) == null);
+    }
+
+    private String format(BibtexEntry entry) throws IOException {
+        StringWriter out = new StringWriter(256);
         switch (writeFieldSortStyle) {
         case 0:
             writeNewStyle(entry, out);
@@ -75,6 +127,7 @@ public class BibtexEntryWriter {
             writeUserDefinedOrder(entry, out);
             break;
         }
+        return out.toString();
     }
 
     /**
@@ -15,8 +15,20 @@
 */
 package net.sf.jabref;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * This class contains utility method for duplicate checking of entries.
@@ -46,6 +58,36 @@ public class DuplicateCheck {
         DuplicateCheck.fieldWeights.put("journal", 2.);
     }
 
+    // The title words of an entry are summarized by MinHash values, which are combined
+    // into bands. Titles sharing about half of their words very likely share a band:
+    private static final int TITLE_BANDS = 6;
+    private static final int TITLE_ROWS = 2;
+
+    private static final Pattern NON_WORD_PATTERN = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern YEAR_PATTERN = Pattern.compile("\\d{4}");
+
+    /**
+     * The fields getBlockingKeys() reads, besides the entry type.
+     */
+    static final String[] BLOCKING_FIELDS = {"doi", "author", "editor", "year", "title"};
+
+
+    /**
+     * Receives the duplicates found by findDuplicates().
+     */
+    public interface DuplicateHandler {
+
+        /**
+         * Called for each pair of duplicates, possibly from several threads at once.
+         */
+        void duplicateFound(BibtexEntry one, BibtexEntry two);
+
+        /**
+         * @return true if the search should stop as soon as possible.
+         */
+        boolean isCancelled();
+    }
+
 
     /**
      * Checks if the two entries represent the same publication.
@@ -157,8 +199,8 @@ public class DuplicateCheck {
             // We do not attempt to harmonize abbreviation state of the journal names,
             // but we remove periods from the names in case they are abbreviated with
             // and without dots:
-            s1 = s1.replaceAll("\\.", "").toLowerCase();
-            s2 = s2.replaceAll("\\.", "").toLowerCase();
+            s1 = one.getLowerCaseField(field).replace(".", "");
+            s2 = two.getLowerCaseField(field).replace(".", "");
             //System.out.println(s1+" :: "+s2);
             double similarity = DuplicateCheck.correlateByWords(s1, s2, true);
             if (similarity > 0.8) {
@@ -167,8 +209,8 @@ public class DuplicateCheck {
                 return NOT_EQUAL;
             }
         } else {
-            s1 = s1.toLowerCase();
-            s2 = s2.toLowerCase();
+            s1 = one.getLowerCaseField(field);
+            s2 = two.getLowerCaseField(field);
             double similarity = DuplicateCheck.correlateByWords(s1, s2, false);
             if (similarity > 0.8) {
                 return EQUAL;
@@ -223,6 +265,273 @@ public class DuplicateCheck {
         return null; // No duplicate found.
     }
 
+    /**
+     * Like containsDuplicate(), but only compares the given entry with the entries
+     * sharing a blocking key with it (see getBlockingKeys()). This is much faster on
+     * large databases, but in rare cases misses a duplicate containsDuplicate() finds.
+     *
+     * @param database The database to search.
+     * @param entry    The entry of which we are looking for duplicates.
+     * @return The first duplicate entry found. null if no duplicates are found.
+     */
+    public static BibtexEntry containsLikelyDuplicate(BibtexDatabase database, BibtexEntry entry) {
+        for (BibtexEntry other : database.getDuplicateIndex().getCandidates(entry)) {
+            if (DuplicateCheck.isDuplicate(entry, other)) {
+                return other; // Duplicate found.
+            }
+        }
+        return null; // No duplicate found.
+    }
+
+    /**
+     * Looks up duplicates in the given database for all given entries at once,
+     * spreading the work across the available processors. Like
+     * containsLikelyDuplicate(), this only looks at the entries sharing a blocking
+     * key, so it suits flagging possible duplicates in bulk rather than deciding
+     * on a single entry.
+     *
+     * @param database The database to search.
+     * @param entries  The entries of which we are looking for duplicates, e.g. those of an import.
+     * @return For each entry with a duplicate, the duplicate that containsLikelyDuplicate() would return.
+     */
+    public static Map<BibtexEntry, BibtexEntry> containsDuplicates(final BibtexDatabase database,
+            Collection<BibtexEntry> entries) throws InterruptedException {
+        final Map<BibtexEntry, BibtexEntry> result = new IdentityHashMap<BibtexEntry, BibtexEntry>();
+        // Build the index before the tasks start to use it:
+        database.getDuplicateIndex();
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final BibtexEntry entry : entries) {
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    BibtexEntry duplicate = DuplicateCheck.containsLikelyDuplicate(database, entry);
+                    if (duplicate != null) {
+                        synchronized (result) {
+                            result.put(entry, duplicate);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        DuplicateCheck.invokeAll(tasks);
+        return result;
+    }
+
+    /**
+     * Finds the pairs of duplicates among the given entries, as per isDuplicate().
+     *
+     * Instead of comparing all pairs, only entries sharing a blocking key are
+     * compared (see getBlockingKeys()), and the comparisons are spread across
+     * the available processors. Pairs are passed to the handler as soon as they
+     * are found, with the entry coming first in the array as the first entry.
+     *
+     * @param entries The entries to search.
+     * @param handler Receives the pairs of duplicates.
+     */
+    public static void findDuplicates(final BibtexEntry[] entries, final DuplicateHandler handler)
+            throws InterruptedException {
+        // Collect the entries sharing each blocking key, in ascending order:
+        HashMap<String, Integer> blockNumbers = new HashMap<String, Integer>();
+        List<List<Integer>> blockLists = new ArrayList<List<Integer>>();
+        final int[][] entryBlocks = new int[entries.length][];
+        for (int i = 0; i < entries.length; i++) {
+            Set<String> keys = DuplicateCheck.getBlockingKeys(entries[i]);
+            entryBlocks[i] = new int[keys.size()];
+            int k = 0;
+            for (String key : keys) {
+                Integer block = blockNumbers.get(key);
+                if (block == null) {
+                    block = blockLists.size();
+                    blockNumbers.put(key, block);
+                    blockLists.add(new ArrayList<Integer>());
+                }
+                blockLists.get(block).add(i);
+                entryBlocks[i][k++] = block;
+            }
+        }
+        final int[][] blocks = new int[blockLists.size()][];
+        for (int b = 0; b < blocks.length; b++) {
+            List<Integer> members = blockLists.get(b);
+            blocks[b] = new int[members.size()];
+            for (int m = 0; m < blocks[b].length; m++) {
+                blocks[b][m] = members.get(m);
+            }
+        }
+
+        // Each task compares the entries of one stripe with all later entries sharing a block.
+        // A pair sharing several blocks is only compared in the first of them that the first
+        // entry belongs to:
+        final int stripes = 4 * Runtime.getRuntime().availableProcessors();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(stripes);
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            final int first = stripe;
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    for (int i = first; (i < entries.length) && !handler.isCancelled(); i += stripes) {
+                        int[] own = entryBlocks[i];
+                        for (int k = 0; k < own.length; k++) {
+                            int[] members = blocks[own[k]];
+                            // members are ascending, so start after entry i:
+                            for (int m = Arrays.binarySearch(members, i) + 1; m < members.length; m++) {
+                                int j = members[m];
+                                if (DuplicateCheck.isInAnyBlock(j, own, k, blocks)) {
+                                    continue;
+                                }
+                                if (DuplicateCheck.isDuplicate(entries[i], entries[j])) {
+                                    handler.duplicateFound(entries[i], entries[j]);
+                                }
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        DuplicateCheck.invokeAll(tasks);
+    }
+
+    /**
+     * Tells whether the given entry belongs to one of the first count blocks of the list.
+     */
+    private static boolean isInAnyBlock(int entry, int[] blockList, int count, int[][] blocks) {
+        for (int k = 0; k < count; k++) {
+            if (Arrays.binarySearch(blocks[blockList[k]], entry) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void invokeAll(List<Callable<Void>> tasks) throws InterruptedException {
+        try {
+            for (Future<Void> future : JabRefExecutorService.INSTANCE.invokeAllComputations(tasks)) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Returns the blocking keys of the given entry. Two entries that are duplicates
+     * as per isDuplicate() share at least one key in all but rare cases: Both have
+     * the same type, and they have the same DOI, the same first author and year, or
+     * similar titles.
+     */
+    public static Set<String> getBlockingKeys(BibtexEntry entry) {
+        // Keep BLOCKING_FIELDS in line with the fields read here.
+        Set<String> keys = new HashSet<String>();
+        String prefix = entry.getType().getName() + ':';
+
+        String doi = entry.getLowerCaseField("doi");
+        if (doi != null) {
+            doi = doi.trim();
+            int start = doi.indexOf("10.");
+            if (start >= 0) {
+                doi = doi.substring(start);
+            }
+            if (!doi.isEmpty()) {
+                keys.add(prefix + "doi:" + doi);
+            }
+        }
+
+        String authors = entry.getField("author");
+        if (authors == null) {
+            authors = entry.getField("editor");
+        }
+        if (authors != null) {
+            AuthorList authorList = AuthorList.getAuthorList(authors);
+            String firstAuthor = authorList.size() > 0 ?
+                    DuplicateCheck.normalizeWord(authorList.getAuthor(0).getLastOnly()) : "";
+            if (!firstAuthor.isEmpty()) {
+                keys.add(prefix + "author:" + firstAuthor + ':' + DuplicateCheck.getYear(entry));
+            }
+        }
+
+        String title = entry.getLatexFreeField("title", true);
+        if (title != null) {
+            String[] titleWords = DuplicateCheck.NON_WORD_PATTERN.split(title);
+            Set<String> words = new HashSet<String>();
+            for (String word : titleWords) {
+                // Short words like "of" or "the" are found in too many titles to be helpful:
+                if (word.length() >= 4) {
+                    words.add(word);
+                }
+            }
+            if (words.isEmpty()) {
+                for (String word : titleWords) {
+                    if (!word.isEmpty()) {
+                        words.add(word);
+                    }
+                }
+            }
+            if (!words.isEmpty()) {
+                for (int band = 0; band < DuplicateCheck.TITLE_BANDS; band++) {
+                    StringBuilder key = new StringBuilder(prefix).append("title").append(band);
+                    for (int row = 0; row < DuplicateCheck.TITLE_ROWS; row++) {
+                        int seed = (band * DuplicateCheck.TITLE_ROWS) + row;
+                        int min = Integer.MAX_VALUE;
+                        for (String word : words) {
+                            min = Math.min(min, DuplicateCheck.hash(word, seed));
+                        }
+                        key.append(':').append(Integer.toHexString(min));
+                    }
+                    keys.add(key.toString());
+                }
+            }
+        }
+
+        if (keys.isEmpty()) {
+            // Without any key, the entry is compared with all entries of its type that have no key either:
+            keys.add(prefix);
+        }
+        return keys;
+    }
+
+    private static String getYear(BibtexEntry entry) {
+        String year = entry.getField("year");
+        if (year == null) {
+            return "";
+        }
+        Matcher matcher = DuplicateCheck.YEAR_PATTERN.matcher(year);
+        return matcher.find() ? matcher.group() : "";
+    }
+
+    private static String normalizeWord(String word) {
+        StringBuilder sb = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One of a family of hash functions, selected by the seed.
+     */
+    private static int hash(String word, int seed) {
+        int h = word.hashCode() + (seed * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
     /**
      * Compare two strings on the basis of word-by-word correlation analysis.
      *
@@ -0,0 +1,159 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the entries of a database by their duplicate blocking keys (see
+ * DuplicateCheck.getBlockingKeys()), used to find the entries that may be
+ * duplicates of a given entry without comparing it with every entry.
+ *
+ * Computing the keys hashes every title word a dozen times, so when an entry
+ * changes, its keys are only computed again if its type or one of the fields
+ * the keys are made of has changed. Edits of notes, abstracts, file links and
+ * the like leave the index alone.
+ */
+public class DuplicateIndex implements DatabaseChangeListener {
+
+    private final Map<String, Set<BibtexEntry>> blocks = new HashMap<String, Set<BibtexEntry>>();
+
+    private final Map<BibtexEntry, Indexed> indexed = new IdentityHashMap<BibtexEntry, Indexed>();
+
+
+    /**
+     * The blocking keys of an entry, with the contents they were computed from.
+     */
+    private static class Indexed {
+
+        private final BibtexEntryType type;
+
+        private final String[] fields;
+
+        private final Set<String> keys;
+
+
+        Indexed(BibtexEntry entry) {
+            type = entry.getType();
+            fields = Indexed.getBlockingFields(entry);
+            keys = DuplicateCheck.getBlockingKeys(entry);
+        }
+
+        boolean isCurrent(BibtexEntry entry) {
+            return (type == entry.getType()) && Arrays.equals(fields, Indexed.getBlockingFields(entry));
+        }
+
+        private static String[] getBlockingFields(BibtexEntry entry) {
+            String[] result = new String[DuplicateCheck.BLOCKING_FIELDS.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = entry.getField(DuplicateCheck.BLOCKING_FIELDS[i]);
+            }
+            return result;
+        }
+    }
+
+
+    /**
+     * Indexes all entries of the given database and registers the index as
+     * listener, so that later changes are indexed as well.
+     */
+    public DuplicateIndex(BibtexDatabase database) {
+        synchronized (database) {
+            for (BibtexEntry entry : database.getEntries()) {
+                addEntry(entry);
+            }
+            database.addDatabaseChangeListener(this);
+        }
+    }
+
+    @Override
+    public synchronized void databaseChanged(DatabaseChangeEvent e) {
+        switch (e.getType()) {
+        case ADDED_ENTRY:
+            addEntry(e.getEntry());
+            break;
+        case REMOVED_ENTRY:
+            removeEntry(e.getEntry());
+            break;
+        case CHANGED_ENTRY:
+            Indexed current = indexed.get(e.getEntry());
+            if ((current != null) && !current.isCurrent(e.getEntry())) {
+                removeEntry(e.getEntry());
+                addEntry(e.getEntry());
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Returns the entries of the database sharing a blocking key with the given
+     * entry. This includes the entry itself if it belongs to the database.
+     */
+    public List<BibtexEntry> getCandidates(BibtexEntry entry) {
+        Set<String> keys = DuplicateCheck.getBlockingKeys(entry);
+        Set<BibtexEntry> candidates = new LinkedHashSet<BibtexEntry>();
+        synchronized (this) {
+            for (String key : keys) {
+                Set<BibtexEntry> block = blocks.get(key);
+                if (block != null) {
+                    candidates.addAll(block);
+                }
+            }
+        }
+        return new ArrayList<BibtexEntry>(candidates);
+    }
+
+    private void addEntry(BibtexEntry entry) {
+        if (indexed.containsKey(entry)) {
+            return;
+        }
+
+        Indexed entryIndexed = new Indexed(entry);
+        indexed.put(entry, entryIndexed);
+        for (String key : entryIndexed.keys) {
+            Set<BibtexEntry> block = blocks.get(key);
+            if (block == null) {
+                block = new LinkedHashSet<BibtexEntry>();
+                blocks.put(key, block);
+            }
+            block.add(entry);
+        }
+    }
+
+    private void removeEntry(BibtexEntry entry) {
+        Indexed entryIndexed = indexed.remove(entry);
+        if (entryIndexed == null) {
+            return;
+        }
+
+        for (String key : entryIndexed.keys) {
+            Set<BibtexEntry> block = blocks.get(key);
+            block.remove(entry);
+            if (block.isEmpty()) {
+                blocks.remove(key);
+            }
+        }
+    }
+}
@@ -146,32 +146,39 @@ public class DuplicateSearch implements Runnable {
     }
 
 
-    class SearcherRunnable implements Runnable {
+    class SearcherRunnable implements Runnable, DuplicateCheck.DuplicateHandler {
 
         private volatile boolean finished = false;
 
         @Override
         public void run() {
-            for (int i = 0; (i < (bes.length - 1)) && !finished; i++) {
-                for (int j = i + 1; (j < bes.length) && !finished; j++) {
-                    boolean eq = DuplicateCheck.isDuplicate(bes[i], bes[j]);
-
-                    // If (suspected) duplicates, add them to the duplicates vector.
-                    if (eq) {
-                        synchronized (duplicates) {
-                            duplicates.add(new BibtexEntry[] {bes[i], bes[j]});
-                            duplicates.notifyAll(); // send wake up all
-                        }
-                    }
+            try {
+                DuplicateCheck.findDuplicates(bes, this);
+            } catch (InterruptedException ignored) {
+                // Stop searching, as if cancelled.
+            } finally {
+                finished = true;
+                // if no duplicates found, the graphical thread will never wake up
+                synchronized (duplicates) {
+                    duplicates.notifyAll();
                 }
             }
-            finished = true;
-            // if no duplicates found, the graphical thread will never wake up
+        }
+
+        @Override
+        public void duplicateFound(BibtexEntry one, BibtexEntry two) {
+            // Add the (suspected) duplicates to the duplicates vector.
             synchronized (duplicates) {
-                duplicates.notifyAll();
+                duplicates.add(new BibtexEntry[] {one, two});
+                duplicates.notifyAll(); // send wake up all
             }
         }
 
+        @Override
+        public boolean isCancelled() {
+            return finished;
+        }
+
         public boolean finished() {
             return finished;
         }
@@ -20,6 +20,7 @@ import net.sf.jabref.util.MonthUtil;
 import net.sf.jabref.util.Util;
 import net.sf.jabref.util.YearUtil;
 
+import java.text.CollationKey;
 import java.text.Collator;
 import java.text.ParseException;
 import java.text.RuleBasedCollator;
@@ -62,6 +63,12 @@ public class FieldComparator implements Comparator<BibtexEntry> {
 
     private final int multiplier;
 
+    /**
+     * Names the sort keys of this comparator, which depend on the field and on
+     * whether it is compared numerically.
+     */
+    private final String sortKeyName;
+
 
     public FieldComparator(String field) {
         this(field, false);
@@ -77,23 +84,13 @@ public class FieldComparator implements Comparator<BibtexEntry> {
         isYearField = this.field[0].equals("year");
         isMonthField = this.field[0].equals("month");
         isNumeric = BibtexFields.isNumeric(this.field[0]);
+        sortKeyName = isNumeric ? field + "#numeric" : field;
     }
 
     @Override
     public int compare(BibtexEntry e1, BibtexEntry e2) {
-        Object f1, f2;
-
-        if (isTypeHeader) {
-            // Sort by type.
-            f1 = e1.getType().getName();
-            f2 = e2.getType().getName();
-        } else {
-
-            // If the field is author or editor, we rearrange names so they are
-            // sorted according to last name.
-            f1 = getField(e1);
-            f2 = getField(e2);
-        }
+        SortKey k1 = (SortKey) e1.getSortKey(this);
+        SortKey k2 = (SortKey) e2.getSortKey(this);
 
         /*
          * [ 1598777 ] Month sorting
@@ -106,83 +103,105 @@ public class FieldComparator implements Comparator<BibtexEntry> {
         }
 
         // Catch all cases involving null:
-        if (f1 == null) {
-            return f2 == null ? 0 : localMultiplier;
+        if (k1.isNull) {
+            return k2.isNull ? 0 : localMultiplier;
         }
 
-        if (f2 == null) {
+        if (k2.isNull) {
             return -localMultiplier;
         }
 
-        // Now we now that both f1 and f2 are != null
+        int result;
+        if ((k1.number != null) && (k2.number != null)) {
+            result = k1.number.compareTo(k2.number);
+        } else if (k1.number != null) {
+            // The first one was parseable, but not the second one.
+            // This means we consider one < two
+            result = -1;
+        } else if (k2.number != null) {
+            // The second one was parseable, but not the first one.
+            // This means we consider one > two
+            result = 1;
+        } else {
+            result = k1.text.compareTo(k2.text);
+        }
+
+        return result * localMultiplier;
+    }
+
+    /**
+     * The normalized value of an entry's field: its number if it is compared
+     * numerically, its collation key otherwise.
+     */
+    private static class SortKey {
+
+        static final SortKey NULL = new SortKey(true, null, null);
+
+        final boolean isNull;
+        final Integer number;
+        final CollationKey text;
+
+
+        SortKey(boolean isNull, Integer number, CollationKey text) {
+            this.isNull = isNull;
+            this.number = number;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Normalizes the entry's value of this comparator's field for sorting. Entries
+     * keep the result until their fields change (see BibtexEntry.getSortKey()), so
+     * sorting only normalizes each entry once.
+     */
+    Object computeSortKey(BibtexEntry entry) {
+        Object f;
+
+        if (isTypeHeader) {
+            // Sort by type.
+            f = entry.getType().getName();
+        } else {
+
+            // If the field is author or editor, we rearrange names so they are
+            // sorted according to last name.
+            f = getField(entry);
+        }
+
+        if (f == null) {
+            return SortKey.NULL;
+        }
+
         if (isNameField) {
-            f1 = AuthorList.fixAuthorForAlphabetization((String) f1);
-            f2 = AuthorList.fixAuthorForAlphabetization((String) f2);
+            f = AuthorList.fixAuthorForAlphabetization((String) f);
         } else if (isYearField) {
             /*
              * [ 1285977 ] Impossible to properly sort a numeric field
              * 
              * http://sourceforge.net/tracker/index.php?func=detail&aid=1285977&group_id=92314&atid=600307
              */
-            f1 = YearUtil.toFourDigitYear((String) f1);
-            f2 = YearUtil.toFourDigitYear((String) f2);
+            f = YearUtil.toFourDigitYear((String) f);
         } else if (isMonthField) {
             /*
              * [ 1535044 ] Month sorting
              * 
              * http://sourceforge.net/tracker/index.php?func=detail&aid=1535044&group_id=92314&atid=600306
              */
-            f1 = MonthUtil.getMonth((String) f1).number;
-            f2 = MonthUtil.getMonth((String) f2).number;
+            f = MonthUtil.getMonth((String) f).number;
         }
 
-        if (isNumeric) {
-            Integer i1 = null, i2 = null;
-            try {
-                i1 = Util.intValueOf((String) f1);
-            } catch (NumberFormatException ex) {
-                // Parsing failed.
-            }
+        if (f instanceof Integer) {
+            return new SortKey(false, (Integer) f, null);
+        }
 
+        if (isNumeric) {
             try {
-                i2 = Util.intValueOf((String) f2);
+                return new SortKey(false, Util.intValueOf((String) f), null);
             } catch (NumberFormatException ex) {
-                // Parsing failed.
+                // Parsing failed, fall back on comparing strings.
             }
-
-            if ((i2 != null) && (i1 != null)) {
-                // Ok, parsing was successful. Update f1 and f2:
-                f1 = i1;
-                f2 = i2;
-            } else if (i1 != null) {
-                // The first one was parseable, but not the second one.
-                // This means we consider one < two
-                f1 = i1;
-                f2 = i1 + 1;
-            } else if (i2 != null) {
-                // The second one was parseable, but not the first one.
-                // This means we consider one > two
-                f2 = i2;
-                f1 = i2 + 1;
-            }
-            // Else none of them were parseable, and we can fall back on comparing strings.    
         }
 
-        int result;
-        if ((f1 instanceof Integer) && (f2 instanceof Integer)) {
-            result = (((Integer) f1).compareTo((Integer) f2));
-        } else if (f2 instanceof Integer) {
-            Integer f1AsInteger = new Integer(f1.toString());
-            result = -((f1AsInteger).compareTo((Integer) f2));
-        } else if (f1 instanceof Integer) {
-            Integer f2AsInteger = new Integer(f2.toString());
-            result = -(((Integer) f1).compareTo(f2AsInteger));
-        } else {
-            String ours = ((String) f1).toLowerCase(), theirs = ((String) f2).toLowerCase();
-            result = FieldComparator.collator.compare(ours, theirs);//ours.compareTo(theirs);
-        }
-
-        return result * localMultiplier;
+        return new SortKey(false, null, FieldComparator.collator.getCollationKey(((String) f).toLowerCase()));
     }
 
     private Object getField(BibtexEntry entry) {
@@ -195,6 +214,10 @@ public class FieldComparator implements Comparator<BibtexEntry> {
         return null;
     }
 
+    String getSortKeyName() {
+        return sortKeyName;
+    }
+
     /**
      * Returns the field this Comparator compares by.
      * 
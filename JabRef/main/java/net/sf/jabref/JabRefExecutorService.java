@@ -1,5 +1,7 @@
 package net.sf.jabref;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.*;
 
 /**
@@ -7,6 +9,8 @@ import java.util.concurrent.*;
  */
 public class JabRefExecutorService implements Executor {
 
+    private static final int IO_THREADS = 16;
+
     public static final JabRefExecutorService INSTANCE = new JabRefExecutorService();
 
     private final ExecutorService executorService = Executors.newCachedThreadPool(new ThreadFactory() {
@@ -17,6 +21,36 @@ public class JabRefExecutorService implements Executor {
             return thread;
         }
     });
+    /**
+     * One thread per core for CPU-bound work that is split into many small tasks.
+     * The threads are daemons, so an idle pool never keeps JabRef from exiting.
+     */
+    private final ExecutorService computationService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setName("JabRef ComputationPool");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /**
+     * Threads for tasks that mostly wait for the file system, such as listing the
+     * directories of a network share. Kept apart from the computation pool, so that
+     * slow I/O does not hold up CPU-bound work, and larger, as waiting threads do
+     * not compete for the cores.
+     */
+    private final ExecutorService ioService = Executors.newFixedThreadPool(
+            JabRefExecutorService.IO_THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setName("JabRef IOPool");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
     private final ConcurrentLinkedQueue<Thread> startedThreads = new ConcurrentLinkedQueue<Thread>();
 
     private JabRefExecutorService() {}
@@ -50,6 +84,30 @@ public class JabRefExecutorService implements Executor {
         }
     }
 
+    /**
+     * Runs the given CPU-bound tasks in parallel and waits until all of them are done.
+     * The tasks must not wait for other tasks submitted through this method, as the
+     * pool is bounded.
+     *
+     * @return The futures of the tasks, in the order of the given collection. All are done.
+     */
+    public <T> List<Future<T>> invokeAllComputations(Collection<? extends Callable<T>> tasks)
+            throws InterruptedException {
+        return computationService.invokeAll(tasks);
+    }
+
+    /**
+     * Runs the given I/O-bound tasks in parallel and waits until all of them are done.
+     * The tasks must not wait for other tasks submitted through this method, as the
+     * pool is bounded.
+     *
+     * @return The futures of the tasks, in the order of the given collection. All are done.
+     */
+    public <T> List<Future<T>> invokeAllIO(Collection<? extends Callable<T>> tasks)
+            throws InterruptedException {
+        return ioService.invokeAll(tasks);
+    }
+
     private static class AutoCleanupRunnable implements Runnable {
 
         private final Runnable runnable;
@@ -114,6 +172,8 @@ public class JabRefExecutorService implements Executor {
 
     public void shutdownEverything() {
         this.executorService.shutdown();
+        this.computationService.shutdown();
+        this.ioService.shutdown();
         for(Thread thread : startedThreads) {
             thread.interrupt();
         }
@@ -33,8 +33,8 @@ import javax.swing.event.HyperlinkEvent;
 import javax.swing.event.HyperlinkListener;
 
 import net.sf.jabref.export.layout.Layout;
+import net.sf.jabref.export.layout.LayoutContext;
 import net.sf.jabref.export.layout.LayoutHelper;
-import net.sf.jabref.export.ExportFormats;
 import net.sf.jabref.gui.PreviewPanelTransferHandler;
 import net.sf.jabref.util.Util;
 
@@ -407,7 +407,7 @@ public class PreviewPanel extends JPanel implements VetoableChangeListener, Sear
     public void update() {
 
         StringBuilder sb = new StringBuilder();
-        ExportFormats.entryNumber = 1; // Set entry number in case that is included in the preview layout.
+        LayoutContext.reset(); // Set entry number in case that is included in the preview layout.
         if (entry != null) {
             sb.append(layout.doLayout(entry, database, wordsToHighlight));
         }
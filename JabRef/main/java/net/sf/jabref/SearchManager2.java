@@ -18,6 +18,8 @@ package net.sf.jabref;
 import net.sf.jabref.gui.AutoCompleteListener;
 import net.sf.jabref.gui.SearchResultsDialog;
 import net.sf.jabref.help.HelpAction;
+import net.sf.jabref.search.IndexedSearchRule;
+import net.sf.jabref.search.SearchPlan;
 import net.sf.jabref.search.SearchRule;
 import net.sf.jabref.search.SearchRules;
 import net.sf.jabref.search.matchers.SearchMatcher;
@@ -32,6 +34,7 @@ import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Set;
 import java.util.Vector;
 
 public class SearchManager2 extends SidePaneComponent
@@ -556,26 +559,31 @@ public class SearchManager2 extends SidePaneComponent
         public void run() {
             if (!searchAllBases.isSelected()) {
                 // Search only the current database:
-                for (BibtexEntry entry : panel.getDatabase().getEntries()) {
-
-                    boolean hit = rule.applyRule(searchTerm, entry);
-                    entry.setSearchHit(hit);
-                    if (hit) {
-                        hits++;
-                    }
-                }
+                search(panel.getDatabase());
             } else {
                 // Search all databases:
                 for (int i = 0; i < frame.getTabbedPane().getTabCount(); i++) {
                     BasePanel p = frame.baseAt(i);
-                    for (BibtexEntry entry : p.getDatabase().getEntries()) {
+                    search(p.getDatabase());
+                }
+            }
+        }
 
-                        boolean hit = rule.applyRule(searchTerm, entry);
-                        entry.setSearchHit(hit);
-                        if (hit) {
-                            hits++;
-                        }
-                    }
+        private void search(BibtexDatabase database) {
+            // If possible, let the search index tell which entries can match at all:
+            Set<BibtexEntry> candidates = null;
+            if (rule instanceof IndexedSearchRule) {
+                candidates = ((IndexedSearchRule) rule).getCandidates(searchTerm, database.getSearchIndex());
+            }
+
+            SearchPlan plan = SearchRules.compile(rule, searchTerm);
+            for (BibtexEntry entry : database.getEntries()) {
+
+                boolean hit = ((candidates == null) || candidates.contains(entry))
+                        && plan.matches(entry);
+                entry.setSearchHit(hit);
+                if (hit) {
+                    hits++;
                 }
             }
         }
@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.Vector;
 
 import net.sf.jabref.imports.*;
+import net.sf.jabref.search.SearchPlan;
 import net.sf.jabref.search.SearchRules;
 import net.sf.jabref.search.SearchRule;
 
@@ -56,8 +57,9 @@ class SearchManagerNoGUI {
 
         Collection<BibtexEntry> entries = database.getEntries();
         Vector<BibtexEntry> matchEntries = new Vector<BibtexEntry>();
+        SearchPlan plan = SearchRules.compile(searchRule, searchTerm);
         for (BibtexEntry entry : entries) {
-            boolean hit = searchRule.applyRule(searchTerm, entry);
+            boolean hit = plan.matches(entry);
             entry.setSearchHit(hit);
             if (hit) {
                 hits++;
@@ -17,8 +17,13 @@ package net.sf.jabref.collab;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 import java.util.ArrayList;
 
@@ -194,145 +199,141 @@ public class ChangeScanner implements Runnable {
 
     private void scanEntries(EntrySorter mem, EntrySorter tmp, EntrySorter disk) {
 
-        // Create pointers that are incremented as the entries of each base are used in
-        // successive order from the beginning. Entries "further down" in the "disk" base
-        // can also be matched.
-        int piv1, piv2 = 0;
+        // Entries are matched through their fingerprints, which are equal exactly if
+        // DuplicateCheck.compareEntriesStrictly() considers the entries identical.
+        // The entries of the "disk" database with each fingerprint, in ascending order:
+        HashMap<Map<String, String>, LinkedList<Integer>> diskByFingerprint =
+                new HashMap<Map<String, String>, LinkedList<Integer>>();
+        for (int i = 0; i < disk.getEntryCount(); i++) {
+            Map<String, String> fingerprint = ChangeScanner.fingerprint(disk.getEntryAt(i));
+            LinkedList<Integer> indices = diskByFingerprint.get(fingerprint);
+            if (indices == null) {
+                indices = new LinkedList<Integer>();
+                diskByFingerprint.put(fingerprint, indices);
+            }
+            indices.add(i);
+        }
+
+        // The first entry of the "mem" database with each fingerprint:
+        HashMap<Map<String, String>, BibtexEntry> memByFingerprint = new HashMap<Map<String, String>, BibtexEntry>();
+        for (int i = mem.getEntryCount() - 1; i >= 0; i--) {
+            memByFingerprint.put(ChangeScanner.fingerprint(mem.getEntryAt(i)), mem.getEntryAt(i));
+        }
 
-        // Create a HashSet where we can put references to entry numbers in the "disk"
-        // database that we have matched. This is to avoid matching them twice.
-        HashSet<String> used = new HashSet<String>(disk.getEntryCount());
-        HashSet<Integer> notMatched = new HashSet<Integer>(tmp.getEntryCount());
+        // Entry numbers in the "disk" database that we have matched. This is to avoid
+        // matching them twice.
+        boolean[] used = new boolean[disk.getEntryCount()];
+        List<Integer> notMatched = new ArrayList<Integer>();
 
         // Loop through the entries of the "tmp" database, looking for exact matches in the "disk" one.
         // We must finish scanning for exact matches before looking for near matches, to avoid an exact
         // match being "stolen" from another entry.
-        mainLoop: for (piv1 = 0; piv1 < tmp.getEntryCount(); piv1++) {
-
-            // First check if the similarly placed entry in the other base matches exactly.
-            double comp = -1;
-            // (if there are not any entries left in the "disk" database, comp will stay at -1,
-            // and this entry will be marked as nonmatched).
-            if (!used.contains("" + piv2) && (piv2 < disk.getEntryCount())) {
-                comp = DuplicateCheck.compareEntriesStrictly(tmp.getEntryAt(piv1), disk.getEntryAt(piv2));
-            }
-            if (comp > 1) {
-                used.add("" + piv2);
-                piv2++;
-                continue;
-            }
-
-            // No? Then check if another entry matches exactly.
-            if (piv2 < (disk.getEntryCount() - 1)) {
-                for (int i = piv2 + 1; i < disk.getEntryCount(); i++) {
-                    if (!used.contains("" + i)) {
-                        comp = DuplicateCheck.compareEntriesStrictly(tmp.getEntryAt(piv1), disk.getEntryAt(i));
-                    } else {
-                        comp = -1;
-                    }
-
-                    if (comp > 1) {
-                        used.add("" + i);
-                        continue mainLoop;
-                    }
-                }
+        for (int piv1 = 0; piv1 < tmp.getEntryCount(); piv1++) {
+            LinkedList<Integer> indices = diskByFingerprint.get(ChangeScanner.fingerprint(tmp.getEntryAt(piv1)));
+            if ((indices != null) && !indices.isEmpty()) {
+                used[indices.removeFirst()] = true;
+            } else {
+                // No? Add this entry to the list of nonmatched entries.
+                notMatched.add(piv1);
             }
-
-            // No? Add this entry to the list of nonmatched entries.
-            notMatched.add(piv1);
         }
 
         // Now we've found all exact matches, look through the remaining entries, looking
-        // for close matches.
-        if (!notMatched.isEmpty()) {
-
-            for (Iterator<Integer> it = notMatched.iterator(); it.hasNext();) {
-
-                piv1 = it.next();
-
-                // These two variables will keep track of which entry most closely matches the
-                // one we're looking at, in case none matches completely.
-                int bestMatchI = -1;
-                double bestMatch = 0;
-                double comp;
-
-                if (piv2 < (disk.getEntryCount() - 1)) {
-                    for (int i = piv2; i < disk.getEntryCount(); i++) {
-                        if (!used.contains("" + i)) {
-                            comp = DuplicateCheck.compareEntriesStrictly(tmp.getEntryAt(piv1),
-                                    disk.getEntryAt(i));
-                        } else {
-                            comp = -1;
-                        }
-
-                        if (comp > bestMatch) {
-                            bestMatch = comp;
-                            bestMatchI = i;
-                        }
+        // for close matches. An entry whose cite key is unchanged most likely matches the
+        // entry with that key, so these are tried first:
+        HashMap<String, List<Integer>> residueByKey = new HashMap<String, List<Integer>>();
+        List<Integer> residue = new ArrayList<Integer>();
+        for (int i = 0; i < disk.getEntryCount(); i++) {
+            if (!used[i]) {
+                residue.add(i);
+                String key = disk.getEntryAt(i).getCiteKey();
+                if (key != null) {
+                    List<Integer> indices = residueByKey.get(key);
+                    if (indices == null) {
+                        indices = new ArrayList<Integer>();
+                        residueByKey.put(key, indices);
                     }
+                    indices.add(i);
                 }
+            }
+        }
 
-                double MATCH_THRESHOLD = 0.4;
-                if (bestMatch > MATCH_THRESHOLD) {
-                    used.add("" + bestMatchI);
-                    it.remove();
-
-                    EntryChange ec = new EntryChange(bestFit(tmp, mem, piv1), tmp.getEntryAt(piv1),
-                            disk.getEntryAt(bestMatchI));
-                    changes.add(ec);
-
-                    // Create an undo edit to represent this change:
-                    //NamedCompound ce = new NamedCompound("Modified entry");
-                    //ce.addEdit(new UndoableRemoveEntry(inMem, disk.getEntryAt(bestMatchI), panel));
-                    //ce.addEdit(new UndoableInsertEntry(inMem, tmp.getEntryAt(piv1), panel));
-                    //ce.end();
-                    //changes.add(ce);
+        int[] matches = new int[tmp.getEntryCount()];
+        Arrays.fill(matches, -1);
+        for (int piv1 : notMatched) {
+            String key = tmp.getEntryAt(piv1).getCiteKey();
+            if ((key != null) && residueByKey.containsKey(key)) {
+                matches[piv1] = bestMatch(tmp.getEntryAt(piv1), disk, residueByKey.get(key), used);
+            }
+        }
+        for (int piv1 : notMatched) {
+            if (matches[piv1] < 0) {
+                matches[piv1] = bestMatch(tmp.getEntryAt(piv1), disk, residue, used);
+            }
 
-                    //System.out.println("Possible match for entry:");
-                    //System.out.println("----------------------------------------------");
+            if (matches[piv1] >= 0) {
+                EntryChange ec = new EntryChange(bestFit(tmp, mem, piv1, memByFingerprint), tmp.getEntryAt(piv1),
+                        disk.getEntryAt(matches[piv1]));
+                changes.add(ec);
+            } else {
+                EntryDeleteChange ec = new EntryDeleteChange(bestFit(tmp, mem, piv1, memByFingerprint), tmp.getEntryAt(piv1));
+                changes.add(ec);
+            }
+        }
 
-                }
-                else {
-                    EntryDeleteChange ec = new EntryDeleteChange(bestFit(tmp, mem, piv1), tmp.getEntryAt(piv1));
-                    changes.add(ec);
-                    /*NamedCompound ce = new NamedCompound("Removed entry");
-                    ce.addEdit(new UndoableInsertEntry(inMem, tmp.getEntryAt(piv1), panel));
-                    ce.end();
-                    changes.add(ce);*/
+        // Finally, look if there are still untouched entries in the disk database. These
+        // mayhave been added.
+        for (int i : residue) {
+            // See if there is an identical dupe in the mem database:
+            if (!used[i] && !memByFingerprint.containsKey(ChangeScanner.fingerprint(disk.getEntryAt(i)))) {
+                EntryAddChange ec = new EntryAddChange(disk.getEntryAt(i));
+                changes.add(ec);
+            }
+        }
+    }
 
+    /**
+     * Finds the unused entry among the given candidates that most closely matches the
+     * given entry, and marks it as used.
+     *
+     * @return The index of the entry in disk, or -1 if no entry matches closely enough.
+     */
+    private static int bestMatch(BibtexEntry entry, EntrySorter disk, List<Integer> candidates, boolean[] used) {
+        // These two variables will keep track of which entry most closely matches the
+        // one we're looking at, in case none matches completely.
+        int bestMatchI = -1;
+        double bestMatch = 0;
+        for (int i : candidates) {
+            if (!used[i]) {
+                double comp = DuplicateCheck.compareEntriesStrictly(entry, disk.getEntryAt(i));
+                if (comp > bestMatch) {
+                    bestMatch = comp;
+                    bestMatchI = i;
                 }
-
             }
+        }
 
+        double MATCH_THRESHOLD = 0.4;
+        if (bestMatch > MATCH_THRESHOLD) {
+            used[bestMatchI] = true;
+            return bestMatchI;
         }
+        return -1;
+    }
 
-        // Finally, look if there are still untouched entries in the disk database. These
-        // mayhave been added.
-        if (used.size() < disk.getEntryCount()) {
-            for (int i = 0; i < disk.getEntryCount(); i++) {
-                if (!used.contains("" + i)) {
-
-                    // See if there is an identical dupe in the mem database:
-                    boolean hasAlready = false;
-                    for (int j = 0; j < mem.getEntryCount(); j++) {
-                        if (DuplicateCheck.compareEntriesStrictly(mem.getEntryAt(j),
-                                disk.getEntryAt(i)) >= 1) {
-                            hasAlready = true;
-                            break;
-                        }
-                    }
-                    if (!hasAlready) {
-                        EntryAddChange ec = new EntryAddChange(disk.getEntryAt(i));
-                        changes.add(ec);
-                    }
-                    /*NamedCompound ce = new NamedCompound("Added entry");
-                    ce.addEdit(new UndoableRemoveEntry(inMem, disk.getEntryAt(i), panel));
-                    ce.end();
-                    changes.add(ce);*/
-                }
+    /**
+     * Returns the fields of the entry that are set. Two entries have equal fingerprints
+     * exactly if DuplicateCheck.compareEntriesStrictly() considers them identical.
+     */
+    private static Map<String, String> fingerprint(BibtexEntry entry) {
+        Map<String, String> fields = new HashMap<String, String>();
+        for (String field : entry.getFieldNames()) {
+            String value = entry.getField(field);
+            if (value != null) {
+                fields.put(field, value);
             }
-            //System.out.println("Suspected new entries in file: "+(disk.getEntryCount()-used.size()));
         }
+        return fields;
     }
 
     /**
@@ -341,9 +342,15 @@ public class ChangeScanner implements Runnable {
      * @param old EntrySorter
      * @param neu EntrySorter
      * @param index int
+     * @param neuByFingerprint The first entry in neu with each fingerprint
      * @return BibtexEntry
      */
-    private BibtexEntry bestFit(EntrySorter old, EntrySorter neu, int index) {
+    private BibtexEntry bestFit(EntrySorter old, EntrySorter neu, int index,
+            Map<Map<String, String>, BibtexEntry> neuByFingerprint) {
+        BibtexEntry identical = neuByFingerprint.get(ChangeScanner.fingerprint(old.getEntryAt(index)));
+        if (identical != null) {
+            return identical;
+        }
         double comp = -1;
         int found = 0;
         for (int i = 0; i < neu.getEntryCount(); i++) {
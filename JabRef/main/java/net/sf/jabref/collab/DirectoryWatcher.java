@@ -0,0 +1,138 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.collab;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports changed files through the file change notification of the platform.
+ * All uses of java.nio.file are kept in this class, so that FileUpdateMonitor can
+ * fall back to polling where the API is not available.
+ */
+class DirectoryWatcher {
+
+    private final WatchService watchService;
+
+    private final Map<File, WatchKey> keys = new HashMap<File, WatchKey>();
+    private final Map<File, Integer> registrations = new HashMap<File, Integer>();
+
+
+    /**
+     * @throws IOException if the platform has no native change notification. Where the
+     * JDK only emulates it by polling, as on Mac OS X, it checks every ten seconds,
+     * which reacts more slowly than the monitor's own polling.
+     */
+    DirectoryWatcher() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        if (watchService.getClass().getName().endsWith("PollingWatchService")) {
+            watchService.close();
+            throw new IOException("No native file change notification");
+        }
+    }
+
+    /**
+     * Starts watching the given directory, unless it is watched already.
+     *
+     * @return false if the directory cannot be watched.
+     */
+    synchronized boolean register(File directory) {
+        Integer count = registrations.get(directory);
+        if (count == null) {
+            try {
+                keys.put(directory, directory.toPath().register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY));
+            } catch (IOException e) {
+                return false;
+            } catch (UnsupportedOperationException e) {
+                return false;
+            }
+            count = 0;
+        }
+        registrations.put(directory, count + 1);
+        return true;
+    }
+
+    /**
+     * Stops watching the given directory, once unregister has been called as often as register.
+     */
+    synchronized void unregister(File directory) {
+        Integer count = registrations.get(directory);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            registrations.put(directory, count - 1);
+        } else {
+            registrations.remove(directory);
+            keys.remove(directory).cancel();
+        }
+    }
+
+    /**
+     * Waits until files in the watched directories change or the timeout elapses. As many
+     * programs write a file in several steps, it returns only after no further change
+     * has been reported for the given quiet period, or at the latest after another timeout.
+     *
+     * @return The canonical paths of the changed files, or null if events have been lost.
+     */
+    Set<File> waitForChanges(long timeout, long quietPeriod) throws InterruptedException {
+        Set<File> changed = new HashSet<File>();
+        WatchKey key;
+        try {
+            key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+            long deadline = System.currentTimeMillis() + timeout;
+            while (key != null) {
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        changed = null;
+                    } else if (changed != null) {
+                        changed.add(FileUpdateMonitor.getCanonicalFile(
+                                directory.resolve((Path) event.context()).toFile()));
+                    }
+                }
+                key.reset();
+                key = System.currentTimeMillis() < deadline ?
+                        watchService.poll(quietPeriod, TimeUnit.MILLISECONDS) : null;
+            }
+        } catch (ClosedWatchServiceException e) {
+            throw new InterruptedException("Watch service closed");
+        }
+        return changed;
+    }
+
+    void close() {
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+            // Nothing to do
+        }
+    }
+}
@@ -20,14 +20,18 @@ import net.sf.jabref.Globals;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.HashMap;
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This thread monitors a set of files, each associated with a FileUpdateListener, for changes
- * in the file's last modification time stamp. The
+ * in the file's last modification time stamp. Where the platform notifies about file changes,
+ * only the files reported as changed are checked. Files in directories that cannot be watched
+ * this way are polled, and so are all files where the notification would only be emulated by
+ * polling less often than we do.
  */
 public class FileUpdateMonitor implements Runnable {
 
@@ -35,14 +39,40 @@ public class FileUpdateMonitor implements Runnable {
 
     private static final int WAIT = 4000;
 
+    // Time without further changes to wait for before a changed file is checked:
+    private static final int QUIET_PERIOD = 500;
+
     private int numberOfUpdateListener = 0;
-    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    // null if change notification is not available:
+    private final DirectoryWatcher watcher = FileUpdateMonitor.createWatcher();
 
     @Override
     public void run() {
         // The running variable is used to make the thread stop when needed.
         while (true) {
+            // The files reported as changed, or null if all files have to be checked:
+            Set<File> changed = null;
+            try {
+                if (watcher == null) {
+                    // Sleep for a while before starting a new polling round.
+                    Thread.sleep(WAIT);
+                } else {
+                    changed = watcher.waitForChanges(WAIT, QUIET_PERIOD);
+                }
+            } catch (InterruptedException ex) {
+                LOGGER.debug("FileUpdateMonitor has been interrupted. Terminating...");
+                if (watcher != null) {
+                    watcher.close();
+                }
+                return;
+            }
+
             for(Entry e : entries.values()) {
+                if ((changed != null) && e.watched && !changed.contains(e.canonicalFile)) {
+                    continue;
+                }
                 try {
                     if (e.hasBeenUpdated()) {
                         e.notifyListener();
@@ -51,14 +81,31 @@ public class FileUpdateMonitor implements Runnable {
                     e.notifyFileRemoved();
                 }
             }
+        }
+    }
 
-            // Sleep for a while before starting a new polling round.
-            try {
-                Thread.sleep(WAIT);
-            } catch (InterruptedException ex) {
-                LOGGER.debug("FileUpdateMonitor has been interrupted. Terminating...");
-                return;
-            }
+    private static DirectoryWatcher createWatcher() {
+        try {
+            return new DirectoryWatcher();
+        } catch (IOException e) {
+            LOGGER.info("File change notification not available, polling instead", e);
+        } catch (LinkageError e) {
+            // java.nio.file is missing before Java 7
+            LOGGER.info("File change notification not available, polling instead");
+        }
+        return null;
+    }
+
+    /**
+     * Returns the canonical form of the given file, so that paths reported by the
+     * platform can be compared with the paths of monitored files. Falls back to the
+     * absolute path if the file system cannot be queried.
+     */
+    static File getCanonicalFile(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
         }
     }
 
@@ -68,13 +115,15 @@ public class FileUpdateMonitor implements Runnable {
      * @param file File The file to monitor.
      * @throws IOException if the file does not exist.
      */
-    public String addUpdateListener(FileUpdateListener ul, File file) throws IOException {
+    public synchronized String addUpdateListener(FileUpdateListener ul, File file) throws IOException {
         if (!file.exists()) {
             throw new IOException("File not found");
         }
         numberOfUpdateListener++;
         String key = "" + numberOfUpdateListener;
-        entries.put(key, new Entry(ul, file));
+        Entry entry = new Entry(ul, file);
+        entry.watched = (watcher != null) && watcher.register(entry.canonicalFile.getParentFile());
+        entries.put(key, entry);
         return key;
     }
 
@@ -116,7 +165,10 @@ public class FileUpdateMonitor implements Runnable {
      * @param handle String The handle for the listener to remove.
      */
     public void removeUpdateListener(String handle) {
-        entries.remove(handle);
+        Entry entry = entries.remove(handle);
+        if ((entry != null) && entry.watched) {
+            watcher.unregister(entry.canonicalFile.getParentFile());
+        }
     }
 
     public void updateTimeStamp(String key) throws IllegalArgumentException {
@@ -152,13 +204,17 @@ public class FileUpdateMonitor implements Runnable {
 
         final FileUpdateListener listener;
         final File file;
+        final File canonicalFile;
         final File tmpFile;
         long timeStamp, fileSize;
+        // Whether changes of the file are reported by the DirectoryWatcher:
+        boolean watched;
 
 
         public Entry(FileUpdateListener ul, File f) {
             listener = ul;
             file = f;
+            canonicalFile = FileUpdateMonitor.getCanonicalFile(f);
             timeStamp = file.lastModified();
             fileSize = file.length();
             tmpFile = FileUpdateMonitor.getTempFile();
@@ -18,8 +18,11 @@ package net.sf.jabref.export;
 import net.sf.jabref.BibtexDatabase;
 import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefExecutorService;
 import net.sf.jabref.MetaData;
+import net.sf.jabref.NameFormatterTab;
 import net.sf.jabref.export.layout.Layout;
+import net.sf.jabref.export.layout.LayoutContext;
 import net.sf.jabref.export.layout.LayoutHelper;
 
 import javax.swing.filechooser.FileFilter;
@@ -27,7 +30,11 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Base class for export formats based on templates.
@@ -46,6 +53,12 @@ public class ExportFormat implements IExportFormat {
     private FileFilter fileFilter;
     private boolean customExport = false;
 
+    // The number of entries rendered by a task when exporting in parallel:
+    private static final int CHUNK_SIZE = 256;
+
+    // Compiled layouts by console name and layout file, see getLayout():
+    private static final Map<String, CachedLayout> LAYOUT_CACHE = new HashMap<String, CachedLayout>();
+
 
     /**
      * Initialize another export format based on templates stored in dir with
@@ -131,6 +144,10 @@ public class ExportFormat implements IExportFormat {
      * @return a newly created reader
      */
     Reader getReader(String filename) throws IOException {
+        return FileActions.getReader(getLayoutPath(filename));
+    }
+
+    private String getLayoutPath(String filename) {
         // If this is a custom export, just use the given file name:
         String dir;
         if (customExport) {
@@ -139,7 +156,56 @@ public class ExportFormat implements IExportFormat {
             dir = Globals.LAYOUT_PREFIX
                     + (directory == null ? "" : directory + '/');
         }
-        return FileActions.getReader(dir + filename);
+        return dir + filename;
+    }
+
+    /**
+     * Returns the layout compiled from the given layout file. Compiled layouts are
+     * cached for all export formats, and reused as long as the file has not been
+     * modified and the name formatters they may refer to have not changed. The
+     * layout files of built-in exports are taken to never change.
+     *
+     * @throws IOException
+     *             if the layout file does not exist or could not be read. This is
+     *             cached as well.
+     * @throws Exception
+     *             if the layout could not be parsed.
+     */
+    Layout getLayout(String filename) throws Exception {
+        String path = getLayoutPath(filename);
+        // Console names are unique among the export formats:
+        String key = consoleName + '|' + path;
+        long timestamp = customExport ? new File(path).lastModified() : 0;
+        Map<String, String> nameFormatters = Globals.prefs.customExportNameFormatters;
+        Map<String, String> userNameFormatters = NameFormatterTab.getNameFormatters();
+
+        CachedLayout cached;
+        synchronized (ExportFormat.LAYOUT_CACHE) {
+            cached = ExportFormat.LAYOUT_CACHE.get(key);
+        }
+        if ((cached == null) || !cached.isValid(timestamp, nameFormatters, userNameFormatters)) {
+            Layout layout = null;
+            IOException error = null;
+            try {
+                Reader reader = getReader(filename);
+                try {
+                    layout = new LayoutHelper(reader).getLayoutFromText(Globals.FORMATTER_PACKAGE);
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException ex) {
+                error = ex;
+            }
+            cached = new CachedLayout(layout, error, timestamp, nameFormatters, userNameFormatters);
+            synchronized (ExportFormat.LAYOUT_CACHE) {
+                ExportFormat.LAYOUT_CACHE.put(key, cached);
+            }
+        }
+
+        if (cached.error != null) {
+            throw cached.error;
+        }
+        return cached.layout;
     }
 
     /**
@@ -190,7 +256,6 @@ public class ExportFormat implements IExportFormat {
         VerifyingWriter ps = ss.getWriter();
 
         Layout beginLayout = null;
-        Reader reader;
 
         // Check if this export filter has bundled name formatters:
         // Set a global field, so all layouts have access to the custom name formatters:
@@ -200,11 +265,7 @@ public class ExportFormat implements IExportFormat {
 
         // Print header
         try {
-            reader = getReader(lfFileName + ".begin.layout");
-            LayoutHelper layoutHelper = new LayoutHelper(reader);
-            beginLayout = layoutHelper
-                    .getLayoutFromText(Globals.FORMATTER_PACKAGE);
-            reader.close();
+            beginLayout = getLayout(lfFileName + ".begin.layout");
         } catch (IOException ex) {
             // If an exception was cast, export filter doesn't have a begin
             // file.
@@ -226,61 +287,47 @@ public class ExportFormat implements IExportFormat {
                 entryIds, false);
 
         // Load default layout
-        reader = getReader(lfFileName + ".layout");
-
-        LayoutHelper layoutHelper = new LayoutHelper(reader);
-        Layout defLayout = layoutHelper
-                .getLayoutFromText(Globals.FORMATTER_PACKAGE);
-        reader.close();
+        Layout defLayout = getLayout(lfFileName + ".layout");
         if (defLayout != null) {
             missingFormatters.addAll(defLayout.getMissingFormatters());
             System.out.println(defLayout.getMissingFormatters());
         }
+        // Compile the layouts of all entry types up front, so that the entries can be
+        // rendered in parallel:
         HashMap<String, Layout> layouts = new HashMap<String, Layout>();
-        Layout layout;
-
-        ExportFormats.entryNumber = 0;
+        boolean usesGroups = (defLayout != null) && defLayout.usesGroups();
         for (BibtexEntry entry : sorted) {
-            ExportFormats.entryNumber++; // Increment entry counter.
-            // Get the layout
             String type = entry.getType().getName().toLowerCase();
             if (layouts.containsKey(type)) {
-                layout = layouts.get(type);
-            } else {
-                try {
-                    // We try to get a type-specific layout for this entry.
-                    reader = getReader(lfFileName + '.' + type + ".layout");
-                    layoutHelper = new LayoutHelper(reader);
-                    layout = layoutHelper
-                            .getLayoutFromText(Globals.FORMATTER_PACKAGE);
-                    layouts.put(type, layout);
-                    reader.close();
-                    if (layout != null) {
-                        missingFormatters.addAll(layout.getMissingFormatters());
-                    }
-
-                } catch (IOException ex) {
-                    // The exception indicates that no type-specific layout
-                    // exists, so we
-                    // go with the default one.
-                    layout = defLayout;
-                }
+                continue;
             }
+            Layout layout;
+            try {
+                // We try to get a type-specific layout for this entry.
+                layout = getLayout(lfFileName + '.' + type + ".layout");
+                if (layout != null) {
+                    missingFormatters.addAll(layout.getMissingFormatters());
+                }
 
-            // Write the entry
-            ps.write(layout.doLayout(entry, database));
+            } catch (IOException ex) {
+                // The exception indicates that no type-specific layout
+                // exists, so we
+                // go with the default one.
+                layout = defLayout;
+            }
+            layouts.put(type, layout);
+            usesGroups |= (layout != null) && layout.usesGroups();
         }
 
+        // Write the entries
+        ExportFormat.writeEntries(ps, sorted, layouts, database, usesGroups);
+
         // Print footer
 
         // changed section - begin (arudert)
         Layout endLayout = null;
         try {
-            reader = getReader(lfFileName + ".end.layout");
-            layoutHelper = new LayoutHelper(reader);
-            endLayout = layoutHelper
-                    .getLayoutFromText(Globals.FORMATTER_PACKAGE);
-            reader.close();
+            endLayout = getLayout(lfFileName + ".end.layout");
         } catch (IOException ex) {
             // If an exception was thrown, export filter doesn't have an end
             // file.
@@ -310,6 +357,73 @@ public class ExportFormat implements IExportFormat {
         finalizeSaveSession(ss);
     }
 
+    /**
+     * Renders the given entries with the layouts of their types and writes them in
+     * order. Large exports are rendered in chunks on the computation pool, a limited
+     * number of chunks at a time, and the results are written in the original order.
+     * Layouts with group blocks are rendered sequentially, as the output for an entry
+     * then depends on the entries before it.
+     */
+    private static void writeEntries(Writer out, final List<BibtexEntry> entries,
+            final Map<String, Layout> layouts, final BibtexDatabase database, boolean sequential)
+            throws IOException {
+        if (sequential || (entries.size() <= ExportFormat.CHUNK_SIZE)) {
+            ExportFormat.renderEntries(out, entries, 0, entries.size(), layouts, database);
+            return;
+        }
+
+        int roundSize = 4 * Runtime.getRuntime().availableProcessors() * ExportFormat.CHUNK_SIZE;
+        for (int roundStart = 0; roundStart < entries.size(); roundStart += roundSize) {
+            int roundEnd = Math.min(roundStart + roundSize, entries.size());
+            List<Callable<String>> chunks = new ArrayList<Callable<String>>();
+            for (int chunkStart = roundStart; chunkStart < roundEnd; chunkStart += ExportFormat.CHUNK_SIZE) {
+                final int start = chunkStart;
+                final int end = Math.min(chunkStart + ExportFormat.CHUNK_SIZE, roundEnd);
+                chunks.add(new Callable<String>() {
+
+                    @Override
+                    public String call() throws IOException {
+                        StringBuilder sb = new StringBuilder();
+                        ExportFormat.renderEntries(sb, entries, start, end, layouts, database);
+                        return sb.toString();
+                    }
+                });
+            }
+
+            try {
+                for (Future<String> future : JabRefExecutorService.INSTANCE.invokeAllComputations(chunks)) {
+                    out.write(future.get());
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while exporting");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new RuntimeException(cause);
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders the entries from start (inclusive) to end (exclusive) into out, in a
+     * fresh layout context of the calling thread.
+     */
+    private static void renderEntries(Appendable out, List<BibtexEntry> entries, int start, int end,
+            Map<String, Layout> layouts, BibtexDatabase database) throws IOException {
+        LayoutContext context = LayoutContext.reset();
+        for (int i = start; i < end; i++) {
+            BibtexEntry entry = entries.get(i);
+            context.setEntryNumber(i + 1);
+            Layout layout = layouts.get(entry.getType().getName().toLowerCase());
+            layout.write(out, entry, database);
+        }
+    }
+
     /**
      * See if there is a name formatter file bundled with this export format. If so, read
      * all the name formatters so they can be used by the filter layouts.
@@ -387,4 +501,33 @@ public class ExportFormat implements IExportFormat {
         }
         ss.commit();
     }
+
+    /**
+     * A compiled layout, or the error reading it, together with what it was compiled from.
+     */
+    private static class CachedLayout {
+
+        private final Layout layout;
+        private final IOException error;
+        private final long timestamp;
+        private final Map<String, String> nameFormatters;
+        private final Map<String, String> userNameFormatters;
+
+
+        public CachedLayout(Layout layout, IOException error, long timestamp,
+                Map<String, String> nameFormatters, Map<String, String> userNameFormatters) {
+            this.layout = layout;
+            this.error = error;
+            this.timestamp = timestamp;
+            this.nameFormatters = nameFormatters == null ? null : new HashMap<String, String>(nameFormatters);
+            this.userNameFormatters = userNameFormatters;
+        }
+
+        public boolean isValid(long timestamp, Map<String, String> nameFormatters,
+                Map<String, String> userNameFormatters) {
+            return (this.timestamp == timestamp)
+                    && (this.nameFormatters == null ? nameFormatters == null : this.nameFormatters.equals(nameFormatters))
+                    && this.userNameFormatters.equals(userNameFormatters);
+        }
+    }
 }
@@ -24,6 +24,9 @@ import java.io.Reader;
 import java.io.Writer;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,6 +43,13 @@ public class FileActions {
     private static final Pattern refPat = Pattern.compile("(#[A-Za-z]+#)"); // Used to detect string references in strings
     private static BibtexString.Type previousStringType;
 
+    /**
+     * Formatting at least this many changed entries is worth spreading over all cores.
+     */
+    private static final int PARALLEL_FORMAT_THRESHOLD = 500;
+
+    private static final int FORMAT_CHUNK_SIZE = 250;
+
 
     private static void writePreamble(Writer fw, String preamble) throws IOException {
         if (preamble != null) {
@@ -199,10 +209,8 @@ public class FileActions {
             // sorted as they appear on the screen.
             List<BibtexEntry> sorter = FileActions.getSortedEntries(database, metaData, null, true);
 
-            BibtexEntryWriter bibtexEntryWriter = new BibtexEntryWriter(new LatexFieldFormatter(), true);
-
+            List<BibtexEntry> toWrite = new ArrayList<BibtexEntry>(sorter.size());
             for (BibtexEntry be : sorter) {
-                exceptionCause = be;
 
                 // Check if we must write the type definition for this
                 // entry, as well. Our criterion is that all non-standard
@@ -225,11 +233,25 @@ public class FileActions {
                 }
 
                 if (write) {
-                    bibtexEntryWriter.write(be, fw);
-                    fw.write(Globals.NEWLINE);
+                    toWrite.add(be);
                 }
             }
 
+            try {
+                FileActions.formatChangedEntries(toWrite);
+            } catch (SaveException ex) {
+                exceptionCause = ex.getEntry();
+                throw ex;
+            }
+
+            BibtexEntryWriter bibtexEntryWriter = new BibtexEntryWriter(new LatexFieldFormatter(), true);
+
+            for (BibtexEntry be : toWrite) {
+                exceptionCause = be;
+                bibtexEntryWriter.write(be, fw);
+                fw.write(Globals.NEWLINE);
+            }
+
             // Write meta data.
             if (metaData != null) {
                 metaData.writeMetaData(fw);
@@ -261,6 +283,67 @@ public class FileActions {
     }
 
 
+    /**
+     * Formats those of the given entries which have changed since they were last
+     * written, on all cores if there are many. The formatted texts are kept in the
+     * entries, so that writing the entries afterwards in file order just copies them.
+     *
+     * @throws SaveException if an entry cannot be formatted. The exception refers to
+     *             the entry.
+     */
+    private static void formatChangedEntries(List<BibtexEntry> entries) throws SaveException {
+        BibtexEntryWriter writer = new BibtexEntryWriter(new LatexFieldFormatter(), true);
+        final List<BibtexEntry> changed = new ArrayList<BibtexEntry>();
+        for (BibtexEntry entry : entries) {
+            if (writer.needsFormatting(entry)) {
+                changed.add(entry);
+            }
+        }
+        if (changed.size() < FileActions.PARALLEL_FORMAT_THRESHOLD) {
+            // formatted while writing
+            return;
+        }
+
+        List<Callable<Void>> chunks = new ArrayList<Callable<Void>>();
+        for (int start = 0; start < changed.size(); start += FileActions.FORMAT_CHUNK_SIZE) {
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(start + FileActions.FORMAT_CHUNK_SIZE, changed.size());
+            chunks.add(new Callable<Void>() {
+
+                @Override
+                public Void call() throws SaveException {
+                    // formatters keep state, so each chunk needs its own
+                    BibtexEntryWriter chunkWriter = new BibtexEntryWriter(new LatexFieldFormatter(), true);
+                    for (BibtexEntry entry : changed.subList(chunkStart, chunkEnd)) {
+                        try {
+                            chunkWriter.serialize(entry);
+                        } catch (IOException ex) {
+                            throw new SaveException(ex.getMessage(), entry);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> future : JabRefExecutorService.INSTANCE.invokeAllComputations(chunks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw new SaveException("Interrupted while saving");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SaveException) {
+                throw (SaveException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
     private static class SaveSettings {
 
         public final String pri, sec, ter;
@@ -391,6 +474,13 @@ public class FileActions {
             Collections.addAll(sorter, bes);
             Collections.sort(sorter, new FieldComparatorStack<BibtexEntry>(comparators));
 
+            try {
+                FileActions.formatChangedEntries(sorter);
+            } catch (SaveException ex) {
+                be = ex.getEntry();
+                throw ex;
+            }
+
             BibtexEntryWriter bibtexEntryWriter = new BibtexEntryWriter(new LatexFieldFormatter(), true);
 
             for (BibtexEntry aSorter : sorter) {
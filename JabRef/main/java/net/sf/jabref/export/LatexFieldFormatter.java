@@ -19,8 +19,14 @@ import net.sf.jabref.*;
 import net.sf.jabref.util.StringUtil;
 import net.sf.jabref.util.Util;
 
+import java.util.Arrays;
 import java.util.Vector;
 
+/**
+ * Formats field values for writing to a BibTeX file.
+ *
+ * A formatter keeps state while formatting, so each thread needs its own instance.
+ */
 public class LatexFieldFormatter implements FieldFormatter {
 
     public static LatexFieldFormatter buildIgnoreHashes() {
@@ -28,7 +34,7 @@ public class LatexFieldFormatter implements FieldFormatter {
     }
 
 
-    private StringBuffer sb;
+    private StringBuilder sb;
 
     private final boolean neverFailOnHashes;
 
@@ -53,6 +59,19 @@ public class LatexFieldFormatter implements FieldFormatter {
         writefieldWrapfield = Globals.prefs.isWriteFieldAddSpaces();
     }
 
+    /**
+     * Returns a description of all settings the formatting depends on. Two formatters
+     * with equal settings format all values the same way.
+     */
+    public String getSettings() {
+        return neverFailOnHashes + "," + resolveStringsAllFields + ',' + valueDelimitersZero
+                + valueDelimitersOne + ',' + writefieldWrapfield + ','
+                + Arrays.toString(doNotResolveStringsFors) + ','
+                + Globals.prefs.get(JabRefPreferences.PUT_BRACES_AROUND_CAPITALS) + ','
+                + Globals.prefs.get(JabRefPreferences.NON_WRAPPABLE_FIELDS) + ','
+                + Globals.NEWLINE;
+    }
+
     @Override
     public String format(String text, String fieldName)
             throws IllegalArgumentException {
@@ -114,7 +133,7 @@ public class LatexFieldFormatter implements FieldFormatter {
                 throw new IllegalArgumentException("Curly braces { and } must be balanced.");
             }
 
-            sb = new StringBuffer(
+            sb = new StringBuilder(
                     valueDelimitersZero + "");
             // No formatting at all for these fields, to allow custom formatting?
             //            if (Globals.prefs.getBoolean("preserveFieldFormatting"))
@@ -132,7 +151,7 @@ public class LatexFieldFormatter implements FieldFormatter {
             return sb.toString();
         }
 
-        sb = new StringBuffer();
+        sb = new StringBuilder();
         int pivot = 0;
         int pos1;
         int pos2;
@@ -24,7 +24,14 @@ import net.sf.jabref.GUIGlobals;
 import java.io.File;
 import java.io.IOException;
 import java.io.FileOutputStream;
+import java.nio.channels.FileLock;
 import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
 
 /**
  * Class used to handle safe storage to disk. 
@@ -36,8 +43,16 @@ import java.nio.charset.UnsupportedCharsetException;
  * 
  * After saving is finished, the client should close the Writer. If the save should be put into effect, call
  * commit(), otherwise call cancel(). When cancelling, the temporary file is simply deleted and the target
- * file remains unchanged. When committing, the temporary file is copied to the target file after making
- * a backup if requested and if the target file already existed, and finally the temporary file is deleted.
+ * file remains unchanged. When committing, the temporary file is moved over the target file after making
+ * a backup if requested and if the target file already existed.
+ * 
+ * The temporary file is created next to the target file, so that it can be moved over the target file
+ * atomically: other programs either see the old or the new content, and the content is written only once.
+ * The backup is then a hard link to the old target file, which costs no copying either. The move gives
+ * the target a new file, though, so it is only done if the owner, group, permissions and ACL of the
+ * target can be given to the temporary file, and the target has no further hard links. Otherwise, or if
+ * the move fails, e.g. because another program has the target open on Windows, the temporary file is
+ * copied into the target file, and the backup is a copy as well.
  * 
  * If committing fails, the temporary file will not be deleted.
  */
@@ -62,7 +77,7 @@ public class SaveSession {
     public SaveSession(File file, String encoding, boolean backup) throws IOException,
             UnsupportedCharsetException {
         this.file = file;
-        tmp = File.createTempFile(SaveSession.TEMP_PREFIX, SaveSession.TEMP_SUFFIX);
+        tmp = SaveSession.createTemporaryFile(file);
         useLockFile = Globals.prefs.getBoolean(JabRefPreferences.USE_LOCK_FILES);
         this.backup = backup;
         this.encoding = encoding;
@@ -81,92 +96,157 @@ public class SaveSession {
         this.backup = useBackup;
     }
 
+    /**
+     * Creates the temporary file in the directory of the target file, or in the default temporary
+     * directory if that fails.
+     */
+    private static File createTemporaryFile(File file) throws IOException {
+        if (file != null) {
+            File directory = file.getAbsoluteFile().getParentFile();
+            if (directory != null) {
+                try {
+                    return File.createTempFile(SaveSession.TEMP_PREFIX, SaveSession.TEMP_SUFFIX, directory);
+                } catch (IOException ignored) {
+                    // e.g. no write permission for the directory
+                }
+            }
+        }
+        return File.createTempFile(SaveSession.TEMP_PREFIX, SaveSession.TEMP_SUFFIX);
+    }
+
     public void commit() throws SaveException {
         if (file == null) {
             return;
         }
-        if (file.exists() && backup) {
-            String name = file.getName();
-            String path = file.getParent();
-            File backupFile = new File(path, name + GUIGlobals.backupExt);
+        FileLock lock = null;
+        if (useLockFile) {
             try {
-                FileUtil.copyFile(file, backupFile, true);
+                lock = FileBasedLock.lock(file, 10);
             } catch (IOException ex) {
+                System.err.println("Error when creating lock file");
                 ex.printStackTrace();
-                throw SaveException.BACKUP_CREATION;
-                //throw new SaveException(Globals.lang("Save failed during backup creation")+": "+ex.getMessage());
             }
         }
         try {
-            if (useLockFile) {
+            // Save to the file a symbolic link points to, instead of replacing the link:
+            Path target = file.toPath();
+            if (Files.isSymbolicLink(target)) {
                 try {
-                    if (createLockFile()) {
-                        // Oops, the lock file already existed. Try to wait it out:
-                        if (!FileBasedLock.waitForFileLock(file, 10)) {
-                            throw SaveException.FILE_LOCKED;
-                        }
-
-                    }
-                } catch (IOException ex) {
-                    System.err.println("Error when creating lock file");
-                    ex.printStackTrace();
+                    target = target.toRealPath();
+                } catch (IOException ignored) {
+                    // dangling link, replace it
                 }
             }
+            Path backupFile = null;
+            if (backup && Files.exists(target)) {
+                backupFile = new File(file.getParent(), file.getName() + GUIGlobals.backupExt).toPath();
+            }
 
-            FileUtil.copyFile(tmp, file, true);
-        } catch (IOException ex2) {
-            // If something happens here, what can we do to correct the problem? The file is corrupted, but we still
-            // have a clean copy in tmp. However, we just failed to copy tmp to file, so it's not likely that
-            // repeating the action will have a different result.
-            // On the other hand, our temporary file should still be clean, and won't be deleted.
-            throw new SaveException(Globals.lang("Save failed while committing changes") + ": " + ex2.getMessage());
+            boolean moved = false;
+            if (!Files.exists(target) || SaveSession.copyMetadata(target, tmp.toPath())) {
+                if (backupFile != null) {
+                    SaveSession.createBackup(target, backupFile, true);
+                }
+                try {
+                    Files.move(tmp.toPath(), target, StandardCopyOption.ATOMIC_MOVE);
+                    moved = true;
+                } catch (IOException ignored) {
+                    // copy instead
+                }
+            }
+            if (!moved) {
+                // The backup must not be a link to the file we write into:
+                if (backupFile != null) {
+                    SaveSession.createBackup(target, backupFile, false);
+                }
+                try {
+                    FileUtil.copyFile(tmp, target.toFile(), true);
+                } catch (IOException ex2) {
+                    // If something happens here, what can we do to correct the problem? The file is corrupted, but
+                    // we still have a clean copy in tmp. However, we just failed to copy tmp to file, so it's not
+                    // likely that repeating the action will have a different result.
+                    // On the other hand, our temporary file should still be clean, and won't be deleted.
+                    throw new SaveException(Globals.lang("Save failed while committing changes") + ": "
+                            + ex2.getMessage());
+                }
+                tmp.delete();
+            }
         } finally {
-            if (useLockFile) {
-                deleteLockFile();
+            if (lock != null) {
+                FileBasedLock.unlock(file, lock);
             }
         }
-
-        tmp.delete();
-    }
-
-    public void cancel() {
-        tmp.delete();
     }
 
     /**
-     * Check if a lock file exists, and create it if it doesn't.
-     * @return true if the lock file already existed
-     * @throws IOException if something happens during creation.
+     * Makes the backup a hard link to the given file if requested and supported, and a copy of it otherwise.
      */
-    private boolean createLockFile() throws IOException {
-        File lock = new File(file.getPath() + SaveSession.LOCKFILE_SUFFIX);
-        if (lock.exists()) {
-            return true;
-        }
-        FileOutputStream out = new FileOutputStream(lock);
-        out.write(0);
+    private static void createBackup(Path file, Path backupFile, boolean link) throws SaveException {
         try {
-            out.close();
+            Files.deleteIfExists(backupFile);
+            if (link) {
+                try {
+                    Files.createLink(backupFile, file);
+                    return;
+                } catch (UnsupportedOperationException ignored) {
+                    // copy instead
+                } catch (IOException ignored) {
+                    // copy instead
+                }
+            }
+            Files.copy(file, backupFile, StandardCopyOption.COPY_ATTRIBUTES);
         } catch (IOException ex) {
-            System.err.println("Error when creating lock file");
             ex.printStackTrace();
+            throw SaveException.BACKUP_CREATION;
+            //throw new SaveException(Globals.lang("Save failed during backup creation")+": "+ex.getMessage());
         }
-        lock.deleteOnExit();
-        return false;
     }
 
     /**
-     * Check if a lock file exists, and delete it if it does.
-     * @return true if the lock file existed, false otherwise.
-     * @throws IOException if something goes wrong.
+     * Gives the temporary file the owner, group, permissions and ACL of the target, so that it can replace
+     * the target.
+     *
+     * @return false if this is not possible, if the target has further hard links, or if we cannot tell.
      */
-    private boolean deleteLockFile() {
-        File lock = new File(file.getPath() + SaveSession.LOCKFILE_SUFFIX);
-        if (!lock.exists()) {
+    private static boolean copyMetadata(Path target, Path tmp) {
+        try {
+            PosixFileAttributeView targetPosix = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+            if (targetPosix != null) {
+                if (((Integer) Files.getAttribute(target, "unix:nlink")) != 1) {
+                    return false;
+                }
+                PosixFileAttributes attributes = targetPosix.readAttributes();
+                PosixFileAttributeView tmpPosix = Files.getFileAttributeView(tmp, PosixFileAttributeView.class);
+                if (!attributes.owner().equals(Files.getOwner(tmp))) {
+                    // only allowed to privileged users
+                    tmpPosix.setOwner(attributes.owner());
+                }
+                tmpPosix.setGroup(attributes.group());
+                tmpPosix.setPermissions(attributes.permissions());
+            }
+
+            AclFileAttributeView targetAcl = Files.getFileAttributeView(target, AclFileAttributeView.class);
+            if (targetAcl != null) {
+                AclFileAttributeView tmpAcl = Files.getFileAttributeView(tmp, AclFileAttributeView.class);
+                if (!targetAcl.getOwner().equals(tmpAcl.getOwner())) {
+                    tmpAcl.setOwner(targetAcl.getOwner());
+                }
+                tmpAcl.setAcl(targetAcl.getAcl());
+            }
+            // Without POSIX attributes, hard links cannot be counted:
+            return targetPosix != null;
+        } catch (IOException ex) {
+            return false;
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        } catch (IllegalArgumentException ex) {
+            // no unix attribute view
             return false;
         }
-        lock.delete();
-        return true;
+    }
+
+    public void cancel() {
+        tmp.delete();
     }
 
     public File getTemporaryFile() {
@@ -15,6 +15,7 @@
 */
 package net.sf.jabref.export.layout;
 
+import java.io.IOException;
 import java.util.Vector;
 import java.util.ArrayList;
 
@@ -122,22 +123,36 @@ public class Layout
     public String doLayout(BibtexEntry bibtex, BibtexDatabase database, ArrayList<String> wordsToHighlight)
     {
         StringBuilder sb = new StringBuilder(100);
+        try {
+            write(sb, bibtex, database, wordsToHighlight);
+        } catch (IOException e) {
+            // Cannot happen, a StringBuilder does not throw IOExceptions.
+            throw new RuntimeException(e);
+        }
+        return sb.toString();
+    }
 
-        for (LayoutEntry layoutEntry : layoutEntries) {
-            String fieldText = layoutEntry.doLayout(bibtex, database, wordsToHighlight);
+    public void write(Appendable out, BibtexEntry bibtex, BibtexDatabase database) throws IOException {
+        write(out, bibtex, database, null);
+    }
+
+    /**
+     * Writes the processed bibtex entry to out, without building it up as a String
+     * first. String references are resolved as in doLayout().
+     */
+    public void write(Appendable out, BibtexEntry bibtex, BibtexDatabase database,
+            ArrayList<String> wordsToHighlight) throws IOException
+    {
+        // The entry number and current group are taken from the context of this thread:
+        LayoutContext context = LayoutContext.get();
 
+        for (LayoutEntry layoutEntry : layoutEntries) {
             // 2005.05.05 M. Alver
             // The following change means we treat null fields as "". This is to fix the
             // problem of whitespace disappearing after missing fields. Hoping there are
             // no side effects.
-            if (fieldText == null) {
-                fieldText = "";
-            }
-
-            sb.append(fieldText);
+            layoutEntry.write(out, bibtex, database, wordsToHighlight, context);
         }
-
-        return sb.toString();
     }
 
     /**
@@ -183,6 +198,19 @@ public class Layout
 
     // added section - end (arudert)
 
+    /**
+     * Returns whether this layout contains group blocks. Their output depends on the
+     * entries rendered before, so such a layout cannot render entries out of order.
+     */
+    public boolean usesGroups() {
+        for (LayoutEntry layoutEntry : layoutEntries) {
+            if (layoutEntry.usesGroups()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public ArrayList<String> getMissingFormatters() {
         return missingFormatters;
     }
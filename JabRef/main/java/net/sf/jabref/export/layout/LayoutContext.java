@@ -0,0 +1,78 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.export.layout;
+
+/**
+ * The state of a rendering run of layouts: the number of the entry being rendered
+ * and the value of the current group (see the \begingroup layout command).
+ *
+ * Layouts themselves are immutable, so that the entries of an export can be
+ * rendered by several threads at once. Each thread renders with its own context,
+ * which it can reset at the start of a run with LayoutContext.reset().
+ */
+public class LayoutContext {
+
+    private static final ThreadLocal<LayoutContext> CURRENT = new ThreadLocal<LayoutContext>() {
+
+        @Override
+        protected LayoutContext initialValue() {
+            return new LayoutContext();
+        }
+    };
+
+    private int entryNumber = 1;
+
+    private String currentGroup = null;
+
+
+    /**
+     * Returns the context of the calling thread.
+     */
+    public static LayoutContext get() {
+        return LayoutContext.CURRENT.get();
+    }
+
+    /**
+     * Replaces the context of the calling thread by a fresh one, starting at entry
+     * number 1 and without a current group.
+     *
+     * @return The new context.
+     */
+    public static LayoutContext reset() {
+        LayoutContext context = new LayoutContext();
+        LayoutContext.CURRENT.set(context);
+        return context;
+    }
+
+    /**
+     * Returns the number of the entry being rendered, starting at 1.
+     */
+    public int getEntryNumber() {
+        return entryNumber;
+    }
+
+    public void setEntryNumber(int entryNumber) {
+        this.entryNumber = entryNumber;
+    }
+
+    public String getCurrentGroup() {
+        return currentGroup;
+    }
+
+    public void setCurrentGroup(String currentGroup) {
+        this.currentGroup = currentGroup;
+    }
+}
@@ -16,11 +16,16 @@
 package net.sf.jabref.export.layout;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import net.sf.jabref.*;
 import net.sf.jabref.export.layout.format.plugin.NameFormat;
@@ -32,6 +37,12 @@ import net.sf.jabref.util.Util;
 
 class LayoutEntry {
 
+    private static final Pattern AND_FIELDS = Pattern.compile(".*(;|(\\&+)).*");
+
+    private static final Pattern AND_SEPARATOR = Pattern.compile("\\s*(;|(\\&+))\\s*");
+
+    private static final Pattern OR_SEPARATOR = Pattern.compile("\\s*(\\|+)\\s*");
+
     private LayoutFormatter[] option;
 
     // Formatter to be run after other formatters:
@@ -45,12 +56,19 @@ class LayoutEntry {
 
     private final String classPrefix;
 
+    // The fields a field block depends on, and whether all or only one of them must be set:
+    private final String[] fieldNames;
+
+    private final boolean allFieldsRequired;
+
     private ArrayList<String> invalidFormatter = null;
 
 
     public LayoutEntry(StringInt si, String classPrefix_) throws Exception {
         type = si.i;
         classPrefix = classPrefix_;
+        fieldNames = null;
+        allFieldsRequired = false;
 
         if (si.i == LayoutHelper.IS_LAYOUT_TEXT) {
             text = si.s;
@@ -102,6 +120,14 @@ class LayoutEntry {
 
         type = layoutType;
         text = si.s;
+        if (type == LayoutHelper.IS_FIELD_START) {
+            // split the strings along &, && or ; for AND formatter, or along |, || for OR formatter
+            allFieldsRequired = LayoutEntry.AND_FIELDS.matcher(text).matches();
+            fieldNames = (allFieldsRequired ? LayoutEntry.AND_SEPARATOR : LayoutEntry.OR_SEPARATOR).split(text);
+        } else {
+            allFieldsRequired = false;
+            fieldNames = null;
+        }
 
         for (int i = 1; i < (parsedEntries.size() - 1); i++) {
             si = parsedEntries.get(i);
@@ -160,11 +186,109 @@ class LayoutEntry {
         this.postFormatter = formatter;
     }
 
-    private String doLayout(BibtexEntry bibtex, BibtexDatabase database) {
-        return doLayout(bibtex, database, null);
+    /**
+     * Returns whether this entry contains a group block, whose output depends on
+     * the entries rendered before.
+     */
+    public boolean usesGroups() {
+        if (type == LayoutHelper.IS_GROUP_START) {
+            return true;
+        }
+        if (layoutEntries != null) {
+            for (LayoutEntry layoutEntry : layoutEntries) {
+                if (layoutEntry.usesGroups()) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
-    public String doLayout(BibtexEntry bibtex, BibtexDatabase database, ArrayList<String> wordsToHighlight) {
+    /**
+     * Writes the output of this entry for the given bibtex entry to out. Field and
+     * group blocks are written piece by piece instead of being built up as a String.
+     *
+     * @return false if nothing was written because the output is null, i.e. this is
+     *         a block whose field is not set or whose group did not change.
+     */
+    public boolean write(Appendable out, BibtexEntry bibtex, BibtexDatabase database,
+            ArrayList<String> wordsToHighlight, LayoutContext context) throws IOException {
+        if ((type == LayoutHelper.IS_FIELD_START) || (type == LayoutHelper.IS_GROUP_START)) {
+            return writeBlock(out, bibtex, database, wordsToHighlight, context);
+        }
+        String fieldText = doLayout(bibtex, database, wordsToHighlight, context);
+        if (fieldText == null) {
+            return false;
+        }
+        out.append(fieldText);
+        return true;
+    }
+
+    private boolean writeBlock(Appendable out, BibtexEntry bibtex, BibtexDatabase database,
+            ArrayList<String> wordsToHighlight, LayoutContext context) throws IOException {
+        String field;
+        if (type == LayoutHelper.IS_GROUP_START) {
+            field = BibtexDatabase.getResolvedField(text, bibtex, database);
+        } else {
+            field = null;
+            for (String fieldName : fieldNames) {
+                field = BibtexDatabase.getResolvedField(fieldName, bibtex, database);
+                if ((field == null) == allFieldsRequired) {
+                    break;
+                }
+            }
+        }
+
+        if ((field == null)
+                || ((type == LayoutHelper.IS_GROUP_START) && (field.equalsIgnoreCase(context
+                        .getCurrentGroup())))) {
+            return false;
+        }
+        if (type == LayoutHelper.IS_GROUP_START) {
+            context.setCurrentGroup(field);
+        }
+
+        /*
+         * if the bibtexentry is marked as a searchhit, try to highlight the
+         * searched words. This needs the whole text of each part.
+         */
+        boolean highlight = bibtex.isSearchHit() && (wordsToHighlight != null);
+        boolean previousSkipped = false;
+
+        for (int i = 0; i < layoutEntries.length; i++) {
+            boolean written;
+            if (previousSkipped) {
+                // if previous was skipped --> remove leading line breaks
+                written = layoutEntries[i].write(new LeadingLineBreakFilter(out), bibtex, database, null, context);
+            } else if (highlight) {
+                String fieldText = layoutEntries[i].doLayout(bibtex, database, context);
+                written = fieldText != null;
+                if (written) {
+                    out.append(highlightWords(fieldText, wordsToHighlight));
+                }
+            } else {
+                written = layoutEntries[i].write(out, bibtex, database, null, context);
+            }
+
+            if (!written && ((i + 1) < layoutEntries.length)) {
+                if (layoutEntries[i + 1].doLayout(bibtex, database, context).trim().isEmpty()) {
+                    i++;
+                    previousSkipped = true;
+                    continue;
+                }
+            }
+
+            previousSkipped = false;
+        }
+        return true;
+    }
+
+    private String doLayout(BibtexEntry bibtex, BibtexDatabase database, LayoutContext context) {
+        return doLayout(bibtex, database, null, context);
+    }
+
+    public String doLayout(BibtexEntry bibtex, BibtexDatabase database, ArrayList<String> wordsToHighlight,
+            LayoutContext context) {
         switch (type) {
         case LayoutHelper.IS_LAYOUT_TEXT:
             return text;
@@ -181,95 +305,16 @@ class LayoutEntry {
             return value;
         case LayoutHelper.IS_FIELD_START:
         case LayoutHelper.IS_GROUP_START: {
-            String field;
-            if (type == LayoutHelper.IS_GROUP_START) {
-                field = BibtexDatabase.getResolvedField(text, bibtex, database);
-            } else if (text.matches(".*(;|(\\&+)).*")) {
-                // split the strings along &, && or ; for AND formatter
-                String[] parts = text.split("\\s*(;|(\\&+))\\s*");
-                field = null;
-                for (String part : parts) {
-                    field = BibtexDatabase.getResolvedField(part, bibtex, database);
-                    if (field == null) {
-                        break;
-                    }
-
-                }
-            } else {
-                // split the strings along |, ||  for OR formatter
-                String[] parts = text.split("\\s*(\\|+)\\s*");
-                field = null;
-                for (String part : parts) {
-                    field = BibtexDatabase.getResolvedField(part, bibtex, database);
-                    if (field != null) {
-                        break;
-                    }
-                }
-            }
-
-            if ((field == null)
-                    || ((type == LayoutHelper.IS_GROUP_START) && (field.equalsIgnoreCase(LayoutHelper
-                            .getCurrentGroup())))) {
-                return null;
-            } else {
-                if (type == LayoutHelper.IS_GROUP_START) {
-                    LayoutHelper.setCurrentGroup(field);
-                }
-                StringBuilder sb = new StringBuilder(100);
-                String fieldText;
-                boolean previousSkipped = false;
-
-                for (int i = 0; i < layoutEntries.length; i++) {
-                    fieldText = layoutEntries[i].doLayout(bibtex, database);
-
-                    if (fieldText == null) {
-                        if ((i + 1) < layoutEntries.length) {
-                            if (layoutEntries[i + 1].doLayout(bibtex, database).trim().isEmpty()) {
-                                i++;
-                                previousSkipped = true;
-                                continue;
-                            }
-                        }
-                    } else {
-
-                        // if previous was skipped --> remove leading line
-                        // breaks
-                        if (previousSkipped) {
-                            int eol = 0;
-
-                            while ((eol < fieldText.length())
-                                    && ((fieldText.charAt(eol) == '\n') || (fieldText.charAt(eol) == '\r'))) {
-                                eol++;
-                            }
-
-                            if (eol < fieldText.length()) {
-                                sb.append(fieldText.substring(eol));
-                            }
-                        } else {
-                            //System.out.println("ENTRY-BLOCK: " +
-                            //layoutEntries[i].doLayout(bibtex));
-
-                            /*
-                             * if fieldText is not null and the bibtexentry is marked
-                             * as a searchhit, try to highlight the searched words
-                             * 
-                            */
-                            if (bibtex.isSearchHit()) {
-                                sb.append(highlightWords(fieldText, wordsToHighlight));
-                            }
-                            else {
-                                sb.append(fieldText);
-
-                            }
-
-                        }
-                    }
-
-                    previousSkipped = false;
+            StringBuilder sb = new StringBuilder(100);
+            try {
+                if (!writeBlock(sb, bibtex, database, wordsToHighlight, context)) {
+                    return null;
                 }
-
-                return sb.toString();
+            } catch (IOException e) {
+                // Cannot happen, a StringBuilder does not throw IOExceptions.
+                throw new RuntimeException(e);
             }
+            return sb.toString();
         }
         case LayoutHelper.IS_FIELD_END:
         case LayoutHelper.IS_GROUP_END:
@@ -371,6 +416,11 @@ class LayoutEntry {
 
     private static Map<String, LayoutFormatter> pluginLayoutFormatter;
 
+    private static final Map<String, Class<?>> formatterClasses = new ConcurrentHashMap<String, Class<?>>();
+
+    private static final Set<String> missingFormatterClasses = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
 
     private static LayoutFormatter getLayoutFormatterFromPlugins(String formatterName) {
         if (LayoutEntry.pluginLayoutFormatter == null) {
@@ -405,15 +455,36 @@ class LayoutEntry {
         }
     }
 
+    /**
+     * Loads the class with the given name, remembering both the classes found and
+     * the names that are not classes, as layouts try several names per formatter.
+     */
+    private static Class<?> getFormatterClass(String name) throws ClassNotFoundException {
+        Class<?> c = LayoutEntry.formatterClasses.get(name);
+        if (c == null) {
+            if (LayoutEntry.missingFormatterClasses.contains(name)) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                c = Class.forName(name);
+            } catch (ClassNotFoundException ex) {
+                LayoutEntry.missingFormatterClasses.add(name);
+                throw ex;
+            }
+            LayoutEntry.formatterClasses.put(name, c);
+        }
+        return c;
+    }
+
     private static LayoutFormatter getLayoutFormatterByClassName(String className, String classPrefix)
             throws Exception {
 
         if (!className.isEmpty()) {
             try {
                 try {
-                    return (LayoutFormatter) Class.forName(classPrefix + className).newInstance();
+                    return (LayoutFormatter) LayoutEntry.getFormatterClass(classPrefix + className).newInstance();
                 } catch (Throwable ex2) {
-                    return (LayoutFormatter) Class.forName(className).newInstance();
+                    return (LayoutFormatter) LayoutEntry.getFormatterClass(className).newInstance();
                 }
             } catch (ClassNotFoundException ex) {
                 throw new Exception(Globals.lang("Formatter not found") + ": " + className);
@@ -529,7 +600,7 @@ class LayoutEntry {
      * @return String that was called by the method, with HTML Tags if a word was found 
      */
     private String highlightWords(String text, ArrayList<String> toHighlight) {
-        if (toHighlight == null) {
+        if ((toHighlight == null) || text.isEmpty()) {
             return text;
         }
 
@@ -560,4 +631,48 @@ class LayoutEntry {
         }
         return text;
     }
+
+    /**
+     * Passes text on to another Appendable, leaving out the line breaks at its start.
+     */
+    private static class LeadingLineBreakFilter implements Appendable {
+
+        private final Appendable out;
+
+        private boolean atStart = true;
+
+
+        public LeadingLineBreakFilter(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            if (atStart) {
+                while ((start < end) && ((csq.charAt(start) == '\n') || (csq.charAt(start) == '\r'))) {
+                    start++;
+                }
+                atStart = start == end;
+            }
+            if (start < end) {
+                out.append(csq, start, end);
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            if (atStart && ((c == '\n') || (c == '\r'))) {
+                return this;
+            }
+            atStart = false;
+            out.append(c);
+            return this;
+        }
+    }
 }
@@ -0,0 +1,315 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.external;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import net.sf.jabref.JabRefExecutorService;
+import net.sf.jabref.util.FileUtil;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * An in-memory listing of a directory tree, used to find the files to link to
+ * entries without walking the file directories again for every entry.
+ *
+ * The tree is walked level by level, listing all directories of a level in
+ * parallel on the I/O pool, which hides most of the latency of network shares. A refresh lists
+ * only the directories modified since they were last listed: adding, removing or
+ * renaming a file updates the modification time of its directory. Listings made
+ * within the timestamp granularity of the file system are not trusted and are
+ * made again on the next refresh.
+ *
+ * Use:
+ *
+ * FileCatalog catalog = FileCatalog.getCatalog(directory);
+ * List<File> pdfs = catalog.getFiles("pdf");
+ */
+public class FileCatalog {
+
+    /**
+     * Directories modified less than this many milliseconds before being listed
+     * may have been modified again within the same timestamp.
+     */
+    private static final long TIMESTAMP_GRANULARITY = 2000;
+
+    /**
+     * The number of catalogs kept. Each database has a few file directories at
+     * most, so this covers several open databases.
+     */
+    private static final int MAX_CATALOGS = 16;
+
+    /**
+     * The catalogs of the directories searched recently. Catalogs of large trees
+     * take a lot of memory, so the least recently used ones are dropped, and the
+     * rest may be collected when memory runs low. A dropped catalog is simply
+     * built again.
+     */
+    private static final Cache<File, FileCatalog> CATALOGS = CacheBuilder.newBuilder()
+            .maximumSize(FileCatalog.MAX_CATALOGS).softValues().build();
+
+    private final File root;
+
+    private volatile Map<File, Listing> listings = Collections.emptyMap();
+
+    private volatile Map<String, List<File>> filesByExtension = Collections.emptyMap();
+
+
+    /**
+     * The content of a single directory.
+     */
+    private static class Listing {
+
+        private final long lastModified;
+
+        private final long listedAt;
+
+        private final List<File> directories;
+
+        private final List<File> files;
+
+
+        Listing(long lastModified, long listedAt, List<File> directories, List<File> files) {
+            this.lastModified = lastModified;
+            this.listedAt = listedAt;
+            this.directories = directories;
+            this.files = files;
+        }
+    }
+
+
+    private FileCatalog(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the catalog of the given directory tree, brought up to date with the
+     * file system.
+     */
+    public static FileCatalog getCatalog(File root) {
+        FileCatalog catalog;
+        synchronized (FileCatalog.CATALOGS) {
+            catalog = FileCatalog.CATALOGS.getIfPresent(root);
+            if (catalog == null) {
+                catalog = new FileCatalog(root);
+                FileCatalog.CATALOGS.put(root, catalog);
+            }
+        }
+        catalog.refresh();
+        return catalog;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Lists the given directory of the tree from memory. Directories outside of
+     * the tree are listed from the file system.
+     *
+     * @return The files and subdirectories of the directory, or null if it cannot
+     *         be listed.
+     */
+    public File[] listFiles(File directory) {
+        Listing listing = listings.get(directory);
+        if (listing == null) {
+            return directory.listFiles();
+        }
+        File[] result = new File[listing.directories.size() + listing.files.size()];
+        int i = 0;
+        for (File subDirectory : listing.directories) {
+            result[i++] = subDirectory;
+        }
+        for (File file : listing.files) {
+            result[i++] = file;
+        }
+        return result;
+    }
+
+    /**
+     * Lists the subdirectories of the given directory of the tree from memory.
+     * Directories outside of the tree are listed from the file system.
+     */
+    public List<File> listDirectories(File directory) {
+        Listing listing = listings.get(directory);
+        if (listing != null) {
+            return listing.directories;
+        }
+        List<File> result = new ArrayList<File>();
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    result.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all files of the tree with the given extension, which has to be in
+     * lower case.
+     */
+    public List<File> getFiles(String extension) {
+        List<File> result = filesByExtension.get(extension);
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        return result;
+    }
+
+    /**
+     * Brings the catalog up to date with the file system.
+     */
+    public synchronized void refresh() {
+        final Map<File, Listing> previous = listings;
+        Map<File, Listing> current = new HashMap<File, Listing>();
+
+        List<File> level = new ArrayList<File>();
+        if (root.isDirectory()) {
+            level.add(root);
+        }
+        try {
+            while (!level.isEmpty()) {
+                List<Callable<Listing>> tasks = new ArrayList<Callable<Listing>>(level.size());
+                for (final File directory : level) {
+                    tasks.add(new Callable<Listing>() {
+
+                        @Override
+                        public Listing call() {
+                            return FileCatalog.list(directory, previous.get(directory));
+                        }
+                    });
+                }
+
+                List<Future<Listing>> futures = JabRefExecutorService.INSTANCE.invokeAllIO(tasks);
+                List<File> nextLevel = new ArrayList<File>();
+                for (int i = 0; i < level.size(); i++) {
+                    Listing listing = futures.get(i).get();
+                    current.put(level.get(i), listing);
+                    for (File subDirectory : listing.directories) {
+                        if (!current.containsKey(subDirectory)) {
+                            nextLevel.add(subDirectory);
+                        }
+                    }
+                }
+                level = nextLevel;
+            }
+        } catch (InterruptedException e) {
+            // keep the previous state of the catalog
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+
+        Map<String, List<File>> byExtension = new HashMap<String, List<File>>();
+        for (Listing listing : current.values()) {
+            for (File file : listing.files) {
+                String extension = FileUtil.getFileExtension(file);
+                if (extension == null) {
+                    continue;
+                }
+                List<File> files = byExtension.get(extension);
+                if (files == null) {
+                    files = new ArrayList<File>();
+                    byExtension.put(extension, files);
+                }
+                files.add(file);
+            }
+        }
+
+        listings = current;
+        filesByExtension = byExtension;
+    }
+
+    /**
+     * Lists the given directory, or reuses its previous listing if the directory
+     * has not been modified since.
+     */
+    private static Listing list(File directory, Listing previous) {
+        long lastModified = directory.lastModified();
+        if ((previous != null) && (previous.lastModified == lastModified)
+                && (lastModified < (previous.listedAt - FileCatalog.TIMESTAMP_GRANULARITY))) {
+            return previous;
+        }
+
+        long listedAt = System.currentTimeMillis();
+        List<File> directories = new ArrayList<File>();
+        List<File> files = new ArrayList<File>();
+        File[] children = directory.listFiles();
+        if (children != null) { // No permission?
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    if (!FileCatalog.isLinkToAncestor(child)) {
+                        directories.add(child);
+                    }
+                } else {
+                    files.add(child);
+                }
+            }
+        }
+        return new Listing(lastModified, listedAt, directories, files);
+    }
+
+    /**
+     * Tells whether the given directory is a symbolic link to one of its
+     * ancestors, which would make the tree infinite.
+     */
+    private static boolean isLinkToAncestor(File directory) {
+        Path path = directory.toPath();
+        if (!Files.isSymbolicLink(path)) {
+            return false;
+        }
+        try {
+            Path target = path.toRealPath();
+            return path.getParent().toRealPath().startsWith(target);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns the catalogs of the given directories, brought up to date with the
+     * file system.
+     */
+    public static List<FileCatalog> getCatalogs(Collection<File> roots) {
+        List<FileCatalog> result = new ArrayList<FileCatalog>(roots.size());
+        for (File root : roots) {
+            result.add(FileCatalog.getCatalog(root));
+        }
+        return result;
+    }
+}
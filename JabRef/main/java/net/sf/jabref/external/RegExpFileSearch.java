@@ -21,7 +21,6 @@ import net.sf.jabref.util.Util;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.FilenameFilter;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.*;
@@ -39,19 +38,23 @@ public class RegExpFileSearch {
 
     /**
      * Search for file links for a set of entries using regexp. Lists of extensions and directories
-     * are given.
+     * are given. The directories are listed once through their FileCatalog, and the
+     * entries are then matched against the listings in memory.
      * @param entries The entries to search for.
+     * @param database The database the entries belong to, used to resolve string references in
+     *            their fields. May be null.
      * @param extensions The extensions that are acceptable.
      * @param directories The root directories to search.
      * @param regExp The expression deciding which names are acceptable.
      * @return A map linking each given entry to a list of files matching the given criteria.
      */
     public static Map<BibtexEntry, java.util.List<File>> findFilesForSet(Collection<BibtexEntry> entries,
-            Collection<String> extensions, List<File> directories, String regExp) {
+            BibtexDatabase database, Collection<String> extensions, List<File> directories, String regExp) {
 
+        List<FileCatalog> catalogs = FileCatalog.getCatalogs(directories);
         Map<BibtexEntry, java.util.List<File>> res = new HashMap<BibtexEntry, List<File>>();
         for (BibtexEntry entry : entries) {
-            res.put(entry, RegExpFileSearch.findFiles(entry, extensions, directories, regExp));
+            res.put(entry, RegExpFileSearch.findFiles(entry, database, extensions, catalogs, regExp));
         }
         return res;
     }
@@ -60,13 +63,14 @@ public class RegExpFileSearch {
      * Method for searching for files using regexp. A list of extensions and directories can be
      * given.
      * @param entry The entry to search for.
+     * @param database The database of the entry, or null.
      * @param extensions The extensions that are acceptable.
-     * @param directories The root directories to search.
+     * @param catalogs The catalogs of the root directories to search.
      * @param regularExpression The expression deciding which names are acceptable.
      * @return A list of files paths matching the given criteria.
      */
-    private static List<File> findFiles(BibtexEntry entry, Collection<String> extensions,
-                                        Collection<File> directories, String regularExpression) {
+    private static List<File> findFiles(BibtexEntry entry, BibtexDatabase database, Collection<String> extensions,
+                                        Collection<FileCatalog> catalogs, String regularExpression) {
 
         StringBuilder sb = new StringBuilder();
         for (Iterator<String> i = extensions.iterator(); i.hasNext();) {
@@ -77,7 +81,7 @@ public class RegExpFileSearch {
         }
         String extensionRegExp = '(' + sb.toString() + ')';
 
-        return RegExpFileSearch.findFile(entry, null, directories, regularExpression, extensionRegExp, true);
+        return RegExpFileSearch.findFile(entry, database, catalogs, regularExpression, extensionRegExp, true);
     }
 
     /**
@@ -105,12 +109,12 @@ public class RegExpFileSearch {
      * @param entry
      *            non-null
      * @param database
-     *            non-null
-     * @param dirs
-     *            A set of root directories to start the search from. Paths are
-     *            returned relative to these directories if relative is set to
-     *            true. These directories will not be expanded or anything. Use
-     *            the file attribute for this.
+     *            may be null
+     * @param catalogs
+     *            The catalogs of the root directories to start the search from.
+     *            Paths are returned relative to these directories if relative is
+     *            set to true. These directories will not be expanded or anything.
+     *            Use the file attribute for this.
      * @param file
      *            non-null
      *
@@ -120,11 +124,11 @@ public class RegExpFileSearch {
      * @return Will return the first file found to match the given criteria or
      *         null if none was found.
      */
-    private static List<File> findFile(BibtexEntry entry, BibtexDatabase database, Collection<File> dirs,
+    private static List<File> findFile(BibtexEntry entry, BibtexDatabase database, Collection<FileCatalog> catalogs,
                                        String file, String extensionRegExp, boolean relative) {
         ArrayList<File> res = new ArrayList<File>();
-        for (File directory : dirs) {
-            List<File> tmp = RegExpFileSearch.findFile(entry, database, directory.getPath(), file, extensionRegExp, relative);
+        for (FileCatalog catalog : catalogs) {
+            List<File> tmp = RegExpFileSearch.findFile(entry, database, catalog, file, extensionRegExp, relative);
             if (tmp != null) {
                 res.addAll(tmp);
             }
@@ -133,24 +137,19 @@ public class RegExpFileSearch {
     }
 
     /**
-     * Internal Version of findFile, which also accepts a current directory to
-     * base the search on.
+     * Internal Version of findFile, which searches the directory of the given
+     * catalog.
      *
      */
-    private static List<File> findFile(BibtexEntry entry, BibtexDatabase database, String directory,
+    private static List<File> findFile(BibtexEntry entry, BibtexDatabase database, FileCatalog catalog,
                                        String file, String extensionRegExp, boolean relative) {
 
         List<File> res;
-        File root;
-        if (directory == null) {
-            root = new File(".");
-        } else {
-            root = new File(directory);
-        }
+        File root = catalog.getRoot();
         if (!root.exists()) {
             return null;
         }
-        res = RegExpFileSearch.findFile(entry, database, root, file, extensionRegExp);
+        res = RegExpFileSearch.findFile(entry, database, catalog, root, file, extensionRegExp);
 
         if (!res.isEmpty()) {
             for (int i = 0; i < res.size(); i++) {
@@ -179,9 +178,10 @@ public class RegExpFileSearch {
     /**
      * The actual work-horse. Will find absolute filepaths starting from the
      * given directory using the given regular expression string for search.
+     * Directories are listed through the given catalog.
      */
-    private static List<File> findFile(BibtexEntry entry, BibtexDatabase database, File directory,
-                                       String file, String extensionRegExp) {
+    private static List<File> findFile(BibtexEntry entry, BibtexDatabase database, FileCatalog catalog,
+                                       File directory, String file, String extensionRegExp) {
 
         ArrayList<File> res = new ArrayList<File>();
 
@@ -224,15 +224,10 @@ public class RegExpFileSearch {
                 }
                 if (dirToProcess.equals("*")) { // Do for all direct subdirs
 
-                    File[] subDirs = directory.listFiles();
-                    if (subDirs != null) {
-                        String restOfFileString = StringUtil.join(fileParts, "/", i + 1, fileParts.length);
-                        for (File subDir : subDirs) {
-                            if (subDir.isDirectory()) {
-                                res.addAll(RegExpFileSearch.findFile(entry, database, subDir,
-                                        restOfFileString, extensionRegExp));
-                            }
-                        }
+                    String restOfFileString = StringUtil.join(fileParts, "/", i + 1, fileParts.length);
+                    for (File subDir : catalog.listDirectories(directory)) {
+                        res.addAll(RegExpFileSearch.findFile(entry, database, catalog, subDir,
+                                restOfFileString, extensionRegExp));
                     }
                 }
                 // Do for all direct and indirect subdirs
@@ -245,19 +240,13 @@ public class RegExpFileSearch {
                     while (!toDo.isEmpty()) {
 
                         // Get all subdirs of each of the elements found in toDo
-                        File[] subDirs = toDo.remove(0).listFiles();
-                        if (subDirs == null) {
-                            continue;
-                        }
+                        List<File> subDirs = catalog.listDirectories(toDo.remove(0));
 
-                        toDo.addAll(Arrays.asList(subDirs));
+                        toDo.addAll(subDirs);
 
                         for (File subDir : subDirs) {
-                            if (!subDir.isDirectory()) {
-                                continue;
-                            }
-                            res.addAll(RegExpFileSearch.findFile(entry, database, subDir, restOfFileString,
-                                    extensionRegExp));
+                            res.addAll(RegExpFileSearch.findFile(entry, database, catalog, subDir,
+                                    restOfFileString, extensionRegExp));
                         }
                     }
 
@@ -273,15 +262,13 @@ public class RegExpFileSearch {
         final Pattern toMatch = Pattern.compile('^'
                 + filenameToLookFor.replaceAll("\\\\\\\\", "\\\\") + '$', Pattern.CASE_INSENSITIVE);
 
-        File[] matches = directory.listFiles(new FilenameFilter() {
-
-            @Override
-            public boolean accept(File arg0, String arg1) {
-                return toMatch.matcher(arg1).matches();
+        File[] children = catalog.listFiles(directory);
+        if (children != null) {
+            for (File child : children) {
+                if (toMatch.matcher(child.getName()).matches()) {
+                    res.add(child);
+                }
             }
-        });
-        if ((matches != null) && (matches.length > 0)) {
-            Collections.addAll(res, matches);
         }
         return res;
     }
@@ -0,0 +1,222 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.groups;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+import net.sf.jabref.groups.structure.AbstractGroup;
+import net.sf.jabref.groups.structure.ExplicitGroup;
+import net.sf.jabref.groups.structure.GroupHierarchyType;
+
+/**
+ * Membership of the entries of a database in groups, stored as bit sets over
+ * entry ordinals. Selecting, combining and inverting groups thus become bit set
+ * operations instead of applying the group's search rules to every entry.
+ *
+ * A group's bit set is filled when the group is first shown or combined, by
+ * testing every entry once. Afterwards an added or edited entry is tested only
+ * against the groups that have a bit set, and a removed entry just clears its bit.
+ * Explicit groups are not cached, since their assignments change without any
+ * database event; their members are looked up from their entry set instead.
+ *
+ * All returned bit sets are copies which the caller may modify.
+ */
+public class GroupMembershipIndex implements DatabaseChangeListener {
+
+    private final Map<BibtexEntry, Integer> ordinals = new IdentityHashMap<BibtexEntry, Integer>();
+
+    private final List<BibtexEntry> entries = new ArrayList<BibtexEntry>();
+
+    private final BitSet live = new BitSet();
+
+    // All ordinals below this one are in use:
+    private int firstFree = 0;
+
+    /**
+     * Groups are immutable apart from their hierarchical context, which does not
+     * influence their own members, so computed memberships remain valid as long as
+     * the group object is in use.
+     */
+    private final Map<AbstractGroup, BitSet> members = new WeakHashMap<AbstractGroup, BitSet>();
+
+
+    /**
+     * Assigns ordinals to all entries of the given database and registers the
+     * index as listener, so that later changes are indexed as well.
+     */
+    public GroupMembershipIndex(BibtexDatabase database) {
+        synchronized (database) {
+            for (BibtexEntry entry : database.getEntries()) {
+                addEntry(entry);
+            }
+            database.addDatabaseChangeListener(this);
+        }
+    }
+
+    @Override
+    public synchronized void databaseChanged(DatabaseChangeEvent e) {
+        switch (e.getType()) {
+        case ADDED_ENTRY:
+            addEntry(e.getEntry());
+            break;
+        case REMOVED_ENTRY:
+            removeEntry(e.getEntry());
+            break;
+        case CHANGED_ENTRY:
+            Integer ordinal = ordinals.get(e.getEntry());
+            if (ordinal != null) {
+                updateEntry(e.getEntry(), ordinal);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Returns the ordinals of all entries of the database.
+     */
+    public synchronized BitSet getAllEntries() {
+        return (BitSet) live.clone();
+    }
+
+    /**
+     * Returns the ordinals of the given entries. Entries not belonging to the
+     * database are ignored.
+     */
+    public synchronized BitSet getOrdinals(BibtexEntry[] entries) {
+        return getOrdinals(Arrays.asList(entries));
+    }
+
+    /**
+     * Returns the entries with the given ordinals.
+     */
+    public synchronized List<BibtexEntry> getEntries(BitSet ordinals) {
+        List<BibtexEntry> result = new ArrayList<BibtexEntry>(ordinals.cardinality());
+        for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) {
+            if (live.get(i)) {
+                result.add(entries.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ordinals of the entries contained in the given group itself,
+     * regardless of its hierarchical context.
+     */
+    public synchronized BitSet getMembers(AbstractGroup group) {
+        if (group instanceof ExplicitGroup) {
+            return getOrdinals(((ExplicitGroup) group).getEntries());
+        }
+
+        BitSet result = members.get(group);
+        if (result == null) {
+            result = new BitSet();
+            for (int i = live.nextSetBit(0); i >= 0; i = live.nextSetBit(i + 1)) {
+                if (group.contains(entries.get(i))) {
+                    result.set(i);
+                }
+            }
+            members.put(group, result);
+        }
+        return (BitSet) result.clone();
+    }
+
+    /**
+     * Returns the ordinals of the entries the given node selects, taking the
+     * hierarchical context of its group into account. This is the bit set
+     * counterpart of GroupTreeNode.getSearchRule().
+     */
+    public synchronized BitSet getMembers(GroupTreeNode node) {
+        return getMembers(node, node.getGroup().getHierarchicalContext());
+    }
+
+    private BitSet getMembers(GroupTreeNode node, GroupHierarchyType originalContext) {
+        final GroupHierarchyType context = node.getGroup().getHierarchicalContext();
+        BitSet result = getMembers(node.getGroup());
+        if ((context == GroupHierarchyType.INCLUDING)
+                && (originalContext != GroupHierarchyType.REFINING)) {
+            for (int i = 0; i < node.getChildCount(); ++i) {
+                result.or(getMembers((GroupTreeNode) node.getChildAt(i), originalContext));
+            }
+        } else if ((context == GroupHierarchyType.REFINING) && !node.isRoot()
+                && (originalContext != GroupHierarchyType.INCLUDING)) {
+            result.and(getMembers((GroupTreeNode) node.getParent(), originalContext));
+        }
+        return result;
+    }
+
+    private BitSet getOrdinals(Collection<BibtexEntry> entries) {
+        BitSet result = new BitSet();
+        for (BibtexEntry entry : entries) {
+            Integer ordinal = ordinals.get(entry);
+            if (ordinal != null) {
+                result.set(ordinal);
+            }
+        }
+        return result;
+    }
+
+    private void addEntry(BibtexEntry entry) {
+        if (ordinals.containsKey(entry)) {
+            return;
+        }
+
+        // reuse the ordinals of removed entries to keep the bit sets dense
+        int ordinal = live.nextClearBit(firstFree);
+        firstFree = ordinal + 1;
+        if (ordinal == entries.size()) {
+            entries.add(entry);
+        } else {
+            entries.set(ordinal, entry);
+        }
+        ordinals.put(entry, ordinal);
+        live.set(ordinal);
+        updateEntry(entry, ordinal);
+    }
+
+    private void removeEntry(BibtexEntry entry) {
+        Integer ordinal = ordinals.remove(entry);
+        if (ordinal == null) {
+            return;
+        }
+
+        entries.set(ordinal, null);
+        live.clear(ordinal);
+        firstFree = Math.min(firstFree, ordinal);
+        for (BitSet groupMembers : members.values()) {
+            groupMembers.clear(ordinal);
+        }
+    }
+
+    private void updateEntry(BibtexEntry entry, int ordinal) {
+        for (Map.Entry<AbstractGroup, BitSet> groupMembers : members.entrySet()) {
+            groupMembers.getValue().set(ordinal, groupMembers.getKey().contains(entry));
+        }
+    }
+}
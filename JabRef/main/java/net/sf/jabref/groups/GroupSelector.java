@@ -28,6 +28,7 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
@@ -69,13 +70,9 @@ import net.sf.jabref.JabRefPreferences;
 import net.sf.jabref.MetaData;
 import net.sf.jabref.groups.structure.AbstractGroup;
 import net.sf.jabref.groups.structure.AllEntriesGroup;
-import net.sf.jabref.search.rules.InvertSearchRule;
-import net.sf.jabref.search.SearchRule;
 import net.sf.jabref.SidePaneComponent;
 import net.sf.jabref.SidePaneManager;
 import net.sf.jabref.help.HelpAction;
-import net.sf.jabref.search.rules.sets.SearchRuleSets;
-import net.sf.jabref.search.rules.sets.SearchRuleSet;
 import net.sf.jabref.undo.NamedCompound;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -763,15 +760,26 @@ public class GroupSelector extends SidePaneComponent implements
     }
 
     private void updateSelections() {
-        final SearchRuleSet searchRules = SearchRuleSets.build(andCb.isSelected() ? SearchRuleSets.RuleSetType.AND : SearchRuleSets.RuleSetType.OR);
+        GroupMembershipIndex index = panel.getDatabase().getGroupMembershipIndex();
         TreePath[] selection = groupsTree.getSelectionPaths();
 
+        BitSet hits = null;
         for (TreePath aSelection : selection) {
-            SearchRule searchRule = ((GroupTreeNode) aSelection.getLastPathComponent()).getSearchRule();
-            searchRules.addRule(searchRule);
+            BitSet members = index.getMembers((GroupTreeNode) aSelection.getLastPathComponent());
+            if (hits == null) {
+                hits = members;
+            } else if (andCb.isSelected()) {
+                hits.and(members);
+            } else {
+                hits.or(members);
+            }
+        }
+        if (invCb.isSelected()) {
+            BitSet all = index.getAllEntries();
+            all.andNot(hits);
+            hits = all;
         }
-        SearchRule searchRule = invCb.isSelected() ? new InvertSearchRule(searchRules) : searchRules;
-        GroupingWorker worker = new GroupingWorker(searchRule, SearchRule.DUMMY_QUERY);
+        GroupingWorker worker = new GroupingWorker(index, hits);
         worker.getWorker().run();
         worker.getCallBack().update();
         /*panel.setGroupMatcher(new SearchMatcher(searchRules, searchOptions));
@@ -785,30 +793,24 @@ public class GroupSelector extends SidePaneComponent implements
 
     class GroupingWorker extends AbstractWorker {
 
-        private final SearchRule rules;
-        private final String searchTerm;
-        private final ArrayList<BibtexEntry> matches = new ArrayList<BibtexEntry>();
+        private final GroupMembershipIndex index;
+        private final BitSet hits;
         private final boolean showOverlappingGroupsP;
-        int hits = 0;
 
 
-        public GroupingWorker(SearchRule rules, String searchTerm) {
-            this.rules = rules;
-            this.searchTerm = searchTerm;
+        public GroupingWorker(GroupMembershipIndex index, BitSet hits) {
+            this.index = index;
+            this.hits = hits;
             showOverlappingGroupsP = showOverlappingGroups.isSelected();
         }
 
         @Override
         public void run() {
             for (BibtexEntry entry : panel.getDatabase().getEntries()) {
-                boolean hit = rules.applyRule(searchTerm, entry);
-                entry.setGroupHit(hit);
-                if (hit) {
-                    hits++;
-                    if (showOverlappingGroupsP) {
-                        matches.add(entry);
-                    }
-                }
+                entry.setGroupHit(false);
+            }
+            for (BibtexEntry entry : index.getEntries(hits)) {
+                entry.setGroupHit(true);
             }
         }
 
@@ -825,7 +827,7 @@ public class GroupSelector extends SidePaneComponent implements
             }
 
             if (showOverlappingGroupsP) {
-                showOverlappingGroups(matches);
+                showOverlappingGroups(index, hits);
             }
             frame.output(Globals.lang("Updated group selection") + ".");
         }
@@ -1527,24 +1529,19 @@ public class GroupSelector extends SidePaneComponent implements
             groupsTree.revalidate();
             return;
         }
+        GroupMembershipIndex index = panel.getDatabase().getGroupMembershipIndex();
+        BitSet selected = index.getOrdinals(entries);
         Vector<GroupTreeNode> vec = new Vector<GroupTreeNode>();
         for (Enumeration<GroupTreeNode> e = groupsRoot.preorderEnumeration(); e.hasMoreElements(); ) {
             GroupTreeNode node = e.nextElement();
-            AbstractGroup group = node.getGroup();
-            int i;
-            for (i = 0; i < entries.length; ++i) {
-                if (requireAll) {
-                    if (!group.contains(entries[i])) {
-                        break;
-                    }
-                } else {
-                    if (group.contains(entries[i])) {
-                        vec.add(node);
-                    }
+            BitSet members = index.getMembers(node.getGroup());
+            if (requireAll) {
+                BitSet missing = (BitSet) selected.clone();
+                missing.andNot(members);
+                if (missing.isEmpty()) {
+                    vec.add(node);
                 }
-            }
-            if (requireAll && (i >= entries.length)) // did not break from loop
-            {
+            } else if (members.intersects(selected)) {
                 vec.add(node);
             }
         }
@@ -1563,17 +1560,12 @@ public class GroupSelector extends SidePaneComponent implements
      * Show groups that, if selected, would show at least one
      * of the entries found in the specified search.
      */
-    private void showOverlappingGroups(List<BibtexEntry> matches) { //DatabaseSearch search) {
+    private void showOverlappingGroups(GroupMembershipIndex index, BitSet matches) {
         List<GroupTreeNode> nodes = new ArrayList<GroupTreeNode>();
         for (Enumeration<GroupTreeNode> e = groupsRoot.depthFirstEnumeration(); e.hasMoreElements(); ) {
             GroupTreeNode node = e.nextElement();
-            SearchRule rule = node.getSearchRule();
-            for (BibtexEntry match : matches) {
-                if (!rule.applyRule(SearchRule.DUMMY_QUERY, match)) {
-                    continue;
-                }
+            if (index.getMembers(node).intersects(matches)) {
                 nodes.add(node);
-                break;
             }
         }
         groupsTree.setHighlight2Cells(nodes.toArray());
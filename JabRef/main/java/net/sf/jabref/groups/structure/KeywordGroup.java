@@ -35,6 +35,7 @@ public class KeywordGroup extends AbstractGroup {
 
     private final String searchField;
     private final String searchExpression;
+    private final String lowerCaseSearchExpression;
     private final boolean caseSensitive;
     private final boolean regExp;
     private Pattern pattern = null;
@@ -48,6 +49,7 @@ public class KeywordGroup extends AbstractGroup {
         super(name, context);
         this.searchField = searchField;
         this.searchExpression = searchExpression;
+        this.lowerCaseSearchExpression = searchExpression.toLowerCase();
         this.caseSensitive = caseSensitive;
         this.regExp = regExp;
         if (this.regExp) {
@@ -251,6 +253,10 @@ public class KeywordGroup extends AbstractGroup {
 
     @Override
     public boolean contains(BibtexEntry entry) {
+        if (!regExp && !caseSensitive) {
+            String content = entry.getLowerCaseField(searchField);
+            return (content != null) && KeywordGroup.containsWord(lowerCaseSearchExpression, content);
+        }
         String content = entry.getField(searchField);
         if (content == null) {
             return false;
@@ -258,10 +264,7 @@ public class KeywordGroup extends AbstractGroup {
         if (regExp) {
             return pattern.matcher(content).find();
         }
-        if (caseSensitive) {
-            return KeywordGroup.containsWord(searchExpression, content);
-        }
-        return KeywordGroup.containsWord(searchExpression.toLowerCase(), content.toLowerCase());
+        return KeywordGroup.containsWord(searchExpression, content);
     }
 
     /**
@@ -13,6 +13,7 @@ import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -75,7 +76,7 @@ import net.sf.jabref.groups.GroupTreeNode;
 import net.sf.jabref.groups.UndoableChangeAssignment;
 import net.sf.jabref.help.HelpAction;
 import net.sf.jabref.imports.ImportInspector;
-import net.sf.jabref.labelPattern.LabelPatternUtil;
+import net.sf.jabref.labelPattern.KeyGenerator;
 import net.sf.jabref.undo.NamedCompound;
 import net.sf.jabref.undo.UndoableInsertEntry;
 import net.sf.jabref.undo.UndoableRemoveEntry;
@@ -389,6 +390,17 @@ public class ImportInspectionDialog extends JDialog implements ImportInspector,
      */
     public void addEntries(Collection<BibtexEntry> entries) {
 
+        // Look up the duplicates in the background database for all entries at once:
+        Map<BibtexEntry, BibtexEntry> duplicates = Collections.emptyMap();
+        if (panel != null) {
+            try {
+                duplicates = DuplicateCheck.containsDuplicates(panel.database(), entries);
+            } catch (InterruptedException ignored) {
+                // Check the entries one by one below.
+                duplicates = null;
+            }
+        }
+
         for (BibtexEntry entry : entries) {
             // We exploit the entry's search status for indicating "Keep"
             // status:
@@ -398,7 +410,9 @@ public class ImportInspectionDialog extends JDialog implements ImportInspector,
             // Checking duplicates means both checking against the background
             // database (if
             // applicable) and against entries already in the table.
-            if (((panel != null) && (DuplicateCheck.containsDuplicate(panel.database(), entry) != null)) ||
+            boolean duplicate = duplicates == null ? DuplicateCheck.containsDuplicate(panel.database(), entry) != null
+                    : duplicates.containsKey(entry);
+            if (duplicate ||
                     (internalDuplicate(this.entries, entry) != null)) {
                 entry.setGroupHit(true);
                 deselectAllDuplicates.setEnabled(true);
@@ -517,19 +531,14 @@ public class ImportInspectionDialog extends JDialog implements ImportInspector,
             database = new BibtexDatabase();
             metaData = new MetaData();
         }
+        // Generate a unique key. The entry is not in the database, so its own key
+        // does not count:
         try {
-            entry.setId(IdGenerator.next());
-            // Add the entry to the database we are working with:
-            database.insertEntry(entry);
-        } catch (KeyCollisionException ex) {
-            ex.printStackTrace();
-        }
-        // Generate a unique key:
-        LabelPatternUtil.makeLabel(metaData, database, entry);
-        // Remove the entry from the database again, since we only added it in
-        // order to
-        // make sure the key was unique:
-        database.removeEntry(entry.getId());
+            String key = new KeyGenerator(metaData, database).generateKeys(Collections.singletonList(entry)).get(0);
+            entry.setField(BibtexFields.KEY_FIELD, key);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
 
         entries.getReadWriteLock().writeLock().lock();
         glTable.repaint();
@@ -555,30 +564,15 @@ public class ImportInspectionDialog extends JDialog implements ImportInspector,
             metaData = new MetaData();
         }
 
-        List<String> keys = new ArrayList<String>(entries.size());
-        // Iterate over the entries, add them to the database we are working
-        // with,
-        // and generate unique keys:
-        for (BibtexEntry entry : entries) {
-            // if (newDatabase) {
-            try {
-                entry.setId(IdGenerator.next());
-                database.insertEntry(entry);
-            } catch (KeyCollisionException ex) {
-                ex.printStackTrace();
+        // The keys are unique among the entries and with respect to the database,
+        // which the entries are not added to yet:
+        try {
+            List<String> keys = new KeyGenerator(metaData, database).generateKeys(entries);
+            for (int i = 0; i < entries.size(); i++) {
+                entries.get(i).setField(BibtexFields.KEY_FIELD, keys.get(i));
             }
-            // }
-            LabelPatternUtil.makeLabel(metaData, database, entry);
-            // Add the generated key to our list:
-            keys.add(entry.getCiteKey());
-        }
-        // Remove the entries from the database again, since they are not
-        // supposed to
-        // added yet. They only needed to be in it while we generated the keys,
-        // to keep
-        // control over key uniqueness.
-        for (BibtexEntry entry : entries) {
-            database.removeEntry(entry.getId());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
         entries.getReadWriteLock().writeLock().lock();
         glTable.repaint();
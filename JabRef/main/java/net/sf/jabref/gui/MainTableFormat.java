@@ -15,13 +15,18 @@
 */
 package net.sf.jabref.gui;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 import net.sf.jabref.AuthorList;
 import net.sf.jabref.BasePanel;
 import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.BibtexFields;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
 import net.sf.jabref.GUIGlobals;
 import net.sf.jabref.Globals;
 import net.sf.jabref.JabRefPreferences;
@@ -43,8 +48,16 @@ import javax.swing.JLabel;
 
 /**
  * Class defining the contents and column headers of the main table.
+ *
+ * The values of the cells are computed when they are first painted and cached per
+ * entry. The cache of an entry is dropped when the entry changes, which the format
+ * learns as a listener of the database, and the whole cache is dropped when the
+ * table format is updated from the preferences. Cells whose values change without
+ * such notice, file icons and authors given by strings, are not cached. The format
+ * counts the computations per column and the time they take, to show which columns
+ * are costly to render.
  */
-public class MainTableFormat implements TableFormat<BibtexEntry> {
+public class MainTableFormat implements TableFormat<BibtexEntry>, DatabaseChangeListener {
 
     // Character separating field names that are to be used in sequence as
     // fallbacks for a single column (e.g. "author/editor" to use editor where
@@ -83,11 +96,58 @@ public class MainTableFormat implements TableFormat<BibtexEntry> {
     private boolean namesLf;
     private boolean namesLastOnly;
 
+    /**
+     * Marks cells not computed yet, as null is a valid cell value.
+     */
+    private static final Object NOT_COMPUTED = new Object();
+
+    private final Map<BibtexEntry, Object[]> cellCache = new WeakHashMap<BibtexEntry, Object[]>();
+
+    private long cacheHits;
+    private int[] computations = new int[0];
+    private long[] computationNanos = new long[0];
+
 
     public MainTableFormat(BasePanel panel) {
         this.panel = panel;
     }
 
+    @Override
+    public void databaseChanged(DatabaseChangeEvent e) {
+        switch (e.getType()) {
+        case CHANGED_ENTRY:
+        case REMOVED_ENTRY:
+            synchronized (cellCache) {
+                cellCache.remove(e.getEntry());
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Returns the number of cell values of the given column computed so far.
+     */
+    public synchronized int getComputations(int col) {
+        return col < computations.length ? computations[col] : 0;
+    }
+
+    /**
+     * Returns the time spent computing cell values of the given column so far, in
+     * nanoseconds.
+     */
+    public synchronized long getComputationNanos(int col) {
+        return col < computationNanos.length ? computationNanos[col] : 0;
+    }
+
+    /**
+     * Returns the number of cell values taken from the cache so far.
+     */
+    public synchronized long getCacheHits() {
+        return cacheHits;
+    }
+
     @Override
     public int getColumnCount() {
         return padleft + columns.length;
@@ -214,6 +274,71 @@ public class MainTableFormat implements TableFormat<BibtexEntry> {
 
     @Override
     public Object getColumnValue(BibtexEntry be, int col) {
+        if (col == 0) {
+            return "#";
+        }
+
+        Object[] row;
+        synchronized (cellCache) {
+            row = cellCache.get(be);
+            if ((row == null) || (row.length != getColumnCount())) {
+                row = new Object[getColumnCount()];
+                Arrays.fill(row, MainTableFormat.NOT_COMPUTED);
+                cellCache.put(be, row);
+            } else if (row[col] != MainTableFormat.NOT_COMPUTED) {
+                synchronized (this) {
+                    cacheHits++;
+                }
+                return row[col];
+            }
+        }
+
+        long start = System.nanoTime();
+        Object o = computeColumnValue(be, col);
+        synchronized (this) {
+            if (col < computations.length) {
+                computations[col]++;
+                computationNanos[col] += System.nanoTime() - start;
+            }
+        }
+        if (!showsFileTypes(col) && !dependsOnStrings(be, col)) {
+            synchronized (cellCache) {
+                // only if the entry has not changed meanwhile:
+                if (cellCache.get(be) == row) {
+                    row[col] = o;
+                }
+            }
+        }
+        return o;
+    }
+
+    /**
+     * Tells whether the given column shows the icons of file types, which are edited
+     * without any event reaching the table.
+     */
+    private boolean showsFileTypes(int col) {
+        String[] iconType = getIconTypeForColumn(col);
+        return (iconType != null) && iconType[0].equals(GUIGlobals.FILE_FIELD);
+    }
+
+    /**
+     * Tells whether the value of the given cell refers to strings of the database,
+     * which may change without notice.
+     */
+    private boolean dependsOnStrings(BibtexEntry be, int col) {
+        if ((getIconTypeForColumn(col) != null) || !getColumnName(col).equals("Author")) {
+            return false;
+        }
+        for (String field : columns[col - padleft]) {
+            String value = be.getFieldOrAlias(field);
+            if (value != null) {
+                return value.indexOf('#') >= 0;
+            }
+        }
+        return false;
+    }
+
+    private Object computeColumnValue(BibtexEntry be, int col) {
         Object o = null;
         String[] iconType = getIconTypeForColumn(col); // If non-null, indicates an icon column's type.
 
@@ -476,6 +601,15 @@ public class MainTableFormat implements TableFormat<BibtexEntry> {
         for (int i = 0; i < nameCols.length; i++) {
             nameCols[i] = tmp.elementAt(i);
         }
+
+        // The name format or the columns may have changed:
+        synchronized (cellCache) {
+            cellCache.clear();
+        }
+        synchronized (this) {
+            computations = new int[getColumnCount()];
+            computationNanos = new long[getColumnCount()];
+        }
     }
 
 }
@@ -29,12 +29,21 @@
 package net.sf.jabref.imports;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -56,8 +65,17 @@ import org.apache.commons.logging.LogFactory;
  * 
  * ParserResult result = BibtexParser.parse(reader);
  * 
+ * or, to decode a whole file into memory first and parse it from there,
+ * 
+ * ParserResult result = BibtexParser.parse(file, encoding);
+ * 
  * Can be used stand-alone.
  * 
+ * The parser does not read through a PushbackReader. All characters are
+ * taken from an internal char array, which is either refilled in large
+ * chunks from the given reader or holds the complete decoded input. Lookahead
+ * and unread are plain index operations on that array.
+ * 
  * @author David Weitzman
  * @author Nizar N. Batada
  * @author Morten O. Alver
@@ -67,7 +85,22 @@ public class BibtexParser {
 
     private static final Log LOGGER = LogFactory.getLog(BibtexParser.class);
 
-    private final PushbackReader pushbackReader;
+    /**
+     * Source of further characters, or null if the whole input already is in the buffer.
+     */
+    private final Reader reader;
+
+    private boolean readerExhausted = false;
+
+    /**
+     * The first LOOKAHEAD positions of the buffer are reserved, so that characters can
+     * always be unread, even directly after a refill or at the beginning of the input.
+     */
+    private char[] buffer;
+
+    private int pos;
+
+    private int limit;
 
     private BibtexDatabase database;
 
@@ -81,7 +114,17 @@ public class BibtexParser {
 
     private ParserResult parserResult;
 
-    private static final Integer LOOKAHEAD = 64;
+    private HashMap<String, String> meta;
+
+    /**
+     * Only set while parsing a chunk for ParallelBibtexParser. Parsed entries, strings and
+     * warnings are then collected here in input order instead of being put into the database.
+     */
+    private List<Object> chunkItems;
+
+    private static final int LOOKAHEAD = 64;
+
+    private static final int BUFFER_SIZE = 65536;
 
     private final boolean autoDoubleBraces;
 
@@ -95,7 +138,40 @@ public class BibtexParser {
             Globals.prefs = JabRefPreferences.getInstance();
         }
         autoDoubleBraces =JabRefPreferences.getInstance().isAutoDoubleBraces();
-        pushbackReader = new PushbackReader(in, BibtexParser.LOOKAHEAD);
+        reader = in;
+        buffer = new char[BibtexParser.LOOKAHEAD + BibtexParser.BUFFER_SIZE];
+        pos = BibtexParser.LOOKAHEAD;
+        limit = BibtexParser.LOOKAHEAD;
+    }
+
+    /**
+     * Creates a parser working on the given characters only.
+     * 
+     * @param content The input, starting at index LOOKAHEAD.
+     * @param end Index after the last character of the input.
+     */
+    private BibtexParser(char[] content, int end) {
+        this(content, end, 1);
+    }
+
+    /**
+     * Creates a parser working on the given characters only.
+     * 
+     * @param content The input, starting at index LOOKAHEAD.
+     * @param end Index after the last character of the input.
+     * @param firstLine The line number of the first character, used in warnings.
+     */
+    BibtexParser(char[] content, int end, int firstLine) {
+        if (Globals.prefs == null) {
+            Globals.prefs = JabRefPreferences.getInstance();
+        }
+        autoDoubleBraces = JabRefPreferences.getInstance().isAutoDoubleBraces();
+        reader = null;
+        readerExhausted = true;
+        buffer = content;
+        pos = BibtexParser.LOOKAHEAD;
+        limit = end;
+        line = firstLine;
     }
 
     /**
@@ -110,6 +186,91 @@ public class BibtexParser {
         return parser.parse();
     }
 
+    /**
+     * Parses the given file. The file is decoded in one go, so the parser afterwards
+     * works on a single char array without touching any reader.
+     * 
+     * @param file The file to parse.
+     * @param encoding The encoding of the file.
+     * @throws IOException
+     */
+    public static ParserResult parse(File file, String encoding) throws IOException {
+        CharBuffer chars = BibtexParser.readFile(file, encoding);
+        return new BibtexParser(chars.array(), chars.position()).parse();
+    }
+
+    /**
+     * Reads and decodes the given file. The file is read through a small byte buffer,
+     * so only the decoded chars are held in memory, and the file is closed (and can be
+     * renamed or replaced) as soon as this method returns.
+     * 
+     * @return A heap buffer holding the decoded file from index LOOKAHEAD on, positioned after
+     * the last character.
+     */
+    static CharBuffer readFile(File file, String encoding) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            CharsetDecoder decoder = Charset.forName(encoding).newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            long size = channel.size();
+            int estimate = (int) Math.min(Integer.MAX_VALUE - BibtexParser.LOOKAHEAD - 1,
+                    Math.ceil(size * (double) decoder.averageCharsPerByte()));
+            CharBuffer chars = CharBuffer.allocate(BibtexParser.LOOKAHEAD + estimate + 1);
+            chars.position(BibtexParser.LOOKAHEAD);
+
+            ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(BibtexParser.BUFFER_SIZE, size + 1));
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                endOfInput = channel.read(bytes) < 0;
+                bytes.flip();
+                chars = BibtexParser.decode(decoder, bytes, chars, endOfInput);
+                bytes.compact();
+            }
+            while (decoder.flush(chars).isOverflow()) {
+                chars = BibtexParser.enlarge(chars);
+            }
+            return chars;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Index of the first character in buffers handed out by readFile().
+     */
+    static int getContentStart() {
+        return BibtexParser.LOOKAHEAD;
+    }
+
+    /**
+     * Decodes the given bytes into the given char buffer, enlarging it as needed.
+     * Malformed and unmappable input is replaced, as an InputStreamReader would do.
+     * 
+     * @return The buffer, positioned after the last decoded character.
+     */
+    private static CharBuffer decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars,
+            boolean endOfInput) throws CharacterCodingException {
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            if (result.isOverflow()) {
+                chars = BibtexParser.enlarge(chars);
+            } else if (result.isError()) {
+                result.throwException();
+            }
+        } while (!result.isUnderflow());
+        return chars;
+    }
+
+    private static CharBuffer enlarge(CharBuffer chars) {
+        CharBuffer larger = CharBuffer.allocate((2 * chars.capacity()) + 1);
+        chars.flip();
+        larger.put(chars);
+        return larger;
+    }
+
     /**
      * Parses BibtexEntries from the given string and returns the collection of all entries found.
      * 
@@ -118,8 +279,9 @@ public class BibtexParser {
      * @return Returns null if an error occurred, returns an empty collection if no entries where found. 
      */
     public static Collection<BibtexEntry> fromString(String bibtexString) {
-        StringReader reader = new StringReader(bibtexString);
-        BibtexParser parser = new BibtexParser(reader);
+        char[] content = new char[BibtexParser.LOOKAHEAD + bibtexString.length()];
+        bibtexString.getChars(0, bibtexString.length(), content, BibtexParser.LOOKAHEAD);
+        BibtexParser parser = new BibtexParser(content, content.length);
         try {
             return parser.parse().getDatabase().getEntries();
         } catch (Exception e) {
@@ -242,7 +404,7 @@ public class BibtexParser {
         }
 
         database = new BibtexDatabase(); // Bibtex related contents.
-        HashMap<String, String> meta = new HashMap<String, String>();
+        meta = new HashMap<String, String>();
         entryTypes = new HashMap<String, BibtexEntryType>(); // To store custem entry types parsed.
         parserResult = new ParserResult(database, null, entryTypes);
 
@@ -276,15 +438,13 @@ public class BibtexParser {
                         database.setPreamble(parsePreamble());
                     } else if (entryType.toLowerCase().equals("string")) {
                         BibtexString bs = parseString();
-                        try {
-                            database.addString(bs);
-                        } catch (KeyCollisionException ex) {
-                            parserResult.addWarning(Globals.lang("Duplicate string name") + ": "
-                                    + bs.getName());
-                            // ex.printStackTrace();
+                        if (chunkItems != null) {
+                            chunkItems.add(bs);
+                        } else {
+                            BibtexParser.insertString(database, bs, parserResult);
                         }
                     } else if (entryType.toLowerCase().equals("comment")) {
-                        StringBuffer commentBuf = parseBracketedTextExactly();
+                        StringBuilder commentBuf = parseBracketedTextExactly();
                         /**
                          * 
                          * Metadata are used to store Bibkeeper-specific
@@ -367,17 +527,14 @@ public class BibtexParser {
                     try {
                         BibtexEntry be = parseEntry(tp);
 
-                        boolean duplicateKey = database.insertEntry(be);
-                        if (duplicateKey) {
-                            parserResult.addDuplicateKey(be.getCiteKey());
-                        } else if ((be.getCiteKey() == null) || be.getCiteKey().equals("")) {
-                            parserResult.addWarning(Globals.lang("empty BibTeX key") + ": "
-                                    + be.getAuthorTitleYear(40) + " ("
-                                    + Globals.lang("grouping may not work for this entry") + ")");
+                        if (chunkItems != null) {
+                            chunkItems.add(be);
+                        } else {
+                            BibtexParser.insertEntry(database, be, parserResult);
                         }
                     } catch (IOException ex) {
                         LOGGER.warn("Could not parse entry", ex);
-                        parserResult.addWarning(Globals.lang("Error occured when parsing entry") + ": '"
+                        addWarning(Globals.lang("Error occured when parsing entry") + ": '"
                                 + ex.getMessage() + "'. " + Globals.lang("Skipped entry."));
 
                     }
@@ -386,9 +543,14 @@ public class BibtexParser {
                 skipWhitespace();
             }
 
+            // A chunk is finished by ParallelBibtexParser once all chunks are merged:
+            if (chunkItems != null) {
+                return parserResult;
+            }
+
             // Before returning the database, update entries with unknown type
             // based on parsed type definitions, if possible.
-            checkEntryTypes(parserResult);
+            BibtexParser.checkEntryTypes(database, entryTypes, parserResult);
 
             // Instantiate meta data:
             parserResult.setMetaData(new MetaData(meta, database));
@@ -400,7 +562,65 @@ public class BibtexParser {
         }
     }
 
+    /**
+     * Parses one chunk of a file for ParallelBibtexParser. Entries, strings and warnings
+     * are added to the given list in input order instead of being put into the database,
+     * and entry types and meta data are not resolved. The preamble, meta data comments
+     * and custom entry types of the chunk are available from the returned result and
+     * getMeta().
+     */
+    ParserResult parseChunk(List<Object> items) throws IOException {
+        chunkItems = items;
+        return parse();
+    }
+
+    /**
+     * @return The meta data comments found by parse(), by meta data type.
+     */
+    HashMap<String, String> getMeta() {
+        return meta;
+    }
+
+    /**
+     * Inserts a parsed entry into the database, noting duplicate and empty keys.
+     */
+    static void insertEntry(BibtexDatabase database, BibtexEntry be, ParserResult parserResult)
+            throws KeyCollisionException {
+        boolean duplicateKey = database.insertEntry(be);
+        if (duplicateKey) {
+            parserResult.addDuplicateKey(be.getCiteKey());
+        } else if ((be.getCiteKey() == null) || be.getCiteKey().equals("")) {
+            parserResult.addWarning(Globals.lang("empty BibTeX key") + ": "
+                    + be.getAuthorTitleYear(40) + " ("
+                    + Globals.lang("grouping may not work for this entry") + ")");
+        }
+    }
+
+    /**
+     * Inserts a parsed string into the database, noting duplicate names.
+     */
+    static void insertString(BibtexDatabase database, BibtexString bs, ParserResult parserResult) {
+        try {
+            database.addString(bs);
+        } catch (KeyCollisionException ex) {
+            parserResult.addWarning(Globals.lang("Duplicate string name") + ": "
+                    + bs.getName());
+            // ex.printStackTrace();
+        }
+    }
+
+    private void addWarning(String warning) {
+        if (chunkItems != null) {
+            chunkItems.add(warning);
+        } else {
+            parserResult.addWarning(warning);
+        }
+    }
+
     private int peek() throws IOException {
+        if (pos < limit) {
+            return buffer[pos];
+        }
         int c = read();
         unread(c);
 
@@ -408,18 +628,53 @@ public class BibtexParser {
     }
 
     private int read() throws IOException {
-        int c = pushbackReader.read();
+        if ((pos == limit) && !fill()) {
+            return -1;
+        }
+        char c = buffer[pos++];
         if (c == '\n') {
             line++;
         }
         return c;
     }
 
+    /**
+     * Puts the given character back in front of the current position. As with a
+     * PushbackReader, unreading -1 yields the character 65535.
+     */
     private void unread(int c) throws IOException {
         if (c == '\n') {
             line--;
         }
-        pushbackReader.unread(c);
+        if (pos == 0) {
+            throw new IOException("Pushback buffer overflow");
+        }
+        buffer[--pos] = (char) c;
+    }
+
+    /**
+     * Reads the next chunk from the reader into the buffer. The last LOOKAHEAD
+     * characters are kept at the start of the buffer, so they can still be unread.
+     * 
+     * @return true if at least one new character is available.
+     */
+    private boolean fill() throws IOException {
+        if (readerExhausted) {
+            return false;
+        }
+        System.arraycopy(buffer, limit - BibtexParser.LOOKAHEAD, buffer, 0, BibtexParser.LOOKAHEAD);
+        pos = BibtexParser.LOOKAHEAD;
+        limit = BibtexParser.LOOKAHEAD;
+        int n;
+        do {
+            n = reader.read(buffer, limit, buffer.length - limit);
+        } while (n == 0);
+        if (n < 0) {
+            readerExhausted = true;
+            return false;
+        }
+        limit += n;
+        return true;
     }
 
     private BibtexString parseString() throws IOException {
@@ -530,7 +785,7 @@ public class BibtexParser {
                 throw new RuntimeException("Error in line " + line + ": EOF in mid-string");
             }
             if (c == '"') {
-                StringBuffer text = parseQuotedFieldExactly();
+                StringBuilder text = parseQuotedFieldExactly();
                 value.append(fieldContentParser.format(text));
                 /*
                  * 
@@ -550,7 +805,7 @@ public class BibtexParser {
                 // Value is a string enclosed in brackets. There can be pairs
                 // of brackets inside of a field, so we need to count the
                 // brackets to know when the string is finished.
-                StringBuffer text = parseBracketedTextExactly();
+                StringBuilder text = parseBracketedTextExactly();
                 value.append(fieldContentParser.format(text, key));
 
             } else if (Character.isDigit((char) c)) { // value is a number
@@ -728,7 +983,7 @@ public class BibtexParser {
                     }
 
                     // Finished, now reverse newKey and remove whitespaces:
-                    parserResult.addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key.",
+                    addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key.",
                             String.valueOf(line)));
                     key = newKey.reverse();
                 }
@@ -737,12 +992,12 @@ public class BibtexParser {
 
         case ',':
 
-            parserResult.addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key (contains whitespaces).",
+            addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key (contains whitespaces).",
                     String.valueOf(line)));
 
         case '\n':
 
-            parserResult.addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key (comma missing).",
+            addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key (comma missing).",
                     String.valueOf(line)));
 
             break;
@@ -850,9 +1105,9 @@ public class BibtexParser {
     }
 
 
-    private StringBuffer parseBracketedText() throws IOException {
+    private StringBuilder parseBracketedText() throws IOException {
         // Util.pr("Parse bracketed text");
-        StringBuffer value = new StringBuffer();
+        StringBuilder value = new StringBuilder();
 
         consume('{');
 
@@ -904,9 +1159,9 @@ public class BibtexParser {
         return value;
     }
 
-    private StringBuffer parseBracketedTextExactly() throws IOException {
+    private StringBuilder parseBracketedTextExactly() throws IOException {
 
-        StringBuffer value = new StringBuffer();
+        StringBuilder value = new StringBuilder();
 
         consume('{');
 
@@ -932,9 +1187,9 @@ public class BibtexParser {
         return value;
     }
 
-    private StringBuffer parseQuotedFieldExactly() throws IOException {
+    private StringBuilder parseQuotedFieldExactly() throws IOException {
 
-        StringBuffer value = new StringBuffer();
+        StringBuilder value = new StringBuilder();
 
         consume('"');
 
@@ -997,7 +1252,8 @@ public class BibtexParser {
 
     }
 
-    private void checkEntryTypes(ParserResult _pr) {
+    static void checkEntryTypes(BibtexDatabase database, HashMap<String, BibtexEntryType> entryTypes,
+            ParserResult _pr) {
 
         for (BibtexEntry be : database.getEntries()) {
             if (be.getType() instanceof UnknownEntryType) {
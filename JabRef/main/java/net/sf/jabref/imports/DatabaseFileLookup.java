@@ -1,8 +1,9 @@
 package net.sf.jabref.imports;
 
 import java.io.File;
-import java.util.Collection;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 import net.sf.jabref.BibtexDatabase;
 import net.sf.jabref.BibtexEntry;
@@ -28,9 +29,10 @@ class DatabaseFileLookup {
 
     private static final String KEY_FILE_FIELD = "file";
 
-    private final HashMap<File, Boolean> fileToFound = new HashMap<File, Boolean>();
-
-    private final Collection<BibtexEntry> entries;
+    /**
+     * The absolute and canonical paths of all files linked from the database.
+     */
+    private final Set<File> linkedFiles = new HashSet<File>();
 
     private final String[] possibleFilePaths;
 
@@ -43,21 +45,41 @@ class DatabaseFileLookup {
      *            A {@link BibtexDatabase}.
      */
     public DatabaseFileLookup(BibtexDatabase aDatabase) {
+        this(aDatabase, JabRef.jrf.basePanel().metaData().getFileDirectory(GUIGlobals.FILE_FIELD));
+    }
+
+    /**
+     * Creates an instance for the given {@link BibtexDatabase}, expanding
+     * relative file links against the given directories. <br>
+     * <br>
+     * The links of all entries are expanded once here, so that each lookup is
+     * a single set membership test instead of a scan of the whole database.
+     * 
+     * @param aDatabase
+     *            A {@link BibtexDatabase}.
+     * @param possibleFilePaths
+     *            The directories relative file links are resolved against.
+     */
+    public DatabaseFileLookup(BibtexDatabase aDatabase, String[] possibleFilePaths) {
         if (aDatabase == null) {
             throw new IllegalArgumentException("Passing a 'null' BibtexDatabase.");
         }
-        entries = aDatabase.getEntries();
-        possibleFilePaths = JabRef.jrf.basePanel().metaData().getFileDirectory(GUIGlobals.FILE_FIELD);
+        this.possibleFilePaths = possibleFilePaths;
+        for (BibtexEntry entry : aDatabase.getEntries()) {
+            indexEntry(entry);
+        }
     }
 
     /**
      * Returns whether the File <code>aFile</code> is present in the database
      * as an attached File to an {@link BibtexEntry}. <br>
      * <br>
-     * To do this, the field specified by the key <b>file</b> will be searched
-     * for the provided file for every {@link BibtexEntry} in the database. <br>
+     * To do this, the file is looked up among the files linked in the field
+     * specified by the key <b>file</b> of every {@link BibtexEntry} in the
+     * database. <br>
      * <br>
-     * For the matching, the absolute file paths will be used.
+     * For the matching, the absolute file paths will be used, and the
+     * canonical ones if those do not match.
      * 
      * @param aFile
      *            A {@link File} Object.
@@ -65,46 +87,25 @@ class DatabaseFileLookup {
      *         entry in the database, otherwise <code>false</code>.
      */
     public boolean lookupDatabase(File aFile) {
-        if (fileToFound.containsKey(aFile)) {
-            return fileToFound.get(aFile);
-        } else {
-            Boolean res = false;
-            for (BibtexEntry entry : entries) {
-                if (lookupEntry(aFile, entry)) {
-                    res = true;
-                    break;
-                }
-            }
-            fileToFound.put(aFile, res);
-            //System.out.println(aFile);
-            return res;
+        if (aFile == null) {
+            return false;
         }
+        File absoluteFile = aFile.getAbsoluteFile();
+        return linkedFiles.contains(absoluteFile)
+                || linkedFiles.contains(DatabaseFileLookup.canonical(absoluteFile));
     }
 
     /**
-     * Searches the specified {@link BibtexEntry} <code>anEntry</code> for the
-     * appearance of the specified {@link File} <code>aFile</code>. <br>
-     * <br>
-     * Therefore the <i>file</i>-field of the bibtex-entry will be searched for
-     * the absolute filepath of the searched file. <br>
-     * <br>
-     * 
-     * @param aFile
-     *            A file that is searched in an bibtex-entry.
-     * @param anEntry
-     *            A bibtex-entry, in which the file is searched.
-     * @return <code>true</code>, if the bibtex entry stores the file in its
-     *         <i>file</i>-field, otherwise <code>false</code>.
+     * Adds the files linked in the <i>file</i>-field of the given bibtex-entry
+     * to the index.
      */
-    private boolean lookupEntry(File aFile, BibtexEntry anEntry) {
-
-        if ((aFile == null) || (anEntry == null)) {
-            return false;
+    private void indexEntry(BibtexEntry anEntry) {
+        String fileField = anEntry.getField(DatabaseFileLookup.KEY_FILE_FIELD);
+        if (fileField == null) {
+            return;
         }
 
         FileListTableModel model = new FileListTableModel();
-
-        String fileField = anEntry.getField(DatabaseFileLookup.KEY_FILE_FIELD);
         model.setContent(fileField);
 
         for (int i = 0; i < model.getRowCount(); i++) {
@@ -116,13 +117,19 @@ class DatabaseFileLookup {
             }
 
             File expandedFilename = FileUtil.expandFilename(link, possibleFilePaths);
-            if ((expandedFilename != null // file exists
-)
-                    && expandedFilename.equals(aFile)) {
-                return true;
+            if (expandedFilename != null) { // file exists
+                File absoluteFile = expandedFilename.getAbsoluteFile();
+                linkedFiles.add(absoluteFile);
+                linkedFiles.add(DatabaseFileLookup.canonical(absoluteFile));
             }
         }
+    }
 
-        return false;
+    private static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file;
+        }
     }
 }
@@ -26,12 +26,12 @@ class FieldContentParser {
 
     /**
      * Performs the reformatting
-     * @param content StringBuffer containing the field to format. key contains field name according to field
+     * @param content StringBuilder containing the field to format. key contains field name according to field
      *  was edited by Kuehn/Havalevich
-     * @return The formatted field content. NOTE: the StringBuffer returned may
+     * @return The formatted field content. NOTE: the StringBuilder returned may
      * or may not be the same as the argument given.
      */
-    public StringBuffer format(StringBuffer content, String key) {
+    public StringBuilder format(StringBuilder content, String key) {
 
         /*System.out.println("Content: '"+content+"'");
         byte[] bt = content.toString().getBytes();
@@ -48,7 +48,7 @@ class FieldContentParser {
         // Remove windows newlines and insert unix ones:
         // TODO: 2005.12.3: Added replace from \r to \n, to work around a reported problem of words stiched together.
         // But: we need to find out why these lone \r characters appear in his file.
-        content = new StringBuffer(content.toString().replaceAll("\r\n", "\n").replaceAll("\r", "\n"));
+        content = new StringBuilder(content.toString().replaceAll("\r\n", "\n").replaceAll("\r", "\n"));
 
         while (i < content.length()) {
 
@@ -162,11 +162,11 @@ class FieldContentParser {
 
     /**
      * Performs the reformatting
-     * @param content StringBuffer containing the field to format.
-     * @return The formatted field content. NOTE: the StringBuffer returned may
+     * @param content StringBuilder containing the field to format.
+     * @return The formatted field content. NOTE: the StringBuilder returned may
      * or may not be the same as the argument given.
      */
-    public StringBuffer format(StringBuffer content) {
+    public StringBuilder format(StringBuilder content) {
         return format(content, null);
     }
 
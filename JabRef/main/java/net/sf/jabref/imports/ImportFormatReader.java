@@ -16,7 +16,11 @@
 package net.sf.jabref.imports;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -425,35 +429,58 @@ public class ImportFormatReader {
         // we don't use a provided OutputPrinter (such as the JabRef frame),
         // as we don't want to see any outputs from failed importers:
         // we expect failures and do not want to report them to the user
-        OutputPrinterToNull nullOutput = new OutputPrinterToNull();
+        final OutputPrinterToNull nullOutput = new OutputPrinterToNull();
+
+        // Read the file once, and let every importer work on its own stream over
+        // the same buffer:
+        final byte[] content;
+        try {
+            content = Files.readAllBytes(new File(filename).toPath());
+        } catch (IOException ex) {
+            return null;
+        }
+
+        // Try all importers at once. Each importer first checks whether it
+        // recognizes the content, which is cheap, and only then parses it:
+        List<ImportFormat> importers = new ArrayList<ImportFormat>(getImportFormats());
+        List<Callable<List<BibtexEntry>>> trials = new ArrayList<Callable<List<BibtexEntry>>>(importers.size());
+        for (final ImportFormat imFo : importers) {
+            trials.add(new Callable<List<BibtexEntry>>() {
+
+                @Override
+                public List<BibtexEntry> call() {
+                    return ImportFormatReader.tryImport(imFo, content, nullOutput);
+                }
+            });
+        }
 
         // stores ref to best result, gets updated at the next loop
         List<BibtexEntry> bestResult = null;
         int bestResultCount = 0;
         String bestFormatName = null;
 
-        // Cycle through all importers:
-        for (ImportFormat imFo : getImportFormats()) {
-
-            try {
-
-                List<BibtexEntry> entries = importFromFile(imFo, filename, nullOutput);
-
-                int entryCount;
-                if (entries == null) {
-                    entryCount = 0;
-                } else {
-                    ImportFormatReader.purgeEmptyEntries(entries);
-                    entryCount = entries.size();
-                }
-
-                if (entryCount > bestResultCount) {
+        try {
+            List<Future<List<BibtexEntry>>> results = JabRefExecutorService.INSTANCE.invokeAllComputations(trials);
+            // Walk the results in the order of the importers, so the first of
+            // several equally good importers wins:
+            for (int i = 0; i < importers.size(); i++) {
+                List<BibtexEntry> entries = results.get(i).get();
+                if ((entries != null) && (entries.size() > bestResultCount)) {
                     bestResult = entries;
                     bestResultCount = bestResult.size();
-                    bestFormatName = imFo.getFormatName();
+                    bestFormatName = importers.get(i).getFormatName();
                 }
-            } catch (IOException ex) {
-                // The import didn't succeed. Go on.
+            }
+        } catch (InterruptedException ex) {
+            // the remaining trials have been cancelled
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
             }
         }
 
@@ -478,4 +505,26 @@ public class ImportFormatReader {
 
         return null;
     }
+
+    /**
+     * Lets the given importer parse the content of a file, if it recognizes it.
+     *
+     * @return The non-empty entries found, or null if the importer does not
+     *         recognize the content or fails to parse it.
+     */
+    private static List<BibtexEntry> tryImport(ImportFormat importer, byte[] content, OutputPrinter status) {
+        try {
+            if (!importer.isRecognizedFormat(new ByteArrayInputStream(content))) {
+                return null;
+            }
+            List<BibtexEntry> entries = importer.importEntries(new ByteArrayInputStream(content), status);
+            if (entries != null) {
+                ImportFormatReader.purgeEmptyEntries(entries);
+            }
+            return entries;
+        } catch (IOException ex) {
+            // The import didn't succeed. Go on.
+            return null;
+        }
+    }
 }
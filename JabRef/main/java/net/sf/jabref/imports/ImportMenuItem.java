@@ -30,7 +30,7 @@ import javax.swing.JOptionPane;
 import net.sf.jabref.*;
 import net.sf.jabref.gui.ImportInspectionDialog;
 import net.sf.jabref.gui.FileDialogs;
-import net.sf.jabref.labelPattern.LabelPatternUtil;
+import net.sf.jabref.labelPattern.KeyGenerator;
 import net.sf.jabref.undo.NamedCompound;
 import net.sf.jabref.undo.UndoableInsertEntry;
 import net.sf.jabref.undo.UndoableRemoveEntry;
@@ -211,6 +211,7 @@ public class ImportMenuItem extends JMenuItem implements ActionListener {
                             }
                         }
 
+                        List<BibtexEntry> added = new ArrayList<BibtexEntry>();
                         for (BibtexEntry entry : bibtexResult.getDatabase().getEntries()) {
                             try {
                                 // Check if the entry is a duplicate of an existing one:
@@ -232,17 +233,25 @@ public class ImportMenuItem extends JMenuItem implements ActionListener {
                                 // Add the entry, if we are supposed to:
                                 if (keepEntry) {
                                     toAddTo.insertEntry(entry);
-                                    // Generate key, if we are supposed to:
-                                    if (generateKeys) {
-                                        LabelPatternUtil.makeLabel(bibtexResult.getMetaData(), toAddTo, entry);
-                                        //System.out.println("gen:"+entry.getCiteKey());
-                                    }
+                                    added.add(entry);
                                     ce.addEdit(new UndoableInsertEntry(toAddTo, entry, panel));
                                 }
                             } catch (KeyCollisionException e) {
                                 e.printStackTrace();
                             }
                         }
+                        // Generate keys, if we are supposed to:
+                        if (generateKeys) {
+                            try {
+                                List<String> keys = new KeyGenerator(bibtexResult.getMetaData(), toAddTo)
+                                        .generateKeys(added);
+                                for (int i = 0; i < added.size(); i++) {
+                                    toAddTo.setCiteKeyForEntry(added.get(i).getId(), keys.get(i));
+                                }
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
                         ce.end();
                         if (ce.hasEdits()) {
                             panel.undoManager.addEdit(ce);
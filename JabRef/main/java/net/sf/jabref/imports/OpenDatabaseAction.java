@@ -19,6 +19,7 @@ import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -349,7 +350,7 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
             throws IOException {
 
         // First we make a quick check to see if this looks like a BibTeX file:
-        Reader reader;// = ImportFormatReader.getReader(fileToOpen, encoding);
+        //Reader reader = ImportFormatReader.getReader(fileToOpen, encoding);
         //if (!BibtexParser.isRecognizedFormat(reader))
         //    return null;
 
@@ -374,22 +375,24 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
 
         //System.out.println(suppliedEncoding != null ? "Encoding: '"+suppliedEncoding+"' Len: "+suppliedEncoding.length() : "no supplied encoding");
 
+        // If we couldn't find a header with info about encoding, the default is used.
         if ((suppliedEncoding != null)) {
             try {
-                reader = ImportFormatReader.getReader(fileToOpen, suppliedEncoding);
+                Charset.forName(suppliedEncoding);
                 encoding = suppliedEncoding; // Just so we put the right info into the ParserResult.
             } catch (Exception ex) {
-                ex.printStackTrace();
-                reader = ImportFormatReader.getReader(fileToOpen, encoding); // The supplied encoding didn't work out, so we use the default.
+                ex.printStackTrace(); // The supplied encoding didn't work out, so we use the default.
             }
-        } else {
-            // We couldn't find a header with info about encoding. Use default:
-            reader = ImportFormatReader.getReader(fileToOpen, encoding);
         }
 
-        BibtexParser bp = new BibtexParser(reader);
-
-        ParserResult pr = bp.parse();
+        // The whole file is read and decoded at once, which is much faster than parsing from a reader.
+        // Large files are split up and parsed on all cores:
+        ParserResult pr;
+        if (fileToOpen.length() >= ParallelBibtexParser.SIZE_THRESHOLD) {
+            pr = ParallelBibtexParser.parse(fileToOpen, encoding);
+        } else {
+            pr = BibtexParser.parse(fileToOpen, encoding);
+        }
         pr.setEncoding(encoding);
         pr.setFile(fileToOpen);
 
@@ -0,0 +1,275 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.imports;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexEntryType;
+import net.sf.jabref.BibtexString;
+import net.sf.jabref.JabRefExecutorService;
+import net.sf.jabref.KeyCollisionException;
+import net.sf.jabref.MetaData;
+
+/**
+ * Loads large BibTeX files on all cores.
+ * 
+ * In a first, sequential pass the file is split into chunks between entries:
+ * only before an '@' that is the first non-whitespace character of its line, lies
+ * after the closing delimiter of the previous entry and is followed by a type and
+ * an opening brace or parenthesis. The closing delimiter only counts outside of
+ * braces and quotes. Each chunk is then parsed by its own BibtexParser in
+ * parallel. Finally, the chunks are merged in their original order into one
+ * database, which yields the same entries, strings, meta data and warnings
+ * (including duplicate keys) as BibtexParser.parse().
+ * 
+ * Use:
+ * 
+ * ParserResult result = ParallelBibtexParser.parse(file, encoding);
+ */
+public class ParallelBibtexParser {
+
+    /**
+     * Files of at least this many bytes are worth parsing in parallel.
+     */
+    public static final long SIZE_THRESHOLD = 2 * 1024 * 1024;
+
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+
+    /**
+     * A part of the input together with the results of parsing it.
+     */
+    private static class Chunk implements Callable<Chunk> {
+
+        private final char[] content;
+        private final int start;
+        private final int end;
+        private final int firstLine;
+
+        private final List<Object> items = new ArrayList<Object>();
+        private BibtexParser parser;
+        private ParserResult result;
+
+
+        Chunk(char[] content, int start, int end, int firstLine) {
+            this.content = content;
+            this.start = start;
+            this.end = end;
+            this.firstLine = firstLine;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            // The parser writes unread characters into its buffer, so each chunk gets its own copy:
+            int offset = BibtexParser.getContentStart();
+            char[] chunkContent = new char[offset + (end - start)];
+            System.arraycopy(content, start, chunkContent, offset, end - start);
+            parser = new BibtexParser(chunkContent, chunkContent.length, firstLine);
+            result = parser.parseChunk(items);
+            return this;
+        }
+    }
+
+
+    /**
+     * Parses the given file, in parallel if it is large enough.
+     * 
+     * @param file The file to parse.
+     * @param encoding The encoding of the file.
+     * @throws IOException
+     */
+    public static ParserResult parse(File file, String encoding) throws IOException {
+        CharBuffer chars = BibtexParser.readFile(file, encoding);
+        int chunks = Math.max(1, Math.min(4 * Runtime.getRuntime().availableProcessors(),
+                chars.position() / ParallelBibtexParser.MIN_CHUNK_SIZE));
+        return ParallelBibtexParser.parse(chars.array(), chars.position(), chunks);
+    }
+
+    /**
+     * Parses the given characters in about the given number of chunks.
+     * 
+     * @param content The input, starting at BibtexParser.getContentStart().
+     * @param end Index after the last character of the input.
+     * @param chunks The number of chunks to aim for.
+     */
+    static ParserResult parse(char[] content, int end, int chunks) throws IOException {
+        List<Chunk> parts = ParallelBibtexParser.split(content, BibtexParser.getContentStart(), end, chunks);
+
+        try {
+            for (Future<Chunk> future : JabRefExecutorService.INSTANCE.invokeAllComputations(parts)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while parsing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+
+        return ParallelBibtexParser.merge(parts);
+    }
+
+    /**
+     * Splits the input into chunks of roughly equal size. A chunk only ends right before
+     * an '@' that starts an entry, that is, which is the first non-whitespace character
+     * of its line, lies between two entries and is followed by a type and an opening
+     * brace or parenthesis. Inside an entry, the closing delimiter only counts outside
+     * of braces and quotes, just as the sequential parser reads it. Text between entries
+     * is skipped by the parser, so stray braces there do not matter.
+     */
+    private static List<Chunk> split(char[] content, int start, int end, int chunks) {
+        List<Chunk> parts = new ArrayList<Chunk>(chunks);
+        int targetSize = Math.max(1, (end - start) / chunks);
+
+        int chunkStart = start;
+        int chunkLine = 1;
+        int line = 1;
+        boolean lineStart = true;
+        // The closing delimiter of the current entry, or 0 between entries:
+        char entryEnd = 0;
+        int braces = 0;
+        boolean quoted = false;
+        // Comments are read as bracketed text, without quoted values:
+        boolean comment = false;
+        for (int i = start; i < end; i++) {
+            char c = content[i];
+            if (c == '\n') {
+                line++;
+                lineStart = true;
+                continue;
+            }
+            if (entryEnd == 0) {
+                if (c == '@') {
+                    int open = ParallelBibtexParser.findEntryStart(content, i + 1, end);
+                    if (open >= 0) {
+                        if (lineStart && ((i - chunkStart) >= targetSize)) {
+                            parts.add(new Chunk(content, chunkStart, i, chunkLine));
+                            chunkStart = i;
+                            chunkLine = line;
+                        }
+                        entryEnd = content[open] == '(' ? ')' : '}';
+                        braces = 0;
+                        quoted = false;
+                        comment = new String(content, i + 1, open - i - 1).trim().equalsIgnoreCase("comment");
+                        for (; i < open; i++) {
+                            if (content[i] == '\n') {
+                                line++;
+                            }
+                        }
+                    }
+                }
+            } else if (c == '{') {
+                braces++;
+            } else if ((c == '}') && (braces > 0)) {
+                braces--;
+            } else if ((c == '"') && (braces == 0) && !comment) {
+                quoted = !quoted;
+            } else if ((c == entryEnd) && (braces == 0) && !quoted) {
+                entryEnd = 0;
+            }
+            if (!Character.isWhitespace(c)) {
+                lineStart = false;
+            }
+        }
+        parts.add(new Chunk(content, chunkStart, end, chunkLine));
+        return parts;
+    }
+
+    /**
+     * Checks whether the characters after an '@' are an entry type followed by an
+     * opening brace or parenthesis, possibly with whitespace in between.
+     *
+     * @return The index of the opening brace or parenthesis, or -1 if there is none.
+     */
+    private static int findEntryStart(char[] content, int start, int end) {
+        int i = start;
+        while ((i < end) && Character.isLetter(content[i])) {
+            i++;
+        }
+        if (i == start) {
+            return -1;
+        }
+        while ((i < end) && Character.isWhitespace(content[i])) {
+            i++;
+        }
+        if ((i < end) && ((content[i] == '{') || (content[i] == '('))) {
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Puts the contents of all chunks into one database, in input order.
+     */
+    private static ParserResult merge(List<Chunk> parts) throws IOException {
+        BibtexDatabase database = new BibtexDatabase();
+        HashMap<String, String> meta = new HashMap<String, String>();
+        HashMap<String, BibtexEntryType> entryTypes = new HashMap<String, BibtexEntryType>();
+        ParserResult parserResult = new ParserResult(database, null, entryTypes);
+
+        // Only the first chunk can contain the JabRef signature:
+        ParserResult first = parts.get(0).result;
+        if (first.getJabrefVersion() != null) {
+            parserResult.setJabrefVersion(first.getJabrefVersion());
+            parserResult.setJabrefMajorVersion(first.getJabrefMajorVersion());
+            parserResult.setJabrefMinorVersion(first.getJabrefMinorVersion());
+            parserResult.setJabrefMinor2Version(first.getJabrefMinor2Version());
+        }
+
+        try {
+            for (Chunk part : parts) {
+                for (Object item : part.items) {
+                    if (item instanceof BibtexEntry) {
+                        BibtexParser.insertEntry(database, (BibtexEntry) item, parserResult);
+                    } else if (item instanceof BibtexString) {
+                        BibtexParser.insertString(database, (BibtexString) item, parserResult);
+                    } else {
+                        parserResult.addWarning((String) item);
+                    }
+                }
+
+                String preamble = part.result.getDatabase().getPreamble();
+                if (preamble != null) {
+                    database.setPreamble(preamble);
+                }
+                meta.putAll(part.parser.getMeta());
+                entryTypes.putAll(part.result.getEntryTypes());
+            }
+        } catch (KeyCollisionException kce) {
+            throw new IOException("Duplicate ID in bibtex file: " + kce.toString());
+        }
+
+        BibtexParser.checkEntryTypes(database, entryTypes, parserResult);
+        parserResult.setMetaData(new MetaData(meta, database));
+        return parserResult;
+    }
+}
@@ -2,6 +2,18 @@ package net.sf.jabref.imports;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
 
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -20,19 +32,6 @@ import net.sf.jabref.FindUnlinkedFilesDialog.FileNodeWrapper;
  */
 public class UnlinkedFilesCrawler {
 
-    /**
-     * File filter, that accepts directorys only.
-     */
-    private final FileFilter directoryFilter = new FileFilter() {
-
-        @Override
-        public boolean accept(File pathname) {
-            if (pathname == null) {
-                return false;
-            }
-            return pathname.isDirectory();
-        }
-    };
     private final BibtexDatabase database;
 
 
@@ -62,12 +61,16 @@ public class UnlinkedFilesCrawler {
      * The user objects that are attached to the nodes is the
      * {@link FileNodeWrapper}, which wrapps the {@link File}-Object. <br>
      * <br>
-     * For ensuring the capability to cancel the work of this recursive method,
-     * the first position in the integer array 'state' must be set to 1, to keep
-     * the recursion running. When the states value changes, the methode will
-     * resolve its recursion and return what it has saved so far.
+     * The directory tree is walked once with {@link Files#walkFileTree}, which
+     * reads the type of each file along with the directory listing. <br>
+     * <br>
+     * For ensuring the capability to cancel the work of this method, the first
+     * position in the integer array 'state' must be set to 1, to keep the walk
+     * running. When the states value changes, the method will stop walking and
+     * return what it has found so far.
      */
-    public CheckableTreeNode searchDirectory(File directory, UnlinkedPDFFileFilter ff, int[] state, ChangeListener changeListener) {
+    public CheckableTreeNode searchDirectory(File directory, final UnlinkedPDFFileFilter ff, final int[] state,
+            final ChangeListener changeListener) {
         /* Cancellation of the search from outside! */
         if ((state == null) || (state.length < 1) || (state[0] != 1)) {
             return null;
@@ -77,30 +80,103 @@ public class UnlinkedFilesCrawler {
             return null;
         }
 
-        File[] files = directory.listFiles(ff);
-        CheckableTreeNode root = new CheckableTreeNode(null);
-
-        int filesCount = 0;
+        final Deque<DirectoryNode> openDirectories = new ArrayDeque<DirectoryNode>();
+        final CheckableTreeNode[] root = new CheckableTreeNode[1];
+        try {
+            Files.walkFileTree(directory.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                    new SimpleFileVisitor<Path>() {
+
+                        @Override
+                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                            if (state[0] != 1) {
+                                return FileVisitResult.TERMINATE;
+                            }
+                            openDirectories.push(new DirectoryNode(dir.toFile()));
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            if (state[0] != 1) {
+                                return FileVisitResult.TERMINATE;
+                            }
+                            File f = file.toFile();
+                            if (!attrs.isDirectory() && ff.accept(f)) {
+                                openDirectories.peek().files.add(f);
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                            // skip unreadable files and directories, and links forming a cycle
+                            return state[0] == 1 ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                        }
+
+                        @Override
+                        public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                            root[0] = closeDirectory(openDirectories, changeListener);
+                            return state[0] == 1 ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                        }
+                    });
+        } catch (IOException e) {
+            // only thrown by the visitor, which does not throw
+        }
 
-        File[] subDirectories = directory.listFiles(directoryFilter);
-        for (File subDirectory : subDirectories) {
-            CheckableTreeNode subRoot = searchDirectory(subDirectory, ff, state, changeListener);
-            if ((subRoot != null) && (subRoot.getChildCount() > 0)) {
-                filesCount += ((FileNodeWrapper) subRoot.getUserObject()).fileCount;
-                root.add(subRoot);
-            }
+        // after a cancellation, keep what has been found so far
+        while (!openDirectories.isEmpty()) {
+            root[0] = closeDirectory(openDirectories, changeListener);
         }
+        return root[0];
+    }
 
-        root.setUserObject(new FileNodeWrapper(directory, files.length + filesCount));
+    /**
+     * Creates the node of the innermost open directory, adding its files after
+     * the nodes of its subdirectories, and adds it to the node of its parent
+     * directory if it contains any files.
+     * 
+     * @return The node of the directory.
+     */
+    private CheckableTreeNode closeDirectory(Deque<DirectoryNode> openDirectories, ChangeListener changeListener) {
+        DirectoryNode directory = openDirectories.pop();
+        CheckableTreeNode node = directory.node;
+        node.setUserObject(new FileNodeWrapper(directory.directory, directory.files.size() + directory.filesCount));
 
-        for (File file : files) {
-            root.add(new CheckableTreeNode(new FileNodeWrapper(file)));
+        for (File file : directory.files) {
+            node.add(new CheckableTreeNode(new FileNodeWrapper(file)));
             if (changeListener != null) {
                 changeListener.stateChanged(new ChangeEvent(this));
             }
         }
 
-        return root;
+        DirectoryNode parent = openDirectories.peek();
+        if ((parent != null) && (node.getChildCount() > 0)) {
+            parent.filesCount += directory.files.size() + directory.filesCount;
+            parent.node.add(node);
+        }
+        return node;
     }
 
+
+    /**
+     * A directory being walked, with the files accepted in it so far.
+     */
+    private static class DirectoryNode {
+
+        private final File directory;
+
+        private final CheckableTreeNode node = new CheckableTreeNode(null);
+
+        private final List<File> files = new ArrayList<File>();
+
+        /**
+         * The number of accepted files in the subdirectories walked so far.
+         */
+        private int filesCount;
+
+
+        public DirectoryNode(File directory) {
+            this.directory = directory;
+        }
+    }
 }
@@ -0,0 +1,294 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.labelPattern;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefExecutorService;
+import net.sf.jabref.MetaData;
+import net.sf.jabref.util.Util;
+
+/**
+ * Generates BibTeX keys according to the key patterns of a database.
+ *
+ * The key patterns and the KeyPatternRegex are compiled once per generator
+ * instead of once per entry. Keys are made unique against the keys of the
+ * database and the keys handed out earlier by the same generator, which are
+ * kept in a local reservation table, so the database is not touched until the
+ * caller sets the keys. The keys of many entries are expanded in parallel.
+ *
+ * Use:
+ *
+ * KeyGenerator generator = new KeyGenerator(metaData, database);
+ * List<String> keys = generator.generateKeys(entries);
+ */
+public class KeyGenerator {
+
+    /**
+     * Expanding the keys of fewer entries than this in parallel does not pay off.
+     */
+    private static final int PARALLEL_THRESHOLD = 500;
+
+    private static final int CHUNK_SIZE = 250;
+
+    private final MetaData metaData;
+
+    private final BibtexDatabase database;
+
+    private final Pattern regex;
+
+    private final String replacement;
+
+    private final boolean alwaysAddLetter;
+
+    private final boolean firstLetterA;
+
+    private final Map<String, List<PatternPart>> compiledPatterns = new HashMap<String, List<PatternPart>>();
+
+    /**
+     * The change of the number of occurrences of each key in the database made
+     * by the keys handed out so far.
+     */
+    private final Map<String, Integer> reservations = new HashMap<String, Integer>();
+
+
+    /**
+     * A piece of a key pattern: either literal text or a parsed field marker.
+     */
+    private static class PatternPart {
+
+        private final String text;
+
+        private final String[] fieldMarker;
+
+
+        PatternPart(String text, String[] fieldMarker) {
+            this.text = text;
+            this.fieldMarker = fieldMarker;
+        }
+    }
+
+
+    public KeyGenerator(MetaData metaData, BibtexDatabase database) {
+        this.metaData = metaData;
+        this.database = database;
+
+        // Patch by Toralf Senger:
+        // Remove Regular Expressions while generating Keys
+        String regex = Globals.prefs.get("KeyPatternRegex");
+        if ((regex != null) && (regex.trim().length() > 0)) {
+            this.regex = Pattern.compile(regex);
+            replacement = Globals.prefs.get("KeyPatternReplacement");
+        } else {
+            this.regex = null;
+            replacement = null;
+        }
+        alwaysAddLetter = Globals.prefs.isKeyGenAlwaysAddLetter();
+        firstLetterA = Globals.prefs.isKeyGenFirstLetterA();
+    }
+
+    /**
+     * Generates a unique key for the given entry and reserves it. The current
+     * key of the entry counts as free for the entry itself.
+     */
+    public synchronized String makeKey(BibtexEntry entry) {
+        String oldKey = entry.getCiteKey();
+        String key = reserve(makeBaseKey(entry), oldKey);
+        if (!key.equals(oldKey) && (oldKey != null) && (database.getEntryById(entry.getId()) != null)) {
+            adjustReservation(oldKey, -1);
+        }
+        return key;
+    }
+
+    /**
+     * Generates unique keys for the given entries of the database, in the order
+     * of the list, as if the keys of all of them had been removed first.
+     *
+     * @return The new keys, in the order of the entries.
+     * @throws InterruptedException if interrupted while waiting for the keys.
+     */
+    public synchronized List<String> generateKeys(List<BibtexEntry> entries) throws InterruptedException {
+        for (BibtexEntry entry : entries) {
+            String oldKey = entry.getCiteKey();
+            if ((oldKey != null) && (database.getEntryById(entry.getId()) != null)) {
+                adjustReservation(oldKey, -1);
+            }
+        }
+
+        List<String> baseKeys = makeBaseKeys(entries);
+        List<String> keys = new ArrayList<String>(entries.size());
+        for (String baseKey : baseKeys) {
+            keys.add(reserve(baseKey, null));
+        }
+        return keys;
+    }
+
+    /**
+     * Expands the key pattern of the given entry, without making the key
+     * unique. May be called from several threads at once.
+     */
+    public String makeBaseKey(BibtexEntry entry) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (PatternPart part : getPattern(entry.getType().getName().toLowerCase())) {
+                if (part.fieldMarker == null) {
+                    sb.append(part.text);
+                    continue;
+                }
+                String label = LabelPatternUtil.makeLabel(entry, part.fieldMarker[0], database);
+                // apply modifier if present
+                if (part.fieldMarker.length > 1) {
+                    label = LabelPatternUtil.applyModifiers(label, part.fieldMarker, 1);
+                }
+                sb.append(label);
+            }
+        } catch (Exception e) {
+            System.err.println(e);
+        }
+
+        // Remove all illegal characters from the key.
+        String key = Util.checkLegalKey(sb.toString());
+        if (regex != null) {
+            key = regex.matcher(key).replaceAll(replacement);
+        }
+        return key;
+    }
+
+    private List<String> makeBaseKeys(final List<BibtexEntry> entries) throws InterruptedException {
+        List<String> result = new ArrayList<String>(entries.size());
+        if (entries.size() < KeyGenerator.PARALLEL_THRESHOLD) {
+            for (BibtexEntry entry : entries) {
+                result.add(makeBaseKey(entry));
+            }
+            return result;
+        }
+
+        List<Callable<List<String>>> tasks = new ArrayList<Callable<List<String>>>();
+        for (int start = 0; start < entries.size(); start += KeyGenerator.CHUNK_SIZE) {
+            final List<BibtexEntry> chunk = entries.subList(start,
+                    Math.min(start + KeyGenerator.CHUNK_SIZE, entries.size()));
+            tasks.add(new Callable<List<String>>() {
+
+                @Override
+                public List<String> call() {
+                    List<String> keys = new ArrayList<String>(chunk.size());
+                    for (BibtexEntry entry : chunk) {
+                        keys.add(makeBaseKey(entry));
+                    }
+                    return keys;
+                }
+            });
+        }
+        try {
+            for (Future<List<String>> future : JabRefExecutorService.INSTANCE.invokeAllComputations(tasks)) {
+                result.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the parsed key pattern of the given entry type.
+     */
+    private List<PatternPart> getPattern(String type) {
+        synchronized (compiledPatterns) {
+            List<PatternPart> pattern = compiledPatterns.get(type);
+            if (pattern == null) {
+                pattern = new ArrayList<PatternPart>();
+                ArrayList<String> tokens = metaData.getLabelPattern().getValue(type);
+                boolean field = false;
+                // the first token is the pattern itself
+                for (int i = 1; i < tokens.size(); i++) {
+                    String val = tokens.get(i);
+                    if (val.equals("[")) {
+                        field = true;
+                    } else if (val.equals("]")) {
+                        field = false;
+                    } else if (field) {
+                        pattern.add(new PatternPart(null, LabelPatternUtil.parseFieldMarker(val)));
+                    } else {
+                        pattern.add(new PatternPart(val, null));
+                    }
+                }
+                compiledPatterns.put(type, pattern);
+            }
+            return pattern;
+        }
+    }
+
+    /**
+     * Makes the given key unique by adding letters, and reserves it.
+     *
+     * @param oldKey The current key of the entry, which it may keep.
+     */
+    private String reserve(String key, String oldKey) {
+        String result = key;
+        if (alwaysAddLetter || (getOccurrences(key, oldKey) != 0)) {
+            // The key is already in use, so we must modify it.
+            int number = 0;
+            if (!alwaysAddLetter && !firstLetterA) {
+                number = 1;
+            }
+            result = key + LabelPatternUtil.getAddition(number);
+            while (getOccurrences(result, oldKey) > 0) {
+                number++;
+                result = key + LabelPatternUtil.getAddition(number);
+            }
+        }
+
+        if (!result.equals(oldKey)) {
+            adjustReservation(result, 1);
+        }
+        return result;
+    }
+
+    private int getOccurrences(String key, String oldKey) {
+        int occurrences = database.getNumberOfKeyOccurences(key);
+        Integer reserved = reservations.get(key);
+        if (reserved != null) {
+            occurrences += reserved;
+        }
+        if (key.equals(oldKey)) {
+            occurrences--; // No change, so we can accept one dupe.
+        }
+        return occurrences;
+    }
+
+    private void adjustReservation(String key, int change) {
+        if (key.isEmpty()) {
+            return; // the database does not count empty keys either
+        }
+        Integer reserved = reservations.get(key);
+        reservations.put(key, reserved == null ? change : reserved + change);
+    }
+}
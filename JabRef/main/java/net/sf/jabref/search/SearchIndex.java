@@ -0,0 +1,365 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+
+/**
+ * Inverted index over the words of all entries of a database, used to find the
+ * entries a search can possibly match without looking at every field of every entry.
+ *
+ * Each field is indexed both as written and with LaTeX commands removed. Words are
+ * the runs of letters and digits after case folding each character on its own, so
+ * that every case insensitive or case sensitive, literal match of a search word
+ * implies that each run of letters and digits of the search word is contained in
+ * an indexed word of the entry. The index thus yields a superset of the matching
+ * entries, which still have to be checked by the search rule.
+ *
+ * Search words are usually looked up as substrings of indexed words. Words of at
+ * least three characters are found through a second index from each trigram to the
+ * indexed words containing it; shorter ones are rare enough to scan the vocabulary.
+ * The entries found for a search word are remembered until the index changes, as the
+ * same words are looked up again while the user types.
+ *
+ * The index is kept up to date through the DatabaseChangeEvents of the database,
+ * which also cover field and type changes of its entries.
+ */
+public class SearchIndex implements DatabaseChangeListener {
+
+    /**
+     * Ordinals of the entries containing a word, in ascending order.
+     */
+    private static class Postings {
+
+        private int[] ordinals = new int[2];
+        private int size = 0;
+
+
+        void add(int ordinal) {
+            if ((size > 0) && (ordinals[size - 1] >= ordinal)) {
+                int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+                if (pos >= 0) {
+                    return;
+                }
+                insertAt(-pos - 1, ordinal);
+            } else {
+                insertAt(size, ordinal);
+            }
+        }
+
+        private void insertAt(int pos, int ordinal) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, 2 * size);
+            }
+            System.arraycopy(ordinals, pos, ordinals, pos + 1, size - pos);
+            ordinals[pos] = ordinal;
+            size++;
+        }
+
+        void remove(int ordinal) {
+            int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (pos >= 0) {
+                System.arraycopy(ordinals, pos + 1, ordinals, pos, size - pos - 1);
+                size--;
+            }
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void addTo(BitSet bits) {
+            for (int i = 0; i < size; i++) {
+                bits.set(ordinals[i]);
+            }
+        }
+    }
+
+
+    private final BibtexDatabase database;
+
+    private static final int GRAM_LENGTH = 3;
+
+    private static final int MAX_CACHED_LOOKUPS = 64;
+
+    private final Map<String, Postings> postings = new HashMap<String, Postings>();
+
+    // The indexed words containing each trigram:
+    private final Map<String, Set<String>> wordsByGram = new HashMap<String, Set<String>>();
+
+    // The entries found for the last search words, dropped on every change of the index:
+    private final Map<String, BitSet> lookups = new LinkedHashMap<String, BitSet>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest) {
+            return size() > SearchIndex.MAX_CACHED_LOOKUPS;
+        }
+    };
+
+    private final Map<BibtexEntry, Integer> ordinals = new IdentityHashMap<BibtexEntry, Integer>();
+
+    // Indexed by ordinal. Removed entries leave a null behind, and their ordinal is reused.
+    private final List<BibtexEntry> entries = new ArrayList<BibtexEntry>();
+    private final List<String[]> entryWords = new ArrayList<String[]>();
+    private final BitSet freeOrdinals = new BitSet();
+
+
+    /**
+     * Indexes all entries of the given database and registers the index as
+     * listener, so that later changes are indexed as well.
+     */
+    public SearchIndex(BibtexDatabase database) {
+        this.database = database;
+        synchronized (database) {
+            for (BibtexEntry entry : database.getEntries()) {
+                addEntry(entry);
+            }
+            database.addDatabaseChangeListener(this);
+        }
+    }
+
+    public BibtexDatabase getDatabase() {
+        return database;
+    }
+
+    @Override
+    public synchronized void databaseChanged(DatabaseChangeEvent e) {
+        switch (e.getType()) {
+        case ADDED_ENTRY:
+            addEntry(e.getEntry());
+            break;
+        case REMOVED_ENTRY:
+            removeEntry(e.getEntry());
+            break;
+        case CHANGED_ENTRY:
+            Integer ordinal = ordinals.get(e.getEntry());
+            if (ordinal != null) {
+                unindex(ordinal);
+                index(ordinal, e.getEntry());
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Returns all entries that may contain each of the given search words in
+     * one of their fields.
+     *
+     * @param words The search words, in the case the search compares them with.
+     * @return A superset of the entries containing all words, or null if the words
+     * do not restrict the entries at all, e.g. because they consist of punctuation only.
+     */
+    public synchronized Set<BibtexEntry> getEntriesContainingAll(Collection<String> words) {
+        BitSet result = null;
+        for (String word : words) {
+            for (String part : SearchIndex.getWords(word)) {
+                BitSet found = findEntriesWithWordContaining(part);
+                if (result == null) {
+                    result = found;
+                } else {
+                    result.and(found);
+                }
+            }
+        }
+        if (result == null) {
+            return null;
+        }
+
+        Set<BibtexEntry> candidates = new HashSet<BibtexEntry>();
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+            candidates.add(entries.get(i));
+        }
+        return candidates;
+    }
+
+    private BitSet findEntriesWithWordContaining(String part) {
+        BitSet found = lookups.get(part);
+        if (found == null) {
+            found = new BitSet(entries.size());
+            for (String word : getWordsContaining(part)) {
+                postings.get(word).addTo(found);
+            }
+            lookups.put(part, found);
+        }
+        return (BitSet) found.clone();
+    }
+
+    /**
+     * Returns the indexed words containing the given part.
+     */
+    private List<String> getWordsContaining(String part) {
+        List<String> result = new ArrayList<String>();
+        if (part.length() < SearchIndex.GRAM_LENGTH) {
+            for (String word : postings.keySet()) {
+                if (word.contains(part)) {
+                    result.add(word);
+                }
+            }
+            return result;
+        }
+
+        // Every word containing the part contains each of its trigrams, so the words
+        // of the rarest trigram are all there is to check:
+        Set<String> candidates = null;
+        for (int i = 0; i <= (part.length() - SearchIndex.GRAM_LENGTH); i++) {
+            Set<String> words = wordsByGram.get(part.substring(i, i + SearchIndex.GRAM_LENGTH));
+            if (words == null) {
+                return result;
+            }
+            if ((candidates == null) || (words.size() < candidates.size())) {
+                candidates = words;
+            }
+        }
+        for (String word : candidates) {
+            if (word.contains(part)) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    private void addEntry(BibtexEntry entry) {
+        if (ordinals.containsKey(entry)) {
+            return;
+        }
+
+        int ordinal = freeOrdinals.nextSetBit(0);
+        if (ordinal >= 0) {
+            freeOrdinals.clear(ordinal);
+            entries.set(ordinal, entry);
+        } else {
+            ordinal = entries.size();
+            entries.add(entry);
+            entryWords.add(null);
+        }
+        ordinals.put(entry, ordinal);
+        index(ordinal, entry);
+    }
+
+    private void removeEntry(BibtexEntry entry) {
+        Integer ordinal = ordinals.remove(entry);
+        if (ordinal == null) {
+            return;
+        }
+
+        unindex(ordinal);
+        entries.set(ordinal, null);
+        freeOrdinals.set(ordinal);
+    }
+
+    private void index(int ordinal, BibtexEntry entry) {
+        lookups.clear();
+        Set<String> words = new HashSet<String>();
+        words.addAll(SearchIndex.getWords(entry.getType().getName()));
+        for (String field : entry.getAllFields()) {
+            String content = entry.getField(field);
+            if (content != null) {
+                words.addAll(SearchIndex.getWords(content));
+                words.addAll(SearchIndex.getWords(entry.getLatexFreeField(field, false)));
+            }
+        }
+
+        String[] indexed = new String[words.size()];
+        int i = 0;
+        for (String word : words) {
+            Postings p = postings.get(word);
+            if (p == null) {
+                p = new Postings();
+                postings.put(word, p);
+                addGrams(word);
+            }
+            p.add(ordinal);
+            indexed[i++] = word;
+        }
+        entryWords.set(ordinal, indexed);
+    }
+
+    private void unindex(int ordinal) {
+        lookups.clear();
+        for (String word : entryWords.get(ordinal)) {
+            Postings p = postings.get(word);
+            p.remove(ordinal);
+            if (p.isEmpty()) {
+                postings.remove(word);
+                removeGrams(word);
+            }
+        }
+        entryWords.set(ordinal, null);
+    }
+
+    private void addGrams(String word) {
+        for (int i = 0; i <= (word.length() - SearchIndex.GRAM_LENGTH); i++) {
+            String gram = word.substring(i, i + SearchIndex.GRAM_LENGTH);
+            Set<String> words = wordsByGram.get(gram);
+            if (words == null) {
+                words = new HashSet<String>();
+                wordsByGram.put(gram, words);
+            }
+            words.add(word);
+        }
+    }
+
+    private void removeGrams(String word) {
+        for (int i = 0; i <= (word.length() - SearchIndex.GRAM_LENGTH); i++) {
+            String gram = word.substring(i, i + SearchIndex.GRAM_LENGTH);
+            Set<String> words = wordsByGram.get(gram);
+            if (words != null) {
+                words.remove(word);
+                if (words.isEmpty()) {
+                    wordsByGram.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the given text into the words the index is built of.
+     */
+    static List<String> getWords(String text) {
+        List<String> words = new ArrayList<String>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(Character.toUpperCase(text.charAt(i)));
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
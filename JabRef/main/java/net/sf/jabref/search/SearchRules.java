@@ -1,5 +1,6 @@
 package net.sf.jabref.search;
 
+import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.search.rules.RegexBasedSearchRule;
 import net.sf.jabref.search.rules.ContainBasedSearchRule;
 import net.sf.jabref.search.rules.GrammarBasedSearchRule;
@@ -33,4 +34,21 @@ public class SearchRules {
         }
     }
 
+    /**
+     * Returns a plan that applies the given rule with the given query. Rules that
+     * can compile their query do so once, all others are applied entry by entry.
+     */
+    public static SearchPlan compile(final SearchRule rule, final String query) {
+        if (rule instanceof CompilableSearchRule) {
+            return ((CompilableSearchRule) rule).compile(query);
+        }
+        return new SearchPlan() {
+
+            @Override
+            public boolean matches(BibtexEntry entry) {
+                return rule.applyRule(query, entry);
+            }
+        };
+    }
+
 }
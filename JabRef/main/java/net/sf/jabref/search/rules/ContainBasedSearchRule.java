@@ -16,21 +16,25 @@
 package net.sf.jabref.search.rules;
 
 import java.util.List;
+import java.util.Set;
 
 import net.sf.jabref.BibtexEntry;
-import net.sf.jabref.export.layout.format.RemoveLatexCommands;
-import net.sf.jabref.search.SearchRule;
+import net.sf.jabref.search.CompilableSearchRule;
+import net.sf.jabref.search.IndexedSearchRule;
+import net.sf.jabref.search.SearchIndex;
+import net.sf.jabref.search.SearchPlan;
 import net.sf.jabref.search.rules.util.SentenceAnalyzer;
 
 /**
  * Search rule for contain-based search.
  */
-public class ContainBasedSearchRule implements SearchRule {
-
-    private static final RemoveLatexCommands REMOVE_LATEX_COMMANDS = new RemoveLatexCommands();
+public class ContainBasedSearchRule implements IndexedSearchRule, CompilableSearchRule {
 
     private final boolean caseSensitive;
 
+    // The plan of the last query passed to applyRule:
+    private volatile Plan lastPlan;
+
     public ContainBasedSearchRule(boolean caseSensitive) {
         this.caseSensitive = caseSensitive;
     }
@@ -44,45 +48,83 @@ public class ContainBasedSearchRule implements SearchRule {
         return true;
     }
 
+    @Override
+    public Set<BibtexEntry> getCandidates(String query, SearchIndex index) {
+        return index.getEntriesContainingAll(getWords(query));
+    }
+
+    @Override
+    public SearchPlan compile(String query) {
+        return new Plan(query, getWords(query), caseSensitive);
+    }
+
     @Override
     public boolean applyRule(String query, BibtexEntry bibtexEntry) {
+        Plan plan = lastPlan;
+        if ((plan == null) || !plan.query.equals(query)) {
+            plan = new Plan(query, getWords(query), caseSensitive);
+            lastPlan = plan;
+        }
+        return plan.matches(bibtexEntry);
+    }
 
+    private List<String> getWords(String query) {
         String searchString = query;
         if (!caseSensitive) {
             searchString = searchString.toLowerCase();
         }
 
-        List<String> words = new SentenceAnalyzer(searchString).getWords();
+        return new SentenceAnalyzer(searchString).getWords();
+    }
 
-        //print(words);
-        // We need match for all words:
-        boolean[] matchFound = new boolean[words.size()];
+    private static class Plan implements SearchPlan {
 
-        for (String field : bibtexEntry.getAllFields()) {
-            Object fieldContentAsObject = bibtexEntry.getField(field);
-            if (fieldContentAsObject != null) {
-                String fieldContent = ContainBasedSearchRule.REMOVE_LATEX_COMMANDS.format(fieldContentAsObject.toString());
-                if (!caseSensitive) {
-                    fieldContent = fieldContent.toLowerCase();
+        private final String query;
+        private final String[] words;
+        private final boolean caseSensitive;
+
+        Plan(String query, List<String> words, boolean caseSensitive) {
+            this.query = query;
+            this.words = words.toArray(new String[words.size()]);
+            this.caseSensitive = caseSensitive;
+        }
+
+        @Override
+        public boolean matches(BibtexEntry bibtexEntry) {
+            if (words.length == 0) {
+                return true;
+            }
+
+            // We need match for all words. Up to 64 words are tracked in a bit mask,
+            // so that only longer queries need an array per entry:
+            long matchMask = 0;
+            boolean[] matchFound = words.length > 64 ? new boolean[words.length] : null;
+            int matches = 0;
+
+            for (String field : bibtexEntry.getFieldNames()) {
+                String fieldContent = bibtexEntry.getLatexFreeField(field, !caseSensitive);
+                if (fieldContent == null) {
+                    continue;
                 }
 
-                int index = 0;
                 // Check if we have a match for each of the query words, ignoring
                 // those words for which we already have a match:
-                for (String s : words) {
-                    matchFound[index] = matchFound[index] || fieldContent.contains(s);
-
-                    index++;
+                for (int i = 0; i < words.length; i++) {
+                    boolean found = matchFound == null ? (matchMask & (1L << i)) != 0 : matchFound[i];
+                    if (!found && fieldContent.contains(words[i])) {
+                        if (matchFound == null) {
+                            matchMask |= 1L << i;
+                        } else {
+                            matchFound[i] = true;
+                        }
+                        if (++matches == words.length) {
+                            return true; // Matched all words.
+                        }
+                    }
                 }
             }
-
-        }
-        for (boolean aMatchFound : matchFound) {
-            if (!aMatchFound) {
-                return false; // Didn't match all words.
-            }
+            return false; // Didn't match all words.
         }
-        return true; // Matched all words.
     }
 
 }
@@ -16,21 +16,27 @@
 package net.sf.jabref.search.rules;
 
 import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.search.CompilableSearchRule;
+import net.sf.jabref.search.IndexedSearchRule;
 import net.sf.jabref.search.SearchBaseVisitor;
-import net.sf.jabref.search.SearchRule;
+import net.sf.jabref.search.SearchIndex;
 import net.sf.jabref.search.SearchLexer;
 import net.sf.jabref.search.SearchParser;
+import net.sf.jabref.search.SearchPlan;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * The search query must be specified in an expression that is acceptable by the Search.g4 grammar.
  */
-public class GrammarBasedSearchRule implements SearchRule {
+public class GrammarBasedSearchRule implements IndexedSearchRule, CompilableSearchRule {
 
     static public class ThrowingErrorListener extends BaseErrorListener {
 
@@ -49,6 +55,7 @@ public class GrammarBasedSearchRule implements SearchRule {
 
     private ParseTree tree;
     private String query;
+    private SearchPlan plan;
 
     public GrammarBasedSearchRule(boolean caseSensitiveSearch, boolean regExpSearch) throws RecognitionException {
         this.caseSensitiveSearch = caseSensitiveSearch;
@@ -80,6 +87,12 @@ public class GrammarBasedSearchRule implements SearchRule {
             return;
         }
 
+        tree = parse(query);
+        plan = new PlanBuilder(caseSensitiveSearch, regExpSearch).visit(tree);
+        this.query = query;
+    }
+
+    private static ParseTree parse(String query) throws ParseCancellationException {
         SearchLexer lexer = new SearchLexer(new ANTLRInputStream(query));
         lexer.removeErrorListeners(); // no infos on file system
         lexer.addErrorListener(ThrowingErrorListener.INSTANCE);
@@ -87,13 +100,28 @@ public class GrammarBasedSearchRule implements SearchRule {
         parser.removeErrorListeners(); // no infos on file system
         parser.addErrorListener(ThrowingErrorListener.INSTANCE);
         parser.setErrorHandler(new BailErrorStrategy()); // ParseCancellationException on parse errors
-        tree = parser.start();
-        this.query = query;
+        return parser.start();
     }
 
     @Override
     public boolean applyRule(String query, BibtexEntry bibtexEntry) {
-        return new BibtexSearchVisitor(caseSensitiveSearch, regExpSearch, bibtexEntry).visit(tree);
+        return plan.matches(bibtexEntry);
+    }
+
+    /**
+     * @throws ParseCancellationException if the query is not valid
+     */
+    @Override
+    public SearchPlan compile(String query) throws ParseCancellationException {
+        return new PlanBuilder(caseSensitiveSearch, regExpSearch).visit(parse(query));
+    }
+
+    @Override
+    public Set<BibtexEntry> getCandidates(String query, SearchIndex index) {
+        if (!validateSearchStrings(query)) {
+            return null;
+        }
+        return new CandidateVisitor(regExpSearch, index).visit(tree);
     }
 
     @Override
@@ -120,39 +148,47 @@ public class GrammarBasedSearchRule implements SearchRule {
         }
     }
 
-    public static class Comparator {
+    public static class Comparator implements SearchPlan {
 
         private final ComparisonOperator operator;
         private final Pattern fieldPattern;
         private final Pattern valuePattern;
+        private final boolean searchesEntryType;
+
+        // Which field names the field pattern matches, as there are only few different ones:
+        private final ConcurrentHashMap<String, Boolean> searchedFields = new ConcurrentHashMap<String, Boolean>();
+
+        // Matchers are not thread-safe, so every thread resets its own one:
+        private final ThreadLocal<Matcher> valueMatcher = new ThreadLocal<Matcher>() {
+
+            @Override
+            protected Matcher initialValue() {
+                return valuePattern.matcher("");
+            }
+        };
 
         public Comparator(String field, String value, ComparisonOperator operator, boolean caseSensitive, boolean regex) {
             this.operator = operator;
 
             this.fieldPattern = Pattern.compile(regex ? field : "\\Q" + field + "\\E", caseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
             this.valuePattern = Pattern.compile(regex ? value : "\\Q" + value + "\\E", caseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
+            this.searchesEntryType = fieldPattern.matcher("entrytype").matches();
+        }
+
+        @Override
+        public boolean matches(BibtexEntry entry) {
+            return compare(entry);
         }
 
         public boolean compare(BibtexEntry entry) {
             // specification of fields to search is done in the search expression itself
-            String[] searchKeys = entry.getAllFields().toArray(new String[entry.getAllFields().size()]);
-
             boolean noSuchField = true;
             // this loop iterates over all regular keys, then over pseudo keys like "type"
-            for (int i = 0; i < searchKeys.length + 1; i++) {
-                String content;
-                if (i - searchKeys.length == 0) {
-                    // PSEUDOFIELD_TYPE
-                    if (!fieldPattern.matcher("entrytype").matches())
-                        continue;
-                    content = entry.getType().getName();
-                } else {
-                    String searchKey = searchKeys[i];
-                    if (!fieldPattern.matcher(searchKey).matches())
-                        continue;
-                    content = entry.getField(searchKey);
-                }
+            for (String searchKey : entry.getFieldNames()) {
+                if (!isSearchedField(searchKey))
+                    continue;
                 noSuchField = false;
+                String content = entry.getField(searchKey);
                 if (content == null)
                     continue; // paranoia
 
@@ -160,12 +196,28 @@ public class GrammarBasedSearchRule implements SearchRule {
                     return true;
                 }
             }
+            if (searchesEntryType) {
+                // PSEUDOFIELD_TYPE
+                noSuchField = false;
+                if (matchInField(entry.getType().getName())) {
+                    return true;
+                }
+            }
 
             return noSuchField && operator == ComparisonOperator.DOES_NOT_CONTAIN;
         }
 
+        private boolean isSearchedField(String field) {
+            Boolean searched = searchedFields.get(field);
+            if (searched == null) {
+                searched = fieldPattern.matcher(field).matches();
+                searchedFields.put(field, searched);
+            }
+            return searched;
+        }
+
         public boolean matchInField(String content) {
-            Matcher matcher = valuePattern.matcher(content);
+            Matcher matcher = valueMatcher.get().reset(content);
             if (operator == ComparisonOperator.CONTAINS) {
                 return matcher.find();
             } else if (operator == ComparisonOperator.EXACT) {
@@ -179,52 +231,150 @@ public class GrammarBasedSearchRule implements SearchRule {
 
     }
 
+    private static class NotPlan implements SearchPlan {
+
+        private final SearchPlan plan;
+
+        NotPlan(SearchPlan plan) {
+            this.plan = plan;
+        }
+
+        @Override
+        public boolean matches(BibtexEntry entry) {
+            return !plan.matches(entry);
+        }
+    }
+
+    private static class AndPlan implements SearchPlan {
+
+        private final SearchPlan left;
+        private final SearchPlan right;
+
+        AndPlan(SearchPlan left, SearchPlan right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean matches(BibtexEntry entry) {
+            return left.matches(entry) && right.matches(entry);
+        }
+    }
+
+    private static class OrPlan implements SearchPlan {
+
+        private final SearchPlan left;
+        private final SearchPlan right;
+
+        OrPlan(SearchPlan left, SearchPlan right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean matches(BibtexEntry entry) {
+            return left.matches(entry) || right.matches(entry);
+        }
+    }
 
     /**
-     * Search results in boolean. It may be later on converted to an int.
+     * Compiles the parse tree into a plan, so that the patterns of each comparison are compiled only once.
      */
-    static class BibtexSearchVisitor extends SearchBaseVisitor<Boolean> {
+    static class PlanBuilder extends SearchBaseVisitor<SearchPlan> {
 
         private final boolean caseSensitive;
         private final boolean regex;
 
-        private final BibtexEntry entry;
-
-        public BibtexSearchVisitor(boolean caseSensitive, boolean regex, BibtexEntry bibtexEntry) {
+        public PlanBuilder(boolean caseSensitive, boolean regex) {
             this.caseSensitive = caseSensitive;
             this.regex = regex;
-            this.entry = bibtexEntry;
         }
 
-        public boolean comparison(String field, ComparisonOperator operator, String value) {
-            return new Comparator(field, value, operator, caseSensitive, regex).compare(entry);
+        @Override public SearchPlan visitStart(SearchParser.StartContext ctx) {
+            return visit(ctx.expression());
+        }
+
+        @Override
+        public SearchPlan visitComparison(SearchParser.ComparisonContext ctx) {
+            return new Comparator(ctx.left.getText(), ctx.right.getText(), ComparisonOperator.build(ctx.operator.getText()), caseSensitive, regex);
+        }
+
+        @Override
+        public SearchPlan visitUnaryExpression(SearchParser.UnaryExpressionContext ctx) {
+            return new NotPlan(visit(ctx.expression())); // negate
+        }
+
+        @Override
+        public SearchPlan visitParenExpression(SearchParser.ParenExpressionContext ctx) {
+            return visit(ctx.expression()); // ignore parenthesis
+        }
+
+        @Override
+        public SearchPlan visitBinaryExpression(SearchParser.BinaryExpressionContext ctx) {
+            if (ctx.operator.getText().equalsIgnoreCase("AND")) {
+                return new AndPlan(visit(ctx.left), visit(ctx.right)); // and
+            } else {
+                return new OrPlan(visit(ctx.left), visit(ctx.right)); // or
+            }
         }
 
-        @Override public Boolean visitStart(SearchParser.StartContext ctx) {
+    }
+
+    /**
+     * Collects the entries that may match, or null if all entries may match.
+     */
+    static class CandidateVisitor extends SearchBaseVisitor<Set<BibtexEntry>> {
+
+        private final boolean regex;
+
+        private final SearchIndex index;
+
+        public CandidateVisitor(boolean regex, SearchIndex index) {
+            this.regex = regex;
+            this.index = index;
+        }
+
+        @Override public Set<BibtexEntry> visitStart(SearchParser.StartContext ctx) {
             return visit(ctx.expression());
         }
 
         @Override
-        public Boolean visitComparison(SearchParser.ComparisonContext ctx) {
-            return comparison(ctx.left.getText(), ComparisonOperator.build(ctx.operator.getText()), ctx.right.getText());
+        public Set<BibtexEntry> visitComparison(SearchParser.ComparisonContext ctx) {
+            // Only literal values that have to be found can be looked up in the index:
+            ComparisonOperator operator = ComparisonOperator.build(ctx.operator.getText());
+            if (regex || (operator == ComparisonOperator.DOES_NOT_CONTAIN)) {
+                return null;
+            }
+            return index.getEntriesContainingAll(Collections.singletonList(ctx.right.getText()));
         }
 
         @Override
-        public Boolean visitUnaryExpression(SearchParser.UnaryExpressionContext ctx) {
-            return !visit(ctx.expression()); // negate
+        public Set<BibtexEntry> visitUnaryExpression(SearchParser.UnaryExpressionContext ctx) {
+            return null; // a negation may match any entry
         }
 
         @Override
-        public Boolean visitParenExpression(SearchParser.ParenExpressionContext ctx) {
+        public Set<BibtexEntry> visitParenExpression(SearchParser.ParenExpressionContext ctx) {
             return visit(ctx.expression()); // ignore parenthesis
         }
 
         @Override
-        public Boolean visitBinaryExpression(SearchParser.BinaryExpressionContext ctx) {
+        public Set<BibtexEntry> visitBinaryExpression(SearchParser.BinaryExpressionContext ctx) {
+            Set<BibtexEntry> left = visit(ctx.left);
+            Set<BibtexEntry> right = visit(ctx.right);
             if (ctx.operator.getText().equalsIgnoreCase("AND")) {
-                return visit(ctx.left) && visit(ctx.right); // and
+                if (left == null) {
+                    return right;
+                } else if (right != null) {
+                    left.retainAll(right);
+                }
+                return left;
             } else {
-                return visit(ctx.left) || visit(ctx.right); // or
+                if ((left == null) || (right == null)) {
+                    return null;
+                }
+                left.addAll(right);
+                return left;
             }
         }
 
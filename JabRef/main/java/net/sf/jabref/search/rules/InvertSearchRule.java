@@ -2,7 +2,10 @@ package net.sf.jabref.search.rules;
 
 import com.google.common.base.Preconditions;
 import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.search.CompilableSearchRule;
+import net.sf.jabref.search.SearchPlan;
 import net.sf.jabref.search.SearchRule;
+import net.sf.jabref.search.SearchRules;
 
 /**
  * Inverts the search result.
@@ -11,7 +14,7 @@ import net.sf.jabref.search.SearchRule;
  * false --> true
  * true --> false
  */
-public class InvertSearchRule implements SearchRule {
+public class InvertSearchRule implements CompilableSearchRule {
 
     private final SearchRule otherRule;
 
@@ -24,6 +27,18 @@ public class InvertSearchRule implements SearchRule {
         return !otherRule.applyRule(query, bibtexEntry);
     }
 
+    @Override
+    public SearchPlan compile(String query) {
+        final SearchPlan otherPlan = SearchRules.compile(otherRule, query);
+        return new SearchPlan() {
+
+            @Override
+            public boolean matches(BibtexEntry entry) {
+                return !otherPlan.matches(entry);
+            }
+        };
+    }
+
     @Override
     public boolean validateSearchStrings(String query) {
         return this.otherRule.validateSearchStrings(query);
@@ -16,11 +16,10 @@
 package net.sf.jabref.search.rules;
 
 import net.sf.jabref.BibtexEntry;
-import net.sf.jabref.export.layout.format.RemoveLatexCommands;
-import net.sf.jabref.search.SearchRule;
+import net.sf.jabref.search.CompilableSearchRule;
+import net.sf.jabref.search.SearchPlan;
 import net.sf.jabref.search.rules.util.SentenceAnalyzer;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -29,12 +28,13 @@ import java.util.regex.PatternSyntaxException;
 /**
  * Search rule for regex-based search.
  */
-public class RegexBasedSearchRule implements SearchRule {
-
-    private static final RemoveLatexCommands REMOVE_LATEX_COMMANDS = new RemoveLatexCommands();
+public class RegexBasedSearchRule implements CompilableSearchRule {
 
     private final boolean caseSensitive;
 
+    // The plan of the last query passed to applyRule:
+    private volatile Plan lastPlan;
+
     public RegexBasedSearchRule(boolean caseSensitive) {
         this.caseSensitive = caseSensitive;
     }
@@ -45,71 +45,110 @@ public class RegexBasedSearchRule implements SearchRule {
 
     @Override
     public boolean validateSearchStrings(String query) {
-        String searchString = query;
-        if (!caseSensitive) {
-            searchString = searchString.toLowerCase();
-        }
-        List<String> words = new SentenceAnalyzer(searchString).getWords();
-        try {
-            for (String word : words) {
-                Pattern.compile(word, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
-            }
-        } catch (PatternSyntaxException ex) {
-            return false;
-        }
-        return true;
+        return compilePatterns(query) != null;
+    }
+
+    @Override
+    public SearchPlan compile(String query) {
+        return new Plan(query, compilePatterns(query), caseSensitive);
     }
 
     @Override
     public boolean applyRule(String query, BibtexEntry bibtexEntry) {
+        Plan plan = lastPlan;
+        if ((plan == null) || !plan.query.equals(query)) {
+            plan = new Plan(query, compilePatterns(query), caseSensitive);
+            lastPlan = plan;
+        }
+        return plan.matches(bibtexEntry);
+    }
 
+    /**
+     * @return the patterns of all words of the query, or null if one of them is not a valid regular expression.
+     */
+    private Pattern[] compilePatterns(String query) {
         String searchString = query;
         if (!caseSensitive) {
             searchString = searchString.toLowerCase();
         }
 
         List<String> words = new SentenceAnalyzer(searchString).getWords();
-
-        List<Pattern> patterns = new ArrayList<Pattern>();
+        Pattern[] patterns = new Pattern[words.size()];
         try {
-            for (String word : words) {
-                patterns.add(Pattern.compile(word, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE));
+            for (int i = 0; i < patterns.length; i++) {
+                patterns[i] = Pattern.compile(words.get(i), caseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
             }
         } catch (PatternSyntaxException ex) {
-            return false;
+            return null;
         }
+        return patterns;
+    }
 
-        //print(words);
-        // We need match for all words:
-        boolean[] matchFound = new boolean[words.size()];
+    private static class Plan implements SearchPlan {
 
-        for (String field : bibtexEntry.getAllFields()) {
-            Object fieldContentAsObject = bibtexEntry.getField(field);
-            if (fieldContentAsObject != null) {
-                String fieldContent = RegexBasedSearchRule.REMOVE_LATEX_COMMANDS.format(fieldContentAsObject.toString());
-                if (!caseSensitive) {
-                    fieldContent = fieldContent.toLowerCase();
-                }
+        private final String query;
+        private final Pattern[] patterns;
+        private final boolean caseSensitive;
 
-                int index = 0;
-                // Check if we have a match for each of the query words, ignoring
-                // those words for which we already have a match:
-                for (Pattern pattern : patterns) {
-                    String fieldContentNoBrackets = RegexBasedSearchRule.REMOVE_LATEX_COMMANDS.format(fieldContent);
-                    Matcher m = pattern.matcher(fieldContentNoBrackets);
-                    matchFound[index] = matchFound[index] || m.find();
+        // Matchers are not thread-safe, so every thread resets its own ones:
+        private final ThreadLocal<Matcher[]> matchers = new ThreadLocal<Matcher[]>() {
 
-                    index++;
+            @Override
+            protected Matcher[] initialValue() {
+                Matcher[] result = new Matcher[patterns.length];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = patterns[i].matcher("");
                 }
+                return result;
             }
+        };
 
+        Plan(String query, Pattern[] patterns, boolean caseSensitive) {
+            this.query = query;
+            this.patterns = patterns;
+            this.caseSensitive = caseSensitive;
         }
-        for (boolean aMatchFound : matchFound) {
-            if (!aMatchFound) {
-                return false; // Didn't match all words.
+
+        @Override
+        public boolean matches(BibtexEntry bibtexEntry) {
+            if (patterns == null) {
+                return false; // Invalid regular expression.
+            }
+            if (patterns.length == 0) {
+                return true;
+            }
+            Matcher[] m = matchers.get();
+
+            // We need match for all words. Up to 64 words are tracked in a bit mask,
+            // so that only longer queries need an array per entry:
+            long matchMask = 0;
+            boolean[] matchFound = patterns.length > 64 ? new boolean[patterns.length] : null;
+            int matches = 0;
+
+            for (String field : bibtexEntry.getFieldNames()) {
+                String fieldContent = bibtexEntry.getLatexFreeField(field, !caseSensitive);
+                if (fieldContent == null) {
+                    continue;
+                }
+
+                // Check if we have a match for each of the query words, ignoring
+                // those words for which we already have a match:
+                for (int i = 0; i < patterns.length; i++) {
+                    boolean found = matchFound == null ? (matchMask & (1L << i)) != 0 : matchFound[i];
+                    if (!found && m[i].reset(fieldContent).find()) {
+                        if (matchFound == null) {
+                            matchMask |= 1L << i;
+                        } else {
+                            matchFound[i] = true;
+                        }
+                        if (++matches == patterns.length) {
+                            return true; // Matched all words.
+                        }
+                    }
+                }
             }
+            return false; // Didn't match all words.
         }
-        return true; // Matched all words.
     }
 
 }
@@ -16,6 +16,7 @@
 package net.sf.jabref.search.rules.sets;
 
 import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.search.SearchPlan;
 import net.sf.jabref.search.SearchRule;
 
 /**
@@ -38,4 +39,21 @@ public class AndSearchRuleSet extends SearchRuleSet {
         // Then an AND rule demands that score == number of rules
         return score == ruleSet.size();
     }
+
+    @Override
+    public SearchPlan compile(String searchString) {
+        final SearchPlan[] plans = compileRules(searchString);
+        return new SearchPlan() {
+
+            @Override
+            public boolean matches(BibtexEntry entry) {
+                for (SearchPlan plan : plans) {
+                    if (!plan.matches(entry)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
 }
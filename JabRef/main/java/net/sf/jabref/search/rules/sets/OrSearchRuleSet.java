@@ -16,6 +16,7 @@
 package net.sf.jabref.search.rules.sets;
 
 import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.search.SearchPlan;
 import net.sf.jabref.search.SearchRule;
 
 /**
@@ -38,4 +39,21 @@ public class OrSearchRuleSet extends SearchRuleSet {
         // OR rule demands score > 0.
         return score > 0;
     }
+
+    @Override
+    public SearchPlan compile(String searchString) {
+        final SearchPlan[] plans = compileRules(searchString);
+        return new SearchPlan() {
+
+            @Override
+            public boolean matches(BibtexEntry entry) {
+                for (SearchPlan plan : plans) {
+                    if (plan.matches(entry)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
 }
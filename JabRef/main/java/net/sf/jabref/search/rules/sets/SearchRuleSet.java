@@ -27,11 +27,14 @@
 package net.sf.jabref.search.rules.sets;
 
 import com.google.common.base.Preconditions;
+import net.sf.jabref.search.CompilableSearchRule;
+import net.sf.jabref.search.SearchPlan;
 import net.sf.jabref.search.SearchRule;
+import net.sf.jabref.search.SearchRules;
 
 import java.util.Vector;
 
-public abstract class SearchRuleSet implements SearchRule {
+public abstract class SearchRuleSet implements CompilableSearchRule {
 
     protected final Vector<SearchRule> ruleSet = new Vector<SearchRule>();
 
@@ -48,4 +51,12 @@ public abstract class SearchRuleSet implements SearchRule {
         }
         return true;
     }
+
+    protected SearchPlan[] compileRules(String query) {
+        SearchPlan[] plans = new SearchPlan[ruleSet.size()];
+        for (int i = 0; i < plans.length; i++) {
+            plans[i] = SearchRules.compile(ruleSet.get(i), query);
+        }
+        return plans;
+    }
 }
@@ -216,6 +216,29 @@ public class SQLUtil {
         return res.getResultSet();
     }
 
+    /**
+     * Runs a query whose result is fetched from the DB in portions of fetchSize
+     * rows while it is read, instead of being materialized completely. Most
+     * drivers only use a cursor for this if the connection is not in autocommit
+     * mode. The statement of the ResultSet has to be closed by the caller.
+     * 
+     * @param conn
+     *            Connection to the database
+     * @param query
+     *            The query to run
+     * @param fetchSize
+     *            The number of rows to fetch at once
+     * @return a ResultSet with the query result
+     * @throws SQLException
+     */
+    public static ResultSet queryWithCursor(Connection conn, String query,
+            int fetchSize) throws SQLException {
+        Statement stmnt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        stmnt.setFetchSize(fetchSize);
+        return stmnt.executeQuery(query);
+    }
+
     /**
      * Utility method for processing DML with proper output
      * 
@@ -0,0 +1,164 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.sql.exporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+
+/**
+ * Records which entries of a database were added, changed or removed since its
+ * last export to a DBMS, so that the next export only has to write those entries.
+ * Field changes made through undo and redo reach the tracker as well, since they
+ * are applied with setField and thus cause a DatabaseChangeEvent.
+ *
+ * Every change is stamped with a counter. An export takes the stamp before
+ * reading the changes, and after committing only forgets the changes up to that
+ * stamp, so that changes made while the export was running are kept for the next
+ * one.
+ *
+ * Besides the changes, the tracker remembers what the last export wrote: the
+ * target it was written to, the base revision of the full export the DBMS content
+ * is built on, a signature of the group tree and the entry/group assignments.
+ * Entry ids are only unique within a session, so incremental exports are only
+ * possible to a target which has been fully exported in the same session.
+ */
+class DBChangeTracker implements DatabaseChangeListener {
+
+    private long stamp = 0;
+
+    private final Map<BibtexEntry, Long> changedEntries = new HashMap<BibtexEntry, Long>();
+
+    private final Map<String, Long> removedEntries = new HashMap<String, Long>();
+
+    private String target = null;
+
+    private int baseRevision = 0;
+
+    private String groupsSignature = null;
+
+    private Set<String> assignments = new HashSet<String>();
+
+
+    @Override
+    public synchronized void databaseChanged(DatabaseChangeEvent e) {
+        BibtexEntry entry = e.getEntry();
+        switch (e.getType()) {
+        case ADDED_ENTRY:
+        case CHANGED_ENTRY:
+            changedEntries.put(entry, ++stamp);
+            removedEntries.remove(entry.getId());
+            break;
+        case REMOVED_ENTRY:
+            changedEntries.remove(entry);
+            removedEntries.put(entry.getId(), ++stamp);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Returns the stamp of the latest change. Changes read after taking the stamp
+     * include at least all changes up to it.
+     */
+    public synchronized long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Returns the entries added or changed since the last export, and not removed
+     * afterwards.
+     */
+    public synchronized List<BibtexEntry> getChangedEntries() {
+        return new ArrayList<BibtexEntry>(changedEntries.keySet());
+    }
+
+    /**
+     * Returns the ids of the entries removed since the last export, and not added
+     * again afterwards.
+     */
+    public synchronized Set<String> getRemovedEntries() {
+        return new HashSet<String>(removedEntries.keySet());
+    }
+
+    /**
+     * Returns the target of the last export, or null if the database has not been
+     * fully exported yet.
+     */
+    public synchronized String getTarget() {
+        return target;
+    }
+
+    public synchronized int getBaseRevision() {
+        return baseRevision;
+    }
+
+    public synchronized String getGroupsSignature() {
+        return groupsSignature;
+    }
+
+    /**
+     * Returns the entry/group assignments written by the last export, as
+     * "groups_id:entries_id" strings.
+     */
+    public synchronized Set<String> getAssignments() {
+        return new HashSet<String>(assignments);
+    }
+
+    /**
+     * Records a committed export of the whole database.
+     *
+     * @param exportStamp
+     *            The stamp taken before the export read the changes.
+     */
+    public synchronized void exported(long exportStamp, String exportTarget,
+            int exportBaseRevision, String exportGroupsSignature,
+            Set<String> exportAssignments) {
+        forget(changedEntries.values().iterator(), exportStamp);
+        forget(removedEntries.values().iterator(), exportStamp);
+        target = exportTarget;
+        baseRevision = exportBaseRevision;
+        groupsSignature = exportGroupsSignature;
+        assignments = new HashSet<String>(exportAssignments);
+    }
+
+    /**
+     * Forgets the target of the last export, so that the next export is a full
+     * one. Used after exports of only part of the database.
+     */
+    public synchronized void reset() {
+        target = null;
+        groupsSignature = null;
+        assignments = new HashSet<String>();
+    }
+
+    private static void forget(Iterator<Long> stamps, long exportStamp) {
+        while (stamps.hasNext()) {
+            if (stamps.next() <= exportStamp) {
+                stamps.remove();
+            }
+        }
+    }
+}
@@ -20,15 +20,23 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 import javax.swing.JOptionPane;
 
@@ -67,6 +75,33 @@ public abstract class DBExporter extends DBImporterExporter {
     DBStrings dbStrings = null;
     private final ArrayList<String> dbNames = new ArrayList<String>();
 
+    private static final String INSERT_ENTRY_GROUP = "INSERT INTO entry_group (groups_id, entries_id) VALUES (?, ?)";
+
+    private static final String DELETE_ENTRY_GROUP = "DELETE FROM entry_group WHERE groups_id=? AND entries_id=?";
+
+    private final Map<BibtexDatabase, DBChangeTracker> changeTrackers = new WeakHashMap<BibtexDatabase, DBChangeTracker>();
+
+    private int batchSize = 500;
+
+    private int commitSize = 0;
+
+
+    /**
+     * Sets the number of rows sent to the DBMS in one batch. Only applies to
+     * exports to a DBMS, not to exports as a file.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Sets the number of rows after which the transaction of an export to a DBMS
+     * is committed. With 0 (the default), the whole export is done in a single
+     * transaction, which is rolled back if the export fails.
+     */
+    public void setCommitSize(int commitSize) {
+        this.commitSize = Math.max(0, commitSize);
+    }
 
     /**
      * Method for the exportDatabase methods.
@@ -102,6 +137,233 @@ public abstract class DBExporter extends DBImporterExporter {
         populateEntryGroupsTable(gtn, 0, 1, out, database_id);
     }
 
+    /**
+     * Worker method to export a database to a DBMS, in a single transaction
+     * which is committed at the end. If the database was fully exported to the
+     * same target earlier in this session, and nobody has fully exported another
+     * version of it since, only the entries changed since then and the changed
+     * group assignments are written. Otherwise all records of the database are
+     * replaced.
+     * 
+     * @param keySet
+     *            The set of IDs of the entries to export, or null to export
+     *            all entries.
+     */
+    private void exportToDBMS(final BibtexDatabase database,
+            final MetaData metaData, Set<String> keySet, Connection conn,
+            String dbName) throws Exception {
+        DBChangeTracker tracker = getChangeTracker(database);
+        long stamp = tracker.getStamp();
+        String target = dbStrings.getServerType() + "://"
+                + dbStrings.getServerHostname() + '/'
+                + dbStrings.getDatabase() + '/' + dbName;
+        GroupTreeNode gtn = metaData.getGroups();
+        String groupsSignature = DBExporter.getGroupsSignature(gtn);
+
+        conn.setAutoCommit(false);
+        int database_id = getDatabaseIDByName(metaData, conn, dbName);
+        int[] revision = DBExporter.lockRevision(conn, database_id);
+        populateEntryTypesTable(conn);
+        populateGroupTypesTable(conn);
+
+        Set<String> assignments;
+        int baseRevision;
+        if ((keySet == null) && target.equals(tracker.getTarget())
+                && (revision != null) && (revision[1] == tracker.getBaseRevision())) {
+            assignments = exportChanges(database, tracker, gtn,
+                    groupsSignature, conn, database_id);
+            baseRevision = revision[1];
+        } else {
+            List<BibtexEntry> entries = FileActions.getSortedEntries(database,
+                    metaData, keySet, false);
+            removeAllRecordsForAGivenDB(conn, database_id);
+            insertEntries(conn, database_id, entries);
+            insertStrings(conn, database, database_id);
+            populateGroupsTable(gtn, 0, 1, conn, database_id);
+            assignments = getEntryGroups(conn, gtn, database_id);
+            updateEntryGroups(conn, DBExporter.INSERT_ENTRY_GROUP, assignments);
+            baseRevision = revision == null ? 1 : revision[0] + 1;
+        }
+        DBExporter.writeRevision(conn, database_id,
+                revision == null ? 1 : revision[0] + 1, baseRevision);
+        conn.commit();
+
+        if (keySet == null) {
+            tracker.exported(stamp, target, baseRevision, groupsSignature,
+                    assignments);
+        } else {
+            tracker.reset();
+        }
+    }
+
+    /**
+     * Writes the changes recorded by the tracker since the last export: removed
+     * entries are deleted, changed entries updated or inserted, and the group
+     * assignments which were added or removed are inserted or deleted. The
+     * strings are small and not tracked, so they are always replaced. If the
+     * group tree itself changed, all groups are replaced as well.
+     * 
+     * @return The group assignments of the database after the export.
+     */
+    private Set<String> exportChanges(BibtexDatabase database,
+            DBChangeTracker tracker, GroupTreeNode gtn, String groupsSignature,
+            Connection conn, int database_id) throws SQLException {
+        Set<String> removed = tracker.getRemovedEntries();
+        List<BibtexEntry> changed = tracker.getChangedEntries();
+
+        // the group assignments of deleted entries are deleted along with them
+        Batch batch = new Batch(conn,
+                "DELETE FROM entries WHERE database_id=? AND jabref_eid=?",
+                batchSize, commitSize);
+        try {
+            PreparedStatement statement = batch.getStatement();
+            for (String id : removed) {
+                statement.setInt(1, database_id);
+                statement.setString(2, id);
+                batch.add();
+            }
+            batch.flush();
+        } finally {
+            batch.close();
+        }
+
+        Map<String, Integer> entryIds = queryIds(conn,
+                "SELECT entries_id, jabref_eid FROM entries WHERE database_id='"
+                        + database_id + "';");
+        List<BibtexEntry> updated = new ArrayList<BibtexEntry>();
+        List<BibtexEntry> inserted = new ArrayList<BibtexEntry>();
+        for (BibtexEntry entry : changed) {
+            if (entryIds.containsKey(entry.getId())) {
+                updated.add(entry);
+            } else {
+                inserted.add(entry);
+            }
+        }
+        updateEntries(conn, database_id, updated);
+        insertEntries(conn, database_id, inserted);
+
+        SQLUtil.processQuery(conn, "DELETE FROM strings WHERE database_id='"
+                + database_id + "';");
+        insertStrings(conn, database, database_id);
+
+        if (!groupsSignature.equals(tracker.getGroupsSignature())) {
+            SQLUtil.processQuery(conn,
+                    "DELETE FROM entry_group WHERE groups_id IN "
+                            + "(SELECT groups_id FROM groups WHERE database_id='"
+                            + database_id + "');");
+            SQLUtil.processQuery(conn, "DELETE FROM groups WHERE database_id='"
+                    + database_id + "';");
+            populateGroupsTable(gtn, 0, 1, conn, database_id);
+            Set<String> assignments = getEntryGroups(conn, gtn, database_id);
+            updateEntryGroups(conn, DBExporter.INSERT_ENTRY_GROUP, assignments);
+            return assignments;
+        }
+
+        Set<String> assignments = getEntryGroups(conn, gtn, database_id);
+        Set<String> added = new HashSet<String>(assignments);
+        added.removeAll(tracker.getAssignments());
+        Set<String> dropped = tracker.getAssignments();
+        dropped.removeAll(assignments);
+        updateEntryGroups(conn, DBExporter.DELETE_ENTRY_GROUP, dropped);
+        updateEntryGroups(conn, DBExporter.INSERT_ENTRY_GROUP, added);
+        return assignments;
+    }
+
+    /**
+     * Returns the tracker recording the changes of the given database, creating
+     * it on the first export of the database.
+     */
+    private synchronized DBChangeTracker getChangeTracker(BibtexDatabase database) {
+        DBChangeTracker tracker = changeTrackers.get(database);
+        if (tracker == null) {
+            tracker = new DBChangeTracker();
+            database.addDatabaseChangeListener(tracker);
+            changeTrackers.put(database, tracker);
+        }
+        return tracker;
+    }
+
+    /**
+     * Reads the revision and base revision of the given database, locking its
+     * row until the end of the transaction so that concurrent exports of the same
+     * database are serialized. The base revision is the revision of the last
+     * full export. On the first export the row is created first with revision
+     * 0, as there would be nothing to lock otherwise. If a concurrent export
+     * creates it at the same time, the insert waits for that transaction and then
+     * fails on the primary key; it is rolled back to a savepoint and the row
+     * written by the other export is locked instead.
+     * 
+     * @return The revision and base revision, or null if the database has no
+     *         revision yet.
+     */
+    private static int[] lockRevision(Connection conn, int database_id)
+            throws SQLException {
+        Savepoint savepoint = conn.setSavepoint();
+        try {
+            SQLUtil.processQuery(conn,
+                    "INSERT INTO database_revision (database_id, revision, base_revision) VALUES ('"
+                            + database_id + "', 0, 0);");
+            conn.releaseSavepoint(savepoint);
+        } catch (SQLException ex) {
+            // the row exists already
+            conn.rollback(savepoint);
+        }
+        Statement statement = (Statement) SQLUtil.processQueryWithResults(conn,
+                "SELECT revision, base_revision FROM database_revision WHERE database_id='"
+                        + database_id + "' FOR UPDATE;");
+        try {
+            ResultSet rs = statement.getResultSet();
+            if (rs.next() && (rs.getInt("revision") > 0)) {
+                return new int[] {rs.getInt("revision"), rs.getInt("base_revision")};
+            }
+            return null;
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void writeRevision(Connection conn, int database_id,
+            int revision, int baseRevision) throws SQLException {
+        SQLUtil.processQuery(conn, "UPDATE database_revision SET revision="
+                + revision + ", base_revision=" + baseRevision
+                + " WHERE database_id='" + database_id + "';");
+    }
+
+    /**
+     * Returns a description of the group tree as written to the groups table,
+     * leaving out the assignments of entries to explicit groups.
+     */
+    private static String getGroupsSignature(GroupTreeNode root) {
+        StringBuilder sb = new StringBuilder();
+        DBExporter.appendGroupsSignature(root, sb);
+        return sb.toString();
+    }
+
+    private static void appendGroupsSignature(GroupTreeNode cursor,
+            StringBuilder sb) {
+        AbstractGroup group = cursor.getGroup();
+        sb.append('(').append(group.getTypeId()).append(':')
+                .append(group.getName()).append(':')
+                .append(group.getHierarchicalContext().ordinal());
+        if (group instanceof KeywordGroup) {
+            KeywordGroup keywordGroup = (KeywordGroup) group;
+            sb.append(':').append(keywordGroup.getSearchField())
+                    .append(':').append(keywordGroup.getSearchExpression())
+                    .append(':').append(keywordGroup.isCaseSensitive())
+                    .append(':').append(keywordGroup.isRegExp());
+        } else if (group instanceof SearchGroup) {
+            SearchGroup searchGroup = (SearchGroup) group;
+            sb.append(':').append(searchGroup.getSearchExpression())
+                    .append(':').append(searchGroup.isCaseSensitive())
+                    .append(':').append(searchGroup.isRegExp());
+        }
+        for (Enumeration<GroupTreeNode> e = cursor.children(); e
+                .hasMoreElements();) {
+            DBExporter.appendGroupsSignature(e.nextElement(), sb);
+        }
+        sb.append(')');
+    }
+
     /**
      * Generates the DML required to populate the entries table with jabref data
      * and writes it to the output PrintStream.
@@ -145,6 +407,174 @@ public abstract class DBExporter extends DBImporterExporter {
         }
     }
 
+    /**
+     * Inserts the entries into the entries table of a DBMS through a batched
+     * prepared statement.
+     */
+    private void insertEntries(Connection conn, int database_id,
+            Collection<BibtexEntry> entries) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO entries (entry_types_id, cite_key, ")
+                .append(fieldStr).append(", database_id, jabref_eid) VALUES (?, ?");
+        for (int i = 0; i < SQLUtil.getAllFields().size(); i++) {
+            sql.append(", ?");
+        }
+        sql.append(", ?, ?)");
+        writeEntries(conn, sql.toString(), database_id, entries);
+    }
+
+    /**
+     * Updates the rows of the given entries in the entries table of a DBMS
+     * through a batched prepared statement.
+     */
+    private void updateEntries(Connection conn, int database_id,
+            Collection<BibtexEntry> entries) throws SQLException {
+        StringBuilder sql = new StringBuilder("UPDATE entries SET entry_types_id=?, cite_key=?");
+        for (String column : fieldStr.split(", ")) {
+            sql.append(", ").append(column).append("=?");
+        }
+        sql.append(" WHERE database_id=? AND jabref_eid=?");
+        writeEntries(conn, sql.toString(), database_id, entries);
+    }
+
+    /**
+     * Runs the given statement in batches for each of the given entries. The
+     * statement takes the entry type id, the cite key, the fields, the database
+     * id and the entry id as parameters, in this order. The entry type ids are
+     * looked up once instead of through a subquery per entry.
+     */
+    private void writeEntries(Connection conn, String sql, int database_id,
+            Collection<BibtexEntry> entries) throws SQLException {
+        Map<String, Integer> typeIds = queryIds(conn,
+                "SELECT entry_types_id, label FROM entry_types");
+        List<String> fields = SQLUtil.getAllFields();
+
+        Batch batch = new Batch(conn, sql, batchSize, commitSize);
+        try {
+            PreparedStatement statement = batch.getStatement();
+            for (BibtexEntry entry : entries) {
+                Integer typeId = typeIds.get(entry.getType().getName().toLowerCase());
+                if (typeId == null) {
+                    statement.setNull(1, Types.INTEGER);
+                } else {
+                    statement.setInt(1, typeId);
+                }
+                DBExporter.setString(statement, 2, entry.getCiteKey());
+                for (int i = 0; i < fields.size(); i++) {
+                    DBExporter.setString(statement, i + 3, entry.getField(fields.get(i)));
+                }
+                statement.setInt(fields.size() + 3, database_id);
+                statement.setString(fields.size() + 4, entry.getId());
+                batch.add();
+            }
+            batch.flush();
+        } finally {
+            batch.close();
+        }
+    }
+
+    /**
+     * Collects the assignments of exported entries to explicit groups as
+     * "groups_id:entries_id" strings. The ids of the entries and groups are read
+     * once instead of through subqueries per assignment.
+     */
+    private Set<String> getEntryGroups(Connection conn, GroupTreeNode root,
+            int database_id) throws SQLException {
+        Map<String, Integer> entryIds = queryIds(conn,
+                "SELECT entries_id, jabref_eid FROM entries WHERE database_id='"
+                        + database_id + "';");
+        Map<String, Integer> groupIds = queryIds(conn,
+                "SELECT groups_id, parent_id, label FROM groups WHERE database_id='"
+                        + database_id + "' ORDER BY groups_id;");
+        Set<String> assignments = new HashSet<String>();
+        collectEntryGroups(root, 0, entryIds, groupIds, assignments);
+        return assignments;
+    }
+
+    private void collectEntryGroups(GroupTreeNode cursor, int parentID,
+            Map<String, Integer> entryIds, Map<String, Integer> groupIds,
+            Set<String> assignments) {
+        Integer groupId = groupIds.get(parentID + ":" + cursor.getGroup().getName());
+        if (groupId == null) {
+            return;
+        }
+        if (cursor.getGroup() instanceof ExplicitGroup) {
+            for (BibtexEntry be : ((ExplicitGroup) cursor.getGroup()).getEntries()) {
+                Integer entryId = entryIds.get(be.getId());
+                // entries which were not exported are skipped
+                if (entryId != null) {
+                    assignments.add(groupId + ":" + entryId);
+                }
+            }
+        }
+        for (Enumeration<GroupTreeNode> e = cursor.children(); e
+                .hasMoreElements();) {
+            collectEntryGroups(e.nextElement(), groupId, entryIds, groupIds,
+                    assignments);
+        }
+    }
+
+    /**
+     * Runs the given statement, taking a groups_id and an entries_id as
+     * parameters, in batches for each of the given "groups_id:entries_id"
+     * assignments.
+     */
+    private void updateEntryGroups(Connection conn, String sql,
+            Collection<String> assignments) throws SQLException {
+        Batch batch = new Batch(conn, sql, batchSize, commitSize);
+        try {
+            PreparedStatement statement = batch.getStatement();
+            for (String assignment : assignments) {
+                int colon = assignment.indexOf(':');
+                statement.setInt(1, Integer.parseInt(assignment.substring(0, colon)));
+                statement.setInt(2, Integer.parseInt(assignment.substring(colon + 1)));
+                batch.add();
+            }
+            batch.flush();
+        } finally {
+            batch.close();
+        }
+    }
+
+    /**
+     * Runs a query whose first column is an integer id, and maps the remaining
+     * columns, joined by ':', to that id. For duplicate keys the first id
+     * returned is kept.
+     */
+    private static Map<String, Integer> queryIds(Connection conn, String query)
+            throws SQLException {
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        Statement statement = (Statement) SQLUtil.processQueryWithResults(conn, query);
+        try {
+            ResultSet rs = statement.getResultSet();
+            int columns = rs.getMetaData().getColumnCount();
+            StringBuilder key = new StringBuilder();
+            while (rs.next()) {
+                key.setLength(0);
+                for (int i = 2; i <= columns; i++) {
+                    if (i > 2) {
+                        key.append(':');
+                    }
+                    key.append(rs.getString(i));
+                }
+                if (!ids.containsKey(key.toString())) {
+                    ids.put(key.toString(), rs.getInt(1));
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        return ids;
+    }
+
+    private static void setString(PreparedStatement statement, int index,
+            String value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.VARCHAR);
+        } else {
+            statement.setString(index, value);
+        }
+    }
+
     /**
      * Recursive method to include a tree of groups.
      * 
@@ -412,6 +842,36 @@ public abstract class DBExporter extends DBImporterExporter {
         }
     }
 
+    /**
+     * Inserts the preamble and strings into the strings table of a DBMS through
+     * a batched prepared statement.
+     */
+    private void insertStrings(Connection conn, BibtexDatabase database,
+            int database_id) throws SQLException {
+        Batch batch = new Batch(conn,
+                "INSERT INTO strings (label, content, database_id) VALUES (?, ?, ?)",
+                batchSize, commitSize);
+        try {
+            PreparedStatement statement = batch.getStatement();
+            if (database.getPreamble() != null) {
+                statement.setString(1, "@PREAMBLE");
+                statement.setString(2, database.getPreamble());
+                statement.setInt(3, database_id);
+                batch.add();
+            }
+            for (String key : database.getStringKeySet()) {
+                BibtexString string = database.getString(key);
+                statement.setString(1, string.getName());
+                DBExporter.setString(statement, 2, string.getContent());
+                statement.setInt(3, database_id);
+                batch.add();
+            }
+            batch.flush();
+        } finally {
+            batch.close();
+        }
+    }
+
     /**
      * Given a DBStrings it connects to the DB and returns the
      * java.sql.Connection object
@@ -497,7 +957,7 @@ public abstract class DBExporter extends DBImporterExporter {
                 redisplay = true;
             } else if (dialogo.hasDBSelected) {
                 dbName = getDBName(matrix, dbStrings, frame, dialogo);
-                performExport(database, metaData, keySet, conn, dbName);
+                exportToDBMS(database, metaData, keySet, conn, dbName);
             }
             if (!conn.getAutoCommit()) {
                 conn.commit();
@@ -609,4 +1069,70 @@ public abstract class DBExporter extends DBImporterExporter {
      * insertJabRefDatabase(metaData, out, dbName); return 1; } }
      */
 
-}
\ No newline at end of file
+
+    /**
+     * A prepared statement whose rows are sent to the DBMS in batches of
+     * batchSize rows. If commitSize is positive, the transaction is committed
+     * every commitSize rows.
+     */
+    private static class Batch {
+
+        private final Connection conn;
+
+        private final PreparedStatement statement;
+
+        private final int batchSize;
+
+        private final int commitSize;
+
+        private int batched;
+
+        private int uncommitted;
+
+
+        public Batch(Connection conn, String sql, int batchSize, int commitSize)
+                throws SQLException {
+            this.conn = conn;
+            this.statement = conn.prepareStatement(sql);
+            this.batchSize = batchSize;
+            this.commitSize = commitSize;
+        }
+
+        public PreparedStatement getStatement() {
+            return statement;
+        }
+
+        /**
+         * Adds the current parameters of the statement as a row to the batch.
+         */
+        public void add() throws SQLException {
+            statement.addBatch();
+            batched++;
+            uncommitted++;
+            if (batched >= batchSize) {
+                flush();
+            }
+            if ((commitSize > 0) && (uncommitted >= commitSize)) {
+                flush();
+                if (!conn.getAutoCommit()) {
+                    conn.commit();
+                }
+                uncommitted = 0;
+            }
+        }
+
+        /**
+         * Sends the rows batched so far to the DBMS.
+         */
+        public void flush() throws SQLException {
+            if (batched > 0) {
+                statement.executeBatch();
+                batched = 0;
+            }
+        }
+
+        public void close() throws SQLException {
+            statement.close();
+        }
+    }
+}
@@ -55,7 +55,9 @@ public class MySQLExporter extends DBExporter {
     @Override
     public Connection connectToDB(DBStrings dbstrings) throws Exception {
         this.dbStrings = dbstrings;
-        String url = SQLUtil.createJDBCurl(dbstrings, false);
+        // let the driver send batched inserts as multi-row statements
+        String url = SQLUtil.createJDBCurl(dbstrings, false)
+                + "/?rewriteBatchedStatements=true";
         String drv = "com.mysql.jdbc.Driver";
 
         Class.forName(drv).newInstance();
@@ -108,6 +110,7 @@ public class MySQLExporter extends DBExporter {
                         + ",\n"
                         + "PRIMARY KEY (entries_id), \n"
                         + "INDEX(entry_types_id), \n"
+                        + "INDEX(database_id, jabref_eid), \n"
                         + "FOREIGN KEY (entry_types_id) REFERENCES entry_types(entry_types_id), \n"
                         + "FOREIGN KEY (database_id) REFERENCES jabref_database(database_id) \n);");
         SQLUtil.processQuery(
@@ -148,5 +151,13 @@ public class MySQLExporter extends DBExporter {
                         + "FOREIGN KEY (entries_id) REFERENCES entries(entries_id) ON DELETE CASCADE, \n"
                         + "FOREIGN KEY (groups_id)  REFERENCES groups(groups_id), \n"
                         + "PRIMARY KEY (groups_id, entries_id) \n" + ");");
+        SQLUtil.processQuery(
+                out,
+                "CREATE TABLE IF NOT EXISTS database_revision ( \n"
+                        + "database_id      INT UNSIGNED   NOT NULL, \n"
+                        + "revision         INTEGER        NOT NULL, \n"
+                        + "base_revision    INTEGER        NOT NULL, \n"
+                        + "FOREIGN KEY (database_id) REFERENCES jabref_database(database_id) ON DELETE CASCADE, \n"
+                        + "PRIMARY KEY (database_id) \n" + ");");
     }
 }
\ No newline at end of file
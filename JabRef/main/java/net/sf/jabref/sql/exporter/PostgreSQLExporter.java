@@ -56,7 +56,9 @@ public class PostgreSQLExporter extends DBExporter {
     @Override
     public Connection connectToDB(DBStrings dbstrings) throws Exception {
         this.dbStrings = dbstrings;
-        String url = SQLUtil.createJDBCurl(dbstrings, true);
+        // let the driver send batched inserts as multi-row statements
+        String url = SQLUtil.createJDBCurl(dbstrings, true)
+                + "?reWriteBatchedInserts=true";
         String drv = "org.postgresql.Driver";
 
         Class.forName(drv).newInstance();
@@ -171,5 +173,17 @@ public class PostgreSQLExporter extends DBExporter {
                         + "FOREIGN KEY (entries_id) REFERENCES entries (entries_id) ON DELETE CASCADE, \n"
                         + "FOREIGN KEY (groups_id)  REFERENCES groups (groups_id), \n"
                         + "PRIMARY KEY (groups_id, entries_id) \n" + ");')");
+        SQLUtil.processQuery(
+                out,
+                "SELECT create_table_if_not_exists ('CREATE TABLE database_revision ( \n"
+                        + "database_id      INTEGER        NOT NULL, \n"
+                        + "revision         INTEGER        NOT NULL, \n"
+                        + "base_revision    INTEGER        NOT NULL, \n"
+                        + "FOREIGN KEY (database_id) REFERENCES jabref_database(database_id) ON DELETE CASCADE, \n"
+                        + "PRIMARY KEY (database_id) \n" + ");')");
+        // an existing index raises duplicate_table as well
+        SQLUtil.processQuery(out,
+                "SELECT create_table_if_not_exists ('CREATE INDEX entries_jabref_eid "
+                        + "ON entries (database_id, jabref_eid);')");
     }
 }
@@ -44,6 +44,16 @@ import net.sf.jabref.util.StringUtil;
  */
 public abstract class DBImporter extends DBImporterExporter {
 
+    /**
+     * Number of rows fetched from the DBMS at once while reading entries.
+     */
+    private static final int FETCH_SIZE = 500;
+
+    /**
+     * Number of entries added to a database at once while importing.
+     */
+    private static final int CHUNK_SIZE = 200;
+
     private final ArrayList<String> columnsNotConsideredForEntries = new ArrayList<String>(
             Arrays.asList("cite_key", "entry_types_id", "database_id",
                     "jabref_eid", "entries_id"));
@@ -71,6 +81,36 @@ public abstract class DBImporter extends DBImporterExporter {
     protected abstract ResultSet readColumnNames(Connection conn)
             throws SQLException;
 
+    /**
+     * Receives the databases of an import while they are read, so that they can
+     * be shown before the import has finished. The methods are called on the
+     * importing thread.
+     */
+    public interface ImportListener {
+
+        /**
+         * Called when the reading of the entries of a database starts. The
+         * strings, preamble and groups of the database have been read already.
+         * 
+         * @param database
+         *            The database, still without entries
+         * @param metaData
+         *            The MetaData of the database, containing its groups
+         * @param name
+         *            The name of the database in the DBMS
+         */
+        void databaseStarted(BibtexDatabase database, MetaData metaData,
+                String name) throws Exception;
+
+        /**
+         * Runs an update of a started database, which adds a portion of its
+         * entries, on the thread owning the database, and waits for it to
+         * finish.
+         */
+        void runUpdate(Runnable update) throws Exception;
+    }
+
+
     /**
      * Worker method to perform the import from a database
      * 
@@ -85,9 +125,52 @@ public abstract class DBImporter extends DBImporterExporter {
      */
     public ArrayList<Object[]> performImport(Set<String> keySet, DBStrings dbs, List<String> listOfDBs)
             throws Exception {
-        ArrayList<Object[]> result = new ArrayList<Object[]>();
+        final ArrayList<Object[]> result = new ArrayList<Object[]>();
+        performImport(dbs, listOfDBs, new ImportListener() {
+
+            @Override
+            public void databaseStarted(BibtexDatabase database,
+                    MetaData metaData, String name) {
+                result.add(new Object[] {database, metaData, name});
+            }
+
+            @Override
+            public void runUpdate(Runnable update) {
+                update.run();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Worker method to perform the import from a database, passing the imported
+     * databases to the given listener while they are read. The entries are
+     * streamed from the DBMS through a cursor and added to their database in
+     * portions of CHUNK_SIZE entries.
+     * 
+     * @param dbs
+     *            The necessary database connection information
+     * @param listOfDBs
+     *            The names of the databases to import
+     * @param listener
+     *            The listener receiving the databases
+     * @throws Exception
+     */
+    public void performImport(DBStrings dbs, List<String> listOfDBs,
+            ImportListener listener) throws Exception {
         Connection conn = this.connectToDB(dbs);
+        try {
+            // cursors are only used outside of autocommit mode
+            conn.setAutoCommit(false);
+            importDatabases(conn, listOfDBs, listener);
+            conn.commit();
+        } finally {
+            conn.close();
+        }
+    }
 
+    private void importDatabases(Connection conn, List<String> listOfDBs,
+            ImportListener listener) throws Exception {
         Iterator<String> itLista = listOfDBs.iterator();
         String jabrefDBs = "(";
         while (itLista.hasNext())
@@ -96,40 +179,74 @@ public abstract class DBImporter extends DBImporterExporter {
         }
         jabrefDBs = jabrefDBs.substring(0, jabrefDBs.length() - 1) + ')';
 
+        LinkedHashMap<String, String> databaseNames = new LinkedHashMap<String, String>();
         ResultSet rsDatabase = SQLUtil.queryAllFromTable(conn,
                 "jabref_database WHERE database_name IN " + jabrefDBs);
         while (rsDatabase.next()) {
-            BibtexDatabase database = new BibtexDatabase();
-            // Find entry type IDs and their mappings to type names:
-            HashMap<String, BibtexEntryType> types = new HashMap<String, BibtexEntryType>();
-            ResultSet rsEntryType = SQLUtil.queryAllFromTable(conn,
-                    "entry_types");
-            while (rsEntryType.next()) {
-                types.put(rsEntryType.getString("entry_types_id"),
-                        BibtexEntryType.getType(rsEntryType.getString("label")));
-            }
-            rsEntryType.getStatement().close();
-
-            ResultSet rsColumns = this.readColumnNames(conn);
-            ArrayList<String> colNames = new ArrayList<String>();
-            while (rsColumns.next()) {
-                if (!columnsNotConsideredForEntries.contains(rsColumns
-                        .getString(1))) {
-                    colNames.add(rsColumns.getString(1));
-                }
+            databaseNames.put(rsDatabase.getString("database_id"),
+                    rsDatabase.getString("database_name"));
+        }
+        rsDatabase.getStatement().close();
+
+        // Find entry type IDs and their mappings to type names:
+        HashMap<String, BibtexEntryType> types = new HashMap<String, BibtexEntryType>();
+        ResultSet rsEntryType = SQLUtil.queryAllFromTable(conn,
+                "entry_types");
+        while (rsEntryType.next()) {
+            types.put(rsEntryType.getString("entry_types_id"),
+                    BibtexEntryType.getType(rsEntryType.getString("label")));
+        }
+        rsEntryType.getStatement().close();
+
+        ResultSet rsColumns = this.readColumnNames(conn);
+        ArrayList<String> colNames = new ArrayList<String>();
+        while (rsColumns.next()) {
+            if (!columnsNotConsideredForEntries.contains(rsColumns
+                    .getString(1))) {
+                colNames.add(rsColumns.getString(1));
             }
-            rsColumns.getStatement().close();
-            String database_id = rsDatabase.getString("database_id");
-            // Read the entries and create BibtexEntry instances:
-            HashMap<String, BibtexEntry> entries = new HashMap<String, BibtexEntry>();
-            ResultSet rsEntries = SQLUtil.queryAllFromTable(conn,
-                    "entries WHERE database_id= '" + database_id + "';");
+        }
+        rsColumns.getStatement().close();
+
+        for (Map.Entry<String, String> databaseName : databaseNames.entrySet()) {
+            String database_id = databaseName.getKey();
+            BibtexDatabase database = new BibtexDatabase();
+            importStrings(database, conn, database_id);
+
+            MetaData metaData = new MetaData();
+            metaData.initializeNewDatabase();
+            // Read the groups tree and the entries assigned to explicit groups:
+            HashMap<String, List<ExplicitGroup>> entryGroups = importGroupsTree(
+                    metaData, conn, database_id);
+
+            listener.databaseStarted(database, metaData, databaseName.getValue());
+            importEntries(database, entryGroups, types, colNames, conn,
+                    database_id, listener);
+        }
+    }
+
+    /**
+     * Reads the entries of a database through a cursor, and hands them to the
+     * listener in portions of CHUNK_SIZE entries, which are added to the
+     * database and to the explicit groups they are assigned to.
+     */
+    private void importEntries(BibtexDatabase database,
+            HashMap<String, List<ExplicitGroup>> entryGroups,
+            HashMap<String, BibtexEntryType> types, List<String> colNames,
+            Connection conn, String database_id, ImportListener listener)
+            throws Exception {
+        LinkedHashMap<BibtexEntry, List<ExplicitGroup>> chunk = new LinkedHashMap<BibtexEntry, List<ExplicitGroup>>();
+        ResultSet rsEntries = SQLUtil.queryWithCursor(conn,
+                "SELECT * FROM entries WHERE database_id= '" + database_id + "';",
+                DBImporter.FETCH_SIZE);
+        try {
             while (rsEntries.next()) {
-                String id = rsEntries.getString("entries_id");
                 BibtexEntry entry = new BibtexEntry(IdGenerator.next(),
                         types.get(rsEntries.getString("entry_types_id")));
-                entry.setField(BibtexFields.KEY_FIELD,
-                        rsEntries.getString("cite_key"));
+                String citeKey = rsEntries.getString("cite_key");
+                if (citeKey != null) {
+                    entry.setField(BibtexFields.KEY_FIELD, citeKey);
+                }
                 for (String col : colNames) {
                     String value = rsEntries.getString(col);
                     if (value != null) {
@@ -138,87 +255,94 @@ public abstract class DBImporter extends DBImporterExporter {
                         entry.setField(col, value);
                     }
                 }
-                entries.put(id, entry);
-                database.insertEntry(entry);
+                chunk.put(entry, entryGroups.get(rsEntries.getString("entries_id")));
+                if (chunk.size() >= DBImporter.CHUNK_SIZE) {
+                    DBImporter.addEntries(database, chunk, listener);
+                    chunk = new LinkedHashMap<BibtexEntry, List<ExplicitGroup>>();
+                }
             }
+        } finally {
             rsEntries.getStatement().close();
+        }
+        DBImporter.addEntries(database, chunk, listener);
+    }
 
-            // Import strings and preamble:
-            ResultSet rsStrings = SQLUtil.queryAllFromTable(conn,
-                    "strings WHERE database_id='" + database_id + '\'');
-            while (rsStrings.next()) {
-                String label = rsStrings.getString("label"), content = rsStrings
-                        .getString("content");
-                if (label.equals("@PREAMBLE")) {
-                    database.setPreamble(content);
-                } else {
-                    BibtexString string = new BibtexString(
-                            IdGenerator.next(), label, content);
-                    database.addString(string);
+    private static void addEntries(final BibtexDatabase database,
+            final Map<BibtexEntry, List<ExplicitGroup>> entries,
+            ImportListener listener) throws Exception {
+        if (entries.isEmpty()) {
+            return;
+        }
+        listener.runUpdate(new Runnable() {
+
+            @Override
+            public void run() {
+                for (Map.Entry<BibtexEntry, List<ExplicitGroup>> entry : entries.entrySet()) {
+                    database.insertEntry(entry.getKey());
+                    if (entry.getValue() != null) {
+                        for (ExplicitGroup group : entry.getValue()) {
+                            group.addEntry(entry.getKey());
+                        }
+                    }
                 }
             }
-            rsStrings.getStatement().close();
+        });
+    }
 
-            MetaData metaData = new MetaData();
-            metaData.initializeNewDatabase();
-            // Read the groups tree:
-            importGroupsTree(metaData, entries, conn, database_id);
-            result.add(new Object[] {database, metaData,
-                    rsDatabase.getString("database_name")});
+    private void importStrings(BibtexDatabase database, Connection conn,
+            String database_id) throws SQLException {
+        // Import strings and preamble:
+        ResultSet rsStrings = SQLUtil.queryAllFromTable(conn,
+                "strings WHERE database_id='" + database_id + '\'');
+        while (rsStrings.next()) {
+            String label = rsStrings.getString("label"), content = rsStrings
+                    .getString("content");
+            if (label.equals("@PREAMBLE")) {
+                database.setPreamble(content);
+            } else {
+                BibtexString string = new BibtexString(
+                        IdGenerator.next(), label, content);
+                database.addString(string);
+            }
         }
-        return result;
+        rsStrings.getStatement().close();
     }
 
     /**
-     * Look up the group type name from the type ID in the database.
+     * Reads the groups tree of a database, joined with the group types, and the
+     * assignments of entries to its explicit groups.
      * 
-     * @param groupId
-     *            The database's groups id
-     * @param conn
-     *            The database connection
-     * 
-     * @return The name (JabRef type id) of the group type.
-     * @throws SQLException
+     * @return The explicit groups of each entry, by entries_id.
      */
-    private String findGroupTypeName(String groupId, Connection conn)
+    private HashMap<String, List<ExplicitGroup>> importGroupsTree(
+            MetaData metaData, Connection conn, String database_id)
             throws SQLException {
-        return SQLUtil.processQueryWithSingleResult(conn,
-                "SELECT label FROM group_types WHERE group_types_id='"
-                        + groupId + "';");
-    }
-
-    private void importGroupsTree(MetaData metaData,
-                                  HashMap<String, BibtexEntry> entries, Connection conn,
-                                  String database_id) throws SQLException {
         HashMap<String, GroupTreeNode> groups = new HashMap<String, GroupTreeNode>();
         LinkedHashMap<GroupTreeNode, String> parentIds = new LinkedHashMap<GroupTreeNode, String>();
         GroupTreeNode rootNode = new GroupTreeNode(new AllEntriesGroup());
 
-        ResultSet rsGroups = SQLUtil.queryAllFromTable(conn,
-                "groups WHERE database_id='" + database_id
-                        + "' ORDER BY groups_id");
+        ResultSet rsGroups = SQLUtil.queryWithCursor(conn,
+                "SELECT groups.*, group_types.label AS type_label FROM groups "
+                        + "LEFT JOIN group_types ON groups.group_types_id = group_types.group_types_id "
+                        + "WHERE groups.database_id='" + database_id
+                        + "' ORDER BY groups.groups_id;", DBImporter.FETCH_SIZE);
         while (rsGroups.next()) {
             AbstractGroup group = null;
-            String typeId = findGroupTypeName(
-                    rsGroups.getString("group_types_id"), conn);
-            if (typeId.equals(AllEntriesGroup.ID)) {
+            String typeId = rsGroups.getString("type_label");
+            if (AllEntriesGroup.ID.equals(typeId)) {
                 // register the id of the root node:
                 groups.put(rsGroups.getString("groups_id"), rootNode);
-            } else if (typeId.equals(ExplicitGroup.ID)) {
+            } else if (ExplicitGroup.ID.equals(typeId)) {
                 group = new ExplicitGroup(rsGroups.getString("label"),
                         GroupHierarchyType.getByNumber(rsGroups.getInt("hierarchical_context")));
-            } else if (typeId.equals(KeywordGroup.ID)) {
-                System.out.println("Keyw: "
-                        + rsGroups.getBoolean("case_sensitive"));
+            } else if (KeywordGroup.ID.equals(typeId)) {
                 group = new KeywordGroup(rsGroups.getString("label"),
                         StringUtil.unquote(rsGroups.getString("search_field"), '\\'),
                         StringUtil.unquote(rsGroups.getString("search_expression"),
                                 '\\'), rsGroups.getBoolean("case_sensitive"),
                         rsGroups.getBoolean("reg_exp"),
                         GroupHierarchyType.getByNumber(rsGroups.getInt("hierarchical_context")));
-            } else if (typeId.equals(SearchGroup.ID)) {
-                System.out.println("Search: "
-                        + rsGroups.getBoolean("case_sensitive"));
+            } else if (SearchGroup.ID.equals(typeId)) {
                 group = new SearchGroup(rsGroups.getString("label"),
                         StringUtil.unquote(rsGroups.getString("search_expression"),
                                 '\\'), rsGroups.getBoolean("case_sensitive"),
@@ -231,35 +355,45 @@ public abstract class DBImporter extends DBImporterExporter {
                 parentIds.put(node, rsGroups.getString("parent_id"));
                 groups.put(rsGroups.getString("groups_id"), node);
             }
+        }
+        rsGroups.getStatement().close();
 
-            // Ok, we have collected a map of all groups and their parent IDs,
-            // and another map of all group IDs and their group nodes.
-            // Now we need to build the groups tree:
-            for (Map.Entry<GroupTreeNode, String> groupTreeNodeStringEntry : parentIds.entrySet()) {
-                String parentId = groupTreeNodeStringEntry.getValue();
-                GroupTreeNode parent = groups.get(parentId);
-                if (parent == null) {
-                    // TODO: missing parent
-                } else {
-                    parent.add(groupTreeNodeStringEntry.getKey());
-                }
+        // Ok, we have collected a map of all groups and their parent IDs,
+        // and another map of all group IDs and their group nodes.
+        // Now we need to build the groups tree:
+        for (Map.Entry<GroupTreeNode, String> groupTreeNodeStringEntry : parentIds.entrySet()) {
+            String parentId = groupTreeNodeStringEntry.getValue();
+            GroupTreeNode parent = groups.get(parentId);
+            if (parent == null) {
+                // TODO: missing parent
+            } else {
+                parent.add(groupTreeNodeStringEntry.getKey());
             }
-            ResultSet rsEntryGroup = SQLUtil.queryAllFromTable(conn,
-                    "entry_group");
-            while (rsEntryGroup.next()) {
-                String entryId = rsEntryGroup.getString("entries_id"), groupId = rsEntryGroup
-                        .getString("groups_id");
-                GroupTreeNode node = groups.get(groupId);
-                if ((node != null)
-                        && (node.getGroup() instanceof ExplicitGroup)) {
-                    ExplicitGroup expGroup = (ExplicitGroup) node.getGroup();
-                    expGroup.addEntry(entries.get(entryId));
+        }
+        if (!groups.isEmpty()) {
+            metaData.setGroups(rootNode);
+        }
+
+        HashMap<String, List<ExplicitGroup>> entryGroups = new HashMap<String, List<ExplicitGroup>>();
+        ResultSet rsEntryGroup = SQLUtil.queryWithCursor(conn,
+                "SELECT entry_group.entries_id, entry_group.groups_id FROM entry_group "
+                        + "JOIN groups ON entry_group.groups_id = groups.groups_id "
+                        + "WHERE groups.database_id='" + database_id + "';",
+                DBImporter.FETCH_SIZE);
+        while (rsEntryGroup.next()) {
+            GroupTreeNode node = groups.get(rsEntryGroup.getString("groups_id"));
+            if ((node != null) && (node.getGroup() instanceof ExplicitGroup)) {
+                String entryId = rsEntryGroup.getString("entries_id");
+                List<ExplicitGroup> explicitGroups = entryGroups.get(entryId);
+                if (explicitGroups == null) {
+                    explicitGroups = new ArrayList<ExplicitGroup>(1);
+                    entryGroups.put(entryId, explicitGroups);
                 }
+                explicitGroups.add((ExplicitGroup) node.getGroup());
             }
-            rsEntryGroup.getStatement().close();
-            metaData.setGroups(rootNode);
         }
-        rsGroups.getStatement().close();
+        rsEntryGroup.getStatement().close();
+        return entryGroups;
     }
 
 }
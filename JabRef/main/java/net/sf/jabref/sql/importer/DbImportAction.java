@@ -19,11 +19,13 @@ import java.awt.event.ActionEvent;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import net.sf.jabref.AbstractWorker;
 import net.sf.jabref.BasePanel;
@@ -134,6 +136,7 @@ public class DbImportAction extends AbstractWorker {
 
     private void performImport() {
         if (connectToDB) {
+            TabOpener tabOpener = null;
             try {
                 frame.output(Globals.lang("Attempting SQL import..."));
                 DBExporterAndImporterFactory factory = new DBExporterAndImporterFactory();
@@ -161,16 +164,15 @@ public class DbImportAction extends AbstractWorker {
                         performImport();
                     } else {
                         if (dialogo.moreThanOne) {
-                            databases = importer.performImport(null, dbs,
-                                    dialogo.listOfDBs);
-                            for (Object[] res : databases) {
-                                database = (BibtexDatabase) res[0];
-                                metaData = (MetaData) res[1];
-                                dbs.isConfigValid(true);
-                            }
                             frame.output(Globals.lang(
                                     "%0 databases will be imported",
-                                    Integer.toString(databases.size())));
+                                    Integer.toString(dialogo.listOfDBs.size())));
+                            databases = new ArrayList<Object[]>();
+                            tabOpener = new TabOpener();
+                            importer.performImport(dbs, dialogo.listOfDBs, tabOpener);
+                            if (!databases.isEmpty()) {
+                                dbs.isConfigValid(true);
+                            }
                         } else {
                             frame.output(Globals.lang("Importing cancelled"));
                         }
@@ -182,6 +184,10 @@ public class DbImportAction extends AbstractWorker {
                 }
 
             } catch (Exception ex) {
+                databases = null;
+                if (tabOpener != null) {
+                    tabOpener.closeTabs();
+                }
                 String preamble = "Could not import from SQL database for the following reason:";
                 String errorMessage = SQLUtil.getExceptionMessage(ex);
                 dbs.isConfigValid(false);
@@ -195,23 +201,66 @@ public class DbImportAction extends AbstractWorker {
         }
     }
 
+    /**
+     * Opens a tab for each imported database as soon as the reading of its
+     * entries starts, and adds the entries on the EDT, so that they are shown
+     * while the import is still running. If the import fails, the tabs are
+     * closed again, as their databases are incomplete.
+     */
+    private class TabOpener implements DBImporter.ImportListener {
+
+        // only used on the EDT:
+        private final List<BasePanel> panels = new ArrayList<BasePanel>();
+
+        @Override
+        public void databaseStarted(final BibtexDatabase db,
+                final MetaData md, final String name) throws Exception {
+            databases.add(new Object[] {db, md, name});
+            database = db;
+            metaData = md;
+            SwingUtilities.invokeAndWait(new Runnable() {
+
+                @Override
+                public void run() {
+                    BasePanel pan = frame.addTab(db, null, md,
+                            Globals.prefs.getDefaultEncoding(), true);
+                    pan.metaData().setDBStrings(dbs);
+                    frame.setTabTitle(pan, name + "(Imported)", "Imported DB");
+                    pan.markBaseChanged();
+                    panels.add(pan);
+                }
+            });
+        }
+
+        /**
+         * Closes the tabs opened so far, without asking to save them.
+         */
+        void closeTabs() {
+            SwingUtilities.invokeLater(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (BasePanel pan : panels) {
+                        frame.showBasePanel(pan);
+                        frame.closeCurrentTabNoWarning();
+                    }
+                    panels.clear();
+                }
+            });
+        }
+
+        @Override
+        public void runUpdate(Runnable update) throws Exception {
+            SwingUtilities.invokeAndWait(update);
+        }
+    }
+
     // run third, on EDT:
     @Override
     public void update() {
         if (databases == null) {
             return;
         }
-        for (Object[] res : databases) {
-            database = (BibtexDatabase) res[0];
-            metaData = (MetaData) res[1];
-            if (database != null) {
-                BasePanel pan = frame.addTab(database, null, metaData,
-                        Globals.prefs.getDefaultEncoding(), true);
-                pan.metaData().setDBStrings(dbs);
-                frame.setTabTitle(pan, res[2] + "(Imported)", "Imported DB");
-                pan.markBaseChanged();
-            }
-        }
         frame.output(Globals.lang("Imported %0 databases successfully",
                 Integer.toString(databases.size())));
     }
@@ -61,7 +61,9 @@ public class MySQLImporter extends DBImporter {
 
     @Override
     protected Connection connectToDB(DBStrings dbstrings) throws Exception {
-        String url = SQLUtil.createJDBCurl(dbstrings, true);
+        // without server side cursors the driver reads whole results at once
+        String url = SQLUtil.createJDBCurl(dbstrings, true)
+                + "?useCursorFetch=true";
         String drv = "com.mysql.jdbc.Driver";
 
         Class.forName(drv).newInstance();
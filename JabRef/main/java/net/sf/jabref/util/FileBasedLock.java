@@ -1,24 +1,51 @@
 package net.sf.jabref.util;
 
+import net.sf.jabref.export.SaveException;
 import net.sf.jabref.export.SaveSession;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 
+/**
+ * Locking of files against concurrent saves by other JabRef instances.
+ *
+ * A file is locked by creating a lock file next to it and holding an exclusive
+ * FileChannel lock on the lock file. The operating system releases that lock when
+ * the holding process ends, so a lock file left behind by a crashed instance does
+ * not lock the file. Lock files without a held lock, as written by older versions,
+ * are thus only waited for while they exist.
+ *
+ * The lock file is deleted on unlock, as older versions take any lock file for a
+ * held lock. Where open files can be deleted, another instance may be waiting for
+ * the lock on the deleted file meanwhile, while a third one creates and locks a new
+ * lock file. The lock file is therefore marked as deleted before it is released,
+ * and a marked lock file is not taken but opened again.
+ */
 public class FileBasedLock {
 
+    private static final byte HELD = 0;
+
+    private static final byte DELETED = 1;
+
     /**
-     * This method checks whether there is a lock file for the given file. If
-     * there is, it waits for 500 ms. This is repeated until the lock is gone
-     * or we have waited the maximum number of times.
+     * This method checks whether the given file is locked. If it is, it waits for
+     * 500 ms. This is repeated until the lock is gone or we have waited the
+     * maximum number of times.
      *
      * @param file The file to check the lock for.
      * @param maxWaitCount The maximum number of times to wait.
-     * @return true if the lock file is gone, false if it is still there.
+     * @return true if the lock is gone, false if it is still there.
      */
     public static boolean waitForFileLock(File file, int maxWaitCount) {
         // Check if the file is locked by another JabRef user:
         int lockCheckCount = 0;
-        while (hasLockFile(file)) {
+        while (isLocked(file)) {
 
             if (lockCheckCount++ == maxWaitCount) {
                 return false;
@@ -31,6 +58,134 @@ public class FileBasedLock {
         return true;
     }
 
+    /**
+     * Checks whether the given file is locked: its lock file exists and a lock
+     * is held on it, or the held lock cannot be checked.
+     */
+    private static boolean isLocked(File file) {
+        File lock = new File(file.getPath() + SaveSession.LOCKFILE_SUFFIX);
+        if (!lock.exists()) {
+            return false;
+        }
+        RandomAccessFile access = null;
+        try {
+            access = new RandomAccessFile(lock, "r");
+            FileLock held = access.getChannel().tryLock(0, Long.MAX_VALUE, true);
+            if (held == null) {
+                return true;
+            }
+            held.release();
+            return false;
+        } catch (FileNotFoundException ex) {
+            // the lock file is gone already
+            return lock.exists();
+        } catch (OverlappingFileLockException ex) {
+            // locked by this JabRef instance
+            return true;
+        } catch (IOException ex) {
+            return true;
+        } finally {
+            if (access != null) {
+                try {
+                    access.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Locks the given file. If other JabRef instances hold the lock, waits for
+     * 500 ms, up to the given number of times. The lock must be released with
+     * unlock().
+     *
+     * @param file The file to lock.
+     * @param maxWaitCount The maximum number of times to wait.
+     * @return The held lock.
+     * @throws SaveException FILE_LOCKED if the lock is still held after waiting.
+     */
+    public static FileLock lock(File file, int maxWaitCount) throws IOException, SaveException {
+        File lock = new File(file.getPath() + SaveSession.LOCKFILE_SUFFIX);
+        int lockCheckCount = 0;
+        FileLock held = FileBasedLock.tryLock(lock);
+        while (held == null) {
+            if (lockCheckCount++ == maxWaitCount) {
+                throw SaveException.FILE_LOCKED;
+            }
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException ignored) {
+            }
+            held = FileBasedLock.tryLock(lock);
+        }
+        lock.deleteOnExit();
+        return held;
+    }
+
+    /**
+     * Locks the given lock file if nobody holds it.
+     *
+     * @return The held lock, or null if the lock is held already, by another
+     *         JabRef instance or this one.
+     */
+    private static FileLock tryLock(File lock) throws IOException {
+        while (true) {
+            RandomAccessFile access = new RandomAccessFile(lock, "rw");
+            try {
+                FileChannel channel = access.getChannel();
+                FileLock held;
+                try {
+                    held = channel.tryLock();
+                } catch (OverlappingFileLockException ex) {
+                    held = null;
+                }
+                if (held == null) {
+                    access.close();
+                    return null;
+                }
+
+                ByteBuffer mark = ByteBuffer.allocate(1);
+                if ((channel.read(mark, 0) < 1) || (mark.get(0) != FileBasedLock.DELETED)) {
+                    channel.write(ByteBuffer.wrap(new byte[] {FileBasedLock.HELD}), 0);
+                    return held;
+                }
+                // Deleted by the previous holder after we opened it. Lock the file
+                // the path leads to now instead:
+                access.close();
+            } catch (IOException ex) {
+                access.close();
+                throw ex;
+            } catch (RuntimeException ex) {
+                access.close();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Releases a lock obtained from lock() and removes the lock file.
+     */
+    public static void unlock(File file, FileLock held) {
+        File lock = new File(file.getPath() + SaveSession.LOCKFILE_SUFFIX);
+        // Fails where open files cannot be deleted. There, nobody can open the
+        // lock file anew once we have deleted it after releasing it.
+        boolean deleted = lock.delete();
+        try {
+            if (deleted) {
+                held.channel().write(ByteBuffer.wrap(new byte[] {FileBasedLock.DELETED}), 0);
+            }
+            held.release();
+            held.channel().close();
+        } catch (IOException ex) {
+            System.err.println("Error when releasing lock file");
+            ex.printStackTrace();
+        }
+        if (!deleted) {
+            // fails as well if another instance has opened it meanwhile, to wait for it
+            lock.delete();
+        }
+    }
+
     /**
      * Check whether a lock file exists for this file.
      * @param file The file to check.
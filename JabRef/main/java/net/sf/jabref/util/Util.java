@@ -1820,7 +1820,8 @@ public class Util {
 				Map<BibtexEntry, java.util.List<File>> result;
 				if (Globals.prefs.isUseRegExpSearch()) {
 					String regExp = Globals.prefs.get(JabRefPreferences.REG_EXP_SEARCH_EXPRESSION_KEY);
-					result = RegExpFileSearch.findFilesForSet(entries, extensions, dirs, regExp);
+					// The entries need not belong to a database, so string references stay unresolved:
+					result = RegExpFileSearch.findFilesForSet(entries, null, extensions, dirs, regExp);
 				} else {
 					result = Util.findAssociatedFiles(entries, extensions, dirs);
 				}
@@ -2015,48 +2016,58 @@ public class Util {
 		return res;
 	}
 
+	/**
+	 * Finds the files named after the keys of the given entries. A file belongs to
+	 * the first entry whose key equals its name without extension or, if non-exact
+	 * matches are allowed, to the first entry whose key its name starts with.
+	 *
+	 * The keys are indexed once, so that each file is matched by looking up its
+	 * name and the prefixes of its name having the length of some key.
+	 */
 	public static Map<BibtexEntry, List<File>> findAssociatedFiles(Collection<BibtexEntry> entries, Collection<String> extensions, Collection<File> directories) {
 		HashMap<BibtexEntry, List<File>> result = new HashMap<BibtexEntry, List<File>>();
 
 		// First scan directories
 		Set<File> filesWithExtension = UtilFindFiles.findFiles(extensions, directories);
 
-		// Initialize Result-Set
-		for (BibtexEntry entry : entries) {
+		// Initialize Result-Set and index the keys, keeping the first entry of each key
+		List<BibtexEntry> entryList = new ArrayList<BibtexEntry>(entries);
+		Map<String, Integer> keyIndex = new HashMap<String, Integer>();
+		TreeSet<Integer> keyLengths = new TreeSet<Integer>();
+		for (int i = 0; i < entryList.size(); i++) {
+			BibtexEntry entry = entryList.get(i);
 			result.put(entry, new ArrayList<File>());
+			String citeKey = entry.getCiteKey();
+			if ((citeKey != null) && (citeKey.length() > 0) && !keyIndex.containsKey(citeKey)) {
+				keyIndex.put(citeKey, i);
+				keyLengths.add(citeKey.length());
+			}
 		}
 
 		boolean exactOnly = JabRefPreferences.getInstance().isAutolinkExactKeyOnly();
 		// Now look for keys
-		nextFile: for (File file : filesWithExtension) {
+		for (File file : filesWithExtension) {
 
 			String name = file.getName();
 			int dot = name.lastIndexOf('.');
 			// First, look for exact matches:
-			for (BibtexEntry entry : entries) {
-				String citeKey = entry.getCiteKey();
-				if ((citeKey != null) && (citeKey.length() > 0)) {
-					if (dot > 0) {
-						if (name.substring(0, dot).equals(citeKey)) {
-							result.get(entry).add(file);
-							continue nextFile;
-						}
-					}
-				}
+			Integer match = null;
+			if (dot > 0) {
+				match = keyIndex.get(name.substring(0, dot));
 			}
 			// If we get here, we didn't find any exact matches. If non-exact
 			// matches are allowed, try to find one:
-			if (!exactOnly) {
-				for (BibtexEntry entry : entries) {
-					String citeKey = entry.getCiteKey();
-					if ((citeKey != null) && (citeKey.length() > 0)) {
-						if (name.startsWith(citeKey)) {
-							result.get(entry).add(file);
-							continue nextFile;
-						}
+			if ((match == null) && !exactOnly) {
+				for (Integer length : keyLengths.headSet(name.length(), true)) {
+					Integer candidate = keyIndex.get(name.substring(0, length));
+					if ((candidate != null) && ((match == null) || (candidate < match))) {
+						match = candidate;
 					}
 				}
 			}
+			if (match != null) {
+				result.get(entryList.get(match)).add(file);
+			}
 		}
 
 		return result;
@@ -2097,7 +2108,7 @@ public class Util {
 
 		// If no field value was found, try to interpret it as a key generator field marker:
 		if (fieldValue == null) {
-			fieldValue = LabelPatternUtil.makeLabel(entry, beforeColon);
+			fieldValue = LabelPatternUtil.makeLabel(entry, beforeColon, database);
 		}
 
 		if (fieldValue == null) {
@@ -6,6 +6,7 @@ import net.sf.jabref.Globals;
 import net.sf.jabref.JabRefPreferences;
 import net.sf.jabref.OpenFileFilter;
 import net.sf.jabref.external.ExternalFileType;
+import net.sf.jabref.external.FileCatalog;
 
 import java.io.File;
 import java.io.FilenameFilter;
@@ -43,37 +44,17 @@ public class UtilFindFiles {
         }
     }
 
+    /**
+     * Returns all files with one of the given extensions in the given directories
+     * and their subdirectories. The directory trees are looked up in their
+     * FileCatalog, so repeated searches only list the directories modified since.
+     */
     public static Set<File> findFiles(Collection<String> extensions, Collection<File> directories) {
         Set<File> result = new HashSet<File>();
 
-        for (File directory : directories) {
-            result.addAll(UtilFindFiles.findFiles(extensions, directory));
-        }
-
-        return result;
-    }
-
-    private static Collection<? extends File> findFiles(Collection<String> extensions, File directory) {
-        Set<File> result = new HashSet<File>();
-
-        File[] children = directory.listFiles();
-        if (children == null)
-         {
-            return result; // No permission?
-        }
-
-        for (File child : children) {
-            if (child.isDirectory()) {
-                result.addAll(UtilFindFiles.findFiles(extensions, child));
-            } else {
-
-                String extension = FileUtil.getFileExtension(child);
-
-                if (extension != null) {
-                    if (extensions.contains(extension)) {
-                        result.add(child);
-                    }
-                }
+        for (FileCatalog catalog : FileCatalog.getCatalogs(directories)) {
+            for (String extension : extensions) {
+                result.addAll(catalog.getFiles(extension));
             }
         }
 
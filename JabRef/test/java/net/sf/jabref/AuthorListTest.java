@@ -35,6 +35,16 @@ public class AuthorListTest {
         Assert.assertFalse(al == AuthorList.getAuthorList("Smith"));
     }
 
+    @Test
+    public void testCacheStats() {
+        long hits = AuthorList.getCacheStats().hitCount();
+        long misses = AuthorList.getCacheStats().missCount();
+        AuthorList.getAuthorList("Kurt von Minich and Jane Doe");
+        AuthorList.getAuthorList("Kurt von Minich and Jane Doe");
+        Assert.assertEquals(misses + 1, AuthorList.getCacheStats().missCount());
+        Assert.assertEquals(hits + 1, AuthorList.getCacheStats().hitCount());
+    }
+
     @SuppressWarnings("unused")
 	@Test
     public void testFixAuthor_firstNameFirstCommas() {
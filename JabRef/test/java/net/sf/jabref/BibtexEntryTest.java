@@ -0,0 +1,48 @@
+package net.sf.jabref;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BibtexEntryTest {
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @Test
+    public void testNormalizedFields() {
+        BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        entry.setField("title", "The \\emph{Marine} Larviculture");
+
+        Assert.assertEquals("the \\emph{marine} larviculture", entry.getLowerCaseField("title"));
+        Assert.assertEquals("The Marine Larviculture", entry.getLatexFreeField("title", false));
+        Assert.assertEquals("the marine larviculture", entry.getLatexFreeField("title", true));
+        Assert.assertNull(entry.getLowerCaseField("author"));
+        Assert.assertNull(entry.getLatexFreeField("author", true));
+    }
+
+    @Test
+    public void testNormalizedFieldsFollowChanges() {
+        BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        entry.setField("title", "Marine");
+        Assert.assertEquals("marine", entry.getLatexFreeField("title", true));
+
+        entry.setField("title", "Finfish");
+        Assert.assertEquals("finfish", entry.getLatexFreeField("title", true));
+        Assert.assertEquals("finfish", entry.getLowerCaseField("title"));
+
+        entry.clearField("title");
+        Assert.assertNull(entry.getLatexFreeField("title", true));
+        Assert.assertNull(entry.getLowerCaseField("title"));
+
+        Map<String, String> fields = new HashMap<String, String>();
+        fields.put("title", "Europe");
+        entry.setField(fields);
+        Assert.assertEquals("europe", entry.getLowerCaseField("title"));
+    }
+}
@@ -0,0 +1,82 @@
+package net.sf.jabref;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import net.sf.jabref.export.FieldFormatter;
+import net.sf.jabref.export.LatexFieldFormatter;
+import net.sf.jabref.imports.BibtexParser;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BibtexEntryWriterTest {
+
+    private BibtexEntry entry;
+
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+
+        entry = BibtexParser.singleFromString("@article{Dijkstra1968, author = {Edsger W. Dijkstra},"
+                + " title = {Go To Statement Considered Harmful}, journal = cacm, year = {1968}}");
+    }
+
+    @Test
+    public void testKeptTextIsReused() throws IOException {
+        BibtexEntryWriter writer = new BibtexEntryWriter(new LatexFieldFormatter(), true);
+        Assert.assertTrue(writer.needsFormatting(entry));
+        String text = writer.serialize(entry);
+        Assert.assertTrue(text.contains("Go To Statement Considered Harmful"));
+        Assert.assertFalse(writer.needsFormatting(entry));
+
+        // another writer with the same settings writes the kept text
+        StringWriter out = new StringWriter();
+        new BibtexEntryWriter(new LatexFieldFormatter(), true).write(entry, out);
+        Assert.assertEquals(text, out.toString());
+
+        // display texts are kept apart from texts written to files
+        Assert.assertTrue(new BibtexEntryWriter(new LatexFieldFormatter(), false).needsFormatting(entry));
+    }
+
+    @Test
+    public void testChangesDropKeptText() throws IOException {
+        BibtexEntryWriter writer = new BibtexEntryWriter(new LatexFieldFormatter(), true);
+        writer.serialize(entry);
+
+        entry.clearField("journal");
+        Assert.assertTrue(writer.needsFormatting(entry));
+        Assert.assertFalse(writer.serialize(entry).contains("cacm"));
+
+        entry.setType(BibtexEntryTypes.MISC);
+        Assert.assertTrue(writer.needsFormatting(entry));
+        Assert.assertTrue(writer.serialize(entry).toLowerCase().startsWith("@misc{"));
+    }
+
+    @Test
+    public void testTextOfChangedEntryIsNotKept() {
+        // a writer starts formatting, and the entry is edited before it is done
+        int changeCount = entry.getChangeCount();
+        entry.setField("pages", "147--148");
+        entry.setSerializedText("settings", "@article{Dijkstra1968,}", changeCount);
+        Assert.assertNull(entry.getSerializedText("settings"));
+
+        entry.setSerializedText("settings", "@article{Dijkstra1968,}", entry.getChangeCount());
+        Assert.assertEquals("@article{Dijkstra1968,}", entry.getSerializedText("settings"));
+    }
+
+    @Test
+    public void testOtherFormattersAreNotCached() throws IOException {
+        BibtexEntryWriter writer = new BibtexEntryWriter(new FieldFormatter() {
+
+            @Override
+            public String format(String s, String fieldName) {
+                return '{' + s.toUpperCase() + '}';
+            }
+        }, true);
+        Assert.assertTrue(writer.serialize(entry).contains("GO TO STATEMENT"));
+        Assert.assertTrue(writer.needsFormatting(entry));
+    }
+}
@@ -1,5 +1,13 @@
 package net.sf.jabref;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -59,4 +67,151 @@ public class DuplicateCheckTest {
         Assert.assertFalse(DuplicateCheck.isDuplicate(one, two));
     }
 
+    @Test
+    public void testBlockedSearchFindsBruteForceDuplicates() throws InterruptedException {
+        final BibtexEntry[] entries = makeEntriesWithDuplicates(new Random(42));
+
+        Set<String> bruteForce = new HashSet<String>();
+        for (int i = 0; i < (entries.length - 1); i++) {
+            for (int j = i + 1; j < entries.length; j++) {
+                if (DuplicateCheck.isDuplicate(entries[i], entries[j])) {
+                    bruteForce.add(entries[i].getId() + ':' + entries[j].getId());
+                }
+            }
+        }
+
+        final Set<String> blocked = Collections.synchronizedSet(new HashSet<String>());
+        DuplicateCheck.findDuplicates(entries, new DuplicateCheck.DuplicateHandler() {
+
+            @Override
+            public void duplicateFound(BibtexEntry one, BibtexEntry two) {
+                Assert.assertTrue(blocked.add(one.getId() + ':' + two.getId()));
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+
+        Assert.assertTrue(bruteForce.size() > 100);
+        Assert.assertTrue(bruteForce.containsAll(blocked));
+        // Blocking may miss a few pairs, but hardly any:
+        Assert.assertTrue("recall " + blocked.size() + '/' + bruteForce.size(),
+                blocked.size() >= (0.95 * bruteForce.size()));
+    }
+
+    @Test
+    public void testBlockingKeys() {
+        BibtexEntry one = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        one.setField("title", "Marine finfish larviculture in Europe");
+        BibtexEntry two = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        two.setField("title", "Marine {F}infish Larviculture in Europe");
+        Assert.assertEquals(DuplicateCheck.getBlockingKeys(one), DuplicateCheck.getBlockingKeys(two));
+
+        two.setType(BibtexEntryTypes.BOOK);
+        Set<String> common = new HashSet<String>(DuplicateCheck.getBlockingKeys(one));
+        common.retainAll(DuplicateCheck.getBlockingKeys(two));
+        Assert.assertTrue(common.isEmpty());
+
+        one.setField("doi", "http://dx.doi.org/10.1000/182");
+        BibtexEntry three = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        three.setField("doi", "10.1000/182");
+        Assert.assertTrue(DuplicateCheck.getBlockingKeys(one).containsAll(DuplicateCheck.getBlockingKeys(three)));
+    }
+
+    @Test
+    public void testLikelyDuplicateFollowsDatabaseChanges() throws InterruptedException {
+        BibtexDatabase database = new BibtexDatabase();
+        BibtexEntry[] entries = makeEntriesWithDuplicates(new Random(7));
+        // Keep the first entry of each pair in the database, and check the rest against it:
+        List<BibtexEntry> toCheck = new ArrayList<BibtexEntry>();
+        for (BibtexEntry entry : entries) {
+            if (DuplicateCheck.containsLikelyDuplicate(database, entry) == null) {
+                database.insertEntry(entry);
+            } else {
+                toCheck.add(entry);
+                // the exact check finds every duplicate the index finds
+                Assert.assertNotNull(DuplicateCheck.containsDuplicate(database, entry));
+            }
+        }
+        Assert.assertFalse(toCheck.isEmpty());
+
+        Map<BibtexEntry, BibtexEntry> duplicates = DuplicateCheck.containsDuplicates(database, toCheck);
+        Assert.assertEquals(toCheck.size(), duplicates.size());
+        for (BibtexEntry entry : toCheck) {
+            Assert.assertTrue(DuplicateCheck.isDuplicate(entry, duplicates.get(entry)));
+        }
+
+        BibtexEntry entry = toCheck.get(0);
+        BibtexEntry duplicate = duplicates.get(entry);
+        database.removeEntry(duplicate.getId());
+        Assert.assertNull(DuplicateCheck.containsLikelyDuplicate(database, entry));
+
+        database.insertEntry(duplicate);
+        Assert.assertSame(duplicate, DuplicateCheck.containsLikelyDuplicate(database, entry));
+
+        // fields outside of the blocking keys do not move the entry in the index
+        duplicate.setField("note", "Reprinted");
+        Assert.assertSame(duplicate, DuplicateCheck.containsLikelyDuplicate(database, entry));
+
+        duplicate.setType(BibtexEntryTypes.BOOK);
+        Assert.assertNull(DuplicateCheck.containsLikelyDuplicate(database, entry));
+        Assert.assertNull(DuplicateCheck.containsDuplicate(database, entry));
+    }
+
+    /**
+     * Creates articles of which about a third have a slightly modified copy.
+     */
+    private static BibtexEntry[] makeEntriesWithDuplicates(Random random) {
+        List<BibtexEntry> entries = new ArrayList<BibtexEntry>();
+        for (int i = 0; i < 600; i++) {
+            BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+            entry.setField("author", randomWord(random) + ", " + randomWord(random) + " and "
+                    + randomWord(random) + ", " + randomWord(random));
+            StringBuilder title = new StringBuilder();
+            for (int j = 4 + random.nextInt(8); j > 0; j--) {
+                title.append(randomWord(random)).append(' ');
+            }
+            entry.setField("title", title.toString().trim());
+            entry.setField("journal", randomWord(random) + ' ' + randomWord(random));
+            entry.setField("year", String.valueOf(1980 + random.nextInt(35)));
+            entry.setField("volume", String.valueOf(random.nextInt(50)));
+            entries.add(entry);
+
+            if (random.nextInt(3) == 0) {
+                BibtexEntry copy = (BibtexEntry) entry.clone();
+                copy.setId(IdGenerator.next());
+                switch (random.nextInt(4)) {
+                case 0:
+                    // Typo in the title:
+                    String t = copy.getField("title");
+                    int pos = random.nextInt(t.length());
+                    copy.setField("title", t.substring(0, pos) + 'x' + t.substring(pos + 1));
+                    break;
+                case 1:
+                    copy.setField("year", String.valueOf(Integer.parseInt(copy.getField("year")) + 1));
+                    break;
+                case 2:
+                    copy.setField("journal", copy.getField("journal").substring(0, 3) + '.');
+                    break;
+                default:
+                    copy.setField("volume", String.valueOf(random.nextInt(50)));
+                }
+                entries.add(copy);
+            }
+        }
+        return entries.toArray(new BibtexEntry[entries.size()]);
+    }
+
+    private static String randomWord(Random random) {
+        // Few syllables, so that words and titles are alike to some degree:
+        String[] syllables = {"ma", "ri", "ne", "fin", "lar", "vi", "cul", "tu", "re", "eu", "ro", "pe"};
+        StringBuilder word = new StringBuilder();
+        for (int i = 2 + random.nextInt(3); i > 0; i--) {
+            word.append(syllables[random.nextInt(syllables.length)]);
+        }
+        return word.toString();
+    }
+
 }
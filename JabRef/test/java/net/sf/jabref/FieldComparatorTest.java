@@ -0,0 +1,66 @@
+package net.sf.jabref;
+
+import net.sf.jabref.imports.BibtexParser;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FieldComparatorTest {
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @Test
+    public void testNamesSortByLastName() {
+        FieldComparator comparator = new FieldComparator("author");
+        BibtexEntry knuth = BibtexParser.singleFromString("@book{a, author = {Donald E. Knuth}}");
+        BibtexEntry hoare = BibtexParser.singleFromString("@book{b, author = {Hoare, C. A. R.}}");
+        BibtexEntry vonNeumann = BibtexParser.singleFromString("@book{c, author = {John von Neumann}}");
+
+        Assert.assertTrue(comparator.compare(hoare, knuth) < 0);
+        Assert.assertTrue(comparator.compare(knuth, vonNeumann) < 0);
+        // ascending and descending comparators share the keys
+        Assert.assertTrue(new FieldComparator("author", true).compare(hoare, knuth) > 0);
+    }
+
+    @Test
+    public void testYearsAndMonthsCompareAsNumbers() {
+        FieldComparator years = new FieldComparator("year");
+        BibtexEntry twoDigits = BibtexParser.singleFromString("@misc{a, year = {98}, month = feb}");
+        BibtexEntry fourDigits = BibtexParser.singleFromString("@misc{b, year = {2001}, month = {December}}");
+        BibtexEntry inPress = BibtexParser.singleFromString("@misc{c, year = {in press}}");
+        BibtexEntry undated = BibtexParser.singleFromString("@misc{d, title = {Undated}}");
+
+        Assert.assertTrue(years.compare(twoDigits, fourDigits) < 0);
+        // unparseable values come after numbers, missing ones last
+        Assert.assertTrue(years.compare(fourDigits, inPress) < 0);
+        Assert.assertTrue(years.compare(inPress, undated) < 0);
+        Assert.assertEquals(0, years.compare(undated, BibtexParser.singleFromString("@misc{e, note = {none}}")));
+
+        // months sort the latest first
+        Assert.assertTrue(new FieldComparator("month").compare(twoDigits, fourDigits) > 0);
+    }
+
+    @Test
+    public void testSortKeysFollowChanges() {
+        FieldComparator comparator = new FieldComparator("title");
+        BibtexEntry algol = BibtexParser.singleFromString(
+                "@article{a, title = {Report on the Algorithmic Language {ALGOL} 60}}");
+        BibtexEntry lisp = BibtexParser.singleFromString(
+                "@article{b, title = {recursive functions of symbolic expressions}}");
+        // case does not matter
+        Assert.assertTrue(comparator.compare(lisp, algol) < 0);
+
+        lisp.setField("title", "Ä LISP primer");
+        Assert.assertTrue(comparator.compare(lisp, algol) < 0);
+        lisp.setField("title", "The LISP 1.5 Programmer's Manual");
+        Assert.assertTrue(comparator.compare(lisp, algol) > 0);
+
+        lisp.setType(BibtexEntryTypes.BOOK);
+        FieldComparator typeComparator = new FieldComparator(GUIGlobals.TYPE_HEADER);
+        Assert.assertTrue(typeComparator.compare(algol, lisp) < 0);
+    }
+}
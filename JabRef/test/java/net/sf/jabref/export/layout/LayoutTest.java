@@ -13,6 +13,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.Collection;
 
 public class LayoutTest {
@@ -90,6 +91,46 @@ public class LayoutTest {
         Assert.assertEquals("Joe Doe, Moon Jane", layoutText);
     }
 
+    @Test
+    public void testFieldBlockAlternatives() throws Exception {
+        Assert.assertEquals("2005", layout("\\begin{author&year}\\year\\end{author&year}",
+                "@article{bla, author={Doe}, year={2005}}"));
+        Assert.assertEquals("", layout("\\begin{author&year}\\year\\end{author&year}",
+                "@article{bla, year={2005}}"));
+        Assert.assertEquals("2005", layout("\\begin{author|year}\\year\\end{author|year}",
+                "@article{bla, year={2005}}"));
+        Assert.assertEquals("", layout("\\begin{author|title}\\year\\end{author|title}",
+                "@article{bla, year={2005}}"));
+    }
+
+    @Test
+    public void testGroupsAndNumbersFollowLayoutContext() throws Exception {
+        BibtexEntry entry = LayoutTest.bibtexString2BibtexEntry("@article{bla, year={2005}}");
+        StringReader sr = new StringReader("\\begingroup{year}\\year:\\endgroup{year}\\format[Number]{\\year}");
+        Layout layout = new LayoutHelper(sr).getLayoutFromText(Globals.FORMATTER_PACKAGE);
+        Assert.assertTrue(layout.usesGroups());
+
+        LayoutContext context = LayoutContext.reset();
+        Assert.assertEquals("2005:1", layout.doLayout(entry, null));
+        context.setEntryNumber(2);
+        Assert.assertEquals("2", layout.doLayout(entry, null));
+
+        LayoutContext.reset();
+        Assert.assertEquals("2005:1", layout.doLayout(entry, null));
+    }
+
+    @Test
+    public void testWriteMatchesDoLayout() throws Exception {
+        BibtexEntry entry = LayoutTest.bibtexString2BibtexEntry(t1BibtexString());
+        StringReader sr = new StringReader("\\begin{author}\\format[HTMLChars]{\\author}\\end{author}: "
+                + "\\begin{editor}\\editor\n\\end{editor}\\title (\\year)\n");
+        Layout layout = new LayoutHelper(sr).getLayoutFromText(Globals.FORMATTER_PACKAGE);
+
+        StringWriter writer = new StringWriter();
+        layout.write(writer, entry, null);
+        Assert.assertEquals(layout.doLayout(entry, null), writer.toString());
+    }
+
     /**
      * [ 1495181 ] Dotless i and tilde not handled in preview
      *
@@ -0,0 +1,41 @@
+package net.sf.jabref.external;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileCatalogTest {
+
+    @Test
+    public void testCatalogFollowsChanges() throws IOException {
+        File directory = File.createTempFile("jabref", "catalog");
+        directory.delete();
+        File subDirectory = new File(directory, "sub");
+        subDirectory.mkdirs();
+        File paper = new File(subDirectory, "Paper2001.pdf");
+        File notes = new File(directory, "notes.txt");
+        File other = new File(subDirectory, "Other2002.PDF");
+        try {
+            paper.createNewFile();
+            notes.createNewFile();
+
+            FileCatalog catalog = FileCatalog.getCatalog(directory);
+            Assert.assertEquals(Arrays.asList(paper), catalog.getFiles("pdf"));
+            Assert.assertEquals(Arrays.asList(notes), catalog.getFiles("txt"));
+            Assert.assertEquals(Arrays.asList(subDirectory), catalog.listDirectories(directory));
+            Assert.assertEquals(2, catalog.listFiles(directory).length);
+
+            other.createNewFile();
+            Assert.assertEquals(2, FileCatalog.getCatalog(directory).getFiles("pdf").size());
+        } finally {
+            paper.delete();
+            other.delete();
+            notes.delete();
+            subDirectory.delete();
+            directory.delete();
+        }
+    }
+}
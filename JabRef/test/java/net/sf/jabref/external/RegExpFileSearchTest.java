@@ -0,0 +1,61 @@
+package net.sf.jabref.external;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.imports.BibtexParser;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RegExpFileSearchTest {
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @Test
+    public void testAuthorMarkersAreExpanded() throws IOException {
+        File directory = File.createTempFile("jabref", "regexp");
+        directory.delete();
+        directory.mkdirs();
+        File knuth = new File(directory, "Knuth1984.pdf");
+        File lamport = new File(directory, "Lamport1994.pdf");
+        try {
+            knuth.createNewFile();
+            lamport.createNewFile();
+            List<File> directories = Collections.singletonList(directory);
+            List<String> extensions = Arrays.asList("pdf");
+            String regExp = "[auth][year]\\\\.[extension]";
+
+            // without a database
+            BibtexEntry texbook = BibtexParser.singleFromString("@book{a, author = {Donald E. Knuth}, year = {1984}}");
+            Map<BibtexEntry, List<File>> result = RegExpFileSearch.findFilesForSet(Collections.singletonList(texbook),
+                    null, extensions, directories, regExp);
+            Assert.assertEquals(Collections.singletonList(new File(knuth.getName())), result.get(texbook));
+
+            // with the author given by a string of the database
+            BibtexDatabase database = BibtexParser.parse(new StringReader("@string{lamport = {Leslie Lamport}}"
+                    + "@book{b, author = lamport, year = {1994}}")).getDatabase();
+            BibtexEntry latex = database.getEntryByKey("b");
+            result = RegExpFileSearch.findFilesForSet(Collections.singletonList(latex), database, extensions,
+                    directories, regExp);
+            Assert.assertEquals(Collections.singletonList(new File(lamport.getName())), result.get(latex));
+        } finally {
+            knuth.delete();
+            lamport.delete();
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package net.sf.jabref.groups;
+
+import java.util.BitSet;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.groups.structure.AllEntriesGroup;
+import net.sf.jabref.groups.structure.ExplicitGroup;
+import net.sf.jabref.groups.structure.GroupHierarchyType;
+import net.sf.jabref.groups.structure.KeywordGroup;
+import net.sf.jabref.imports.BibtexParser;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GroupMembershipIndexTest {
+
+    private BibtexDatabase database;
+
+    private BibtexEntry knuth;
+
+    private BibtexEntry lamport;
+
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+
+        database = new BibtexDatabase();
+        knuth = BibtexParser.singleFromString("@book{Knuth1984, author = {Donald E. Knuth},"
+                + " title = {The {\\TeX}book}, keywords = {typesetting, tex}}");
+        lamport = BibtexParser.singleFromString("@book{Lamport1994, author = {Leslie Lamport},"
+                + " title = {{\\LaTeX}: A Document Preparation System}, keywords = {typesetting}}");
+        database.insertEntry(knuth);
+        database.insertEntry(lamport);
+    }
+
+    @Test
+    public void testMembersFollowDatabaseChanges() {
+        GroupMembershipIndex index = database.getGroupMembershipIndex();
+        KeywordGroup tex = new KeywordGroup("tex", "keywords", "tex", false, false,
+                GroupHierarchyType.INDEPENDENT);
+
+        Assert.assertEquals(1, index.getMembers(tex).cardinality());
+        Assert.assertTrue(index.getEntries(index.getMembers(tex)).contains(knuth));
+
+        lamport.setField("keywords", "typesetting, tex");
+        Assert.assertEquals(2, index.getMembers(tex).cardinality());
+
+        BitSet knuthOrdinal = index.getOrdinals(new BibtexEntry[] {knuth});
+        database.removeEntry(knuth.getId());
+        Assert.assertEquals(1, index.getMembers(tex).cardinality());
+        Assert.assertEquals(1, index.getAllEntries().cardinality());
+
+        // the new entry takes over the ordinal of the removed one, without a stale membership
+        BibtexEntry mittelbach = BibtexParser.singleFromString("@book{Mittelbach2004,"
+                + " title = {The {\\LaTeX} Companion}, keywords = {typesetting}}");
+        database.insertEntry(mittelbach);
+        Assert.assertEquals(1, index.getMembers(tex).cardinality());
+        Assert.assertEquals(knuthOrdinal, index.getOrdinals(new BibtexEntry[] {mittelbach}));
+    }
+
+    @Test
+    public void testOrdinalsStayDenseInBulk() {
+        GroupMembershipIndex index = database.getGroupMembershipIndex();
+        for (int i = 0; i < 1000; i++) {
+            database.insertEntry(BibtexParser.singleFromString("@misc{bulk" + i + ", note = {" + i + "}}"));
+        }
+        database.removeEntry(lamport.getId());
+        database.removeEntry(knuth.getId());
+
+        // the freed ordinals are reused, the lower one first
+        BibtexEntry first = BibtexParser.singleFromString("@misc{first, note = {first}}");
+        BibtexEntry second = BibtexParser.singleFromString("@misc{second, note = {second}}");
+        BibtexEntry third = BibtexParser.singleFromString("@misc{third, note = {third}}");
+        database.insertEntry(first);
+        database.insertEntry(second);
+        database.insertEntry(third);
+        Assert.assertEquals(0, index.getOrdinals(new BibtexEntry[] {first}).nextSetBit(0));
+        Assert.assertEquals(1, index.getOrdinals(new BibtexEntry[] {second}).nextSetBit(0));
+        Assert.assertEquals(1002, index.getOrdinals(new BibtexEntry[] {third}).nextSetBit(0));
+        Assert.assertEquals(1003, index.getAllEntries().cardinality());
+    }
+
+    @Test
+    public void testHierarchicalContexts() {
+        GroupMembershipIndex index = database.getGroupMembershipIndex();
+        GroupTreeNode root = new GroupTreeNode(new AllEntriesGroup());
+        GroupTreeNode typesetting = new GroupTreeNode(new KeywordGroup("typesetting", "keywords", "typesetting",
+                false, false, GroupHierarchyType.INCLUDING));
+        ExplicitGroup explicit = new ExplicitGroup("explicit", GroupHierarchyType.INDEPENDENT);
+        GroupTreeNode explicitNode = new GroupTreeNode(explicit);
+        GroupTreeNode tex = new GroupTreeNode(new KeywordGroup("tex", "keywords", "tex", false, false,
+                GroupHierarchyType.REFINING));
+        root.add(typesetting);
+        root.add(explicitNode);
+        typesetting.add(tex);
+
+        Assert.assertEquals(2, index.getMembers(typesetting).cardinality());
+        Assert.assertEquals(1, index.getMembers(tex).cardinality());
+        Assert.assertTrue(index.getMembers(explicitNode).isEmpty());
+
+        // explicit assignments change without database events and are never cached
+        explicit.addEntry(lamport);
+        BitSet members = index.getMembers(explicitNode);
+        Assert.assertEquals(index.getOrdinals(new BibtexEntry[] {lamport}), members);
+    }
+}
@@ -7,8 +7,12 @@ import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
@@ -348,4 +352,45 @@ public class BibtexParserTest {
 
         Assert.assertEquals("Bemerkung:H:\\bla\\ups  sala.pdf:PDF", e.getField("file"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParseReaderAcrossBufferBoundaries() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("@article{key").append(i).append(",\n  author = {Ed von Test},\n  title = {Title ")
+                    .append(i).append("}\n}\n\n");
+        }
+
+        ParserResult fromReader = BibtexParser.parse(new StringReader(sb.toString()));
+        Collection<BibtexEntry> fromString = BibtexParser.fromString(sb.toString());
+
+        Assert.assertEquals(2000, fromReader.getDatabase().getEntryCount());
+        Assert.assertEquals(2000, fromString.size());
+        BibtexEntry e = fromReader.getDatabase().getEntryByKey("key1999");
+        Assert.assertEquals("Ed von Test", e.getField("author"));
+        Assert.assertEquals("Title 1999", e.getField("title"));
+    }
+
+    @Test
+    public void testParseFile() throws IOException {
+        File file = File.createTempFile("JabRef", ".bib");
+        file.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF8");
+        try {
+            writer.write("@string{me = {Ed von Test}}\n@article{test,author=me,title={T\u00e4st}}");
+        } finally {
+            writer.close();
+        }
+
+        ParserResult result = BibtexParser.parse(file, "UTF8");
+
+        Collection<BibtexEntry> c = result.getDatabase().getEntries();
+        Assert.assertEquals(1, c.size());
+        Assert.assertEquals(1, result.getDatabase().getStringCount());
+
+        BibtexEntry e = c.iterator().next();
+        Assert.assertEquals("test", e.getCiteKey());
+        Assert.assertEquals("#me#", e.getField("author"));
+        Assert.assertEquals("T\u00e4st", e.getField("title"));
+    }
+}
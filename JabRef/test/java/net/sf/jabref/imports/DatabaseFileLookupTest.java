@@ -4,6 +4,8 @@ import net.sf.jabref.BibtexDatabase;
 import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.FindUnlinkedFilesDialog;
 import net.sf.jabref.FindUnlinkedFilesDialog.CheckableTreeNode;
+import net.sf.jabref.Globals;
+import net.sf.jabref.IdGenerator;
 import net.sf.jabref.JabRefPreferences;
 import net.sf.jabref.external.ExternalFileType;
 import net.sf.jabref.gui.FileListEntry;
@@ -57,6 +59,34 @@ public class DatabaseFileLookupTest {
         Assert.assertNotNull(entry2);
     }
 
+    @Test
+    public void testLookupLinkedFiles() throws Exception {
+        Globals.prefs = JabRefPreferences.getInstance();
+        File directory = File.createTempFile("jabref", "lookup");
+        directory.delete();
+        directory.mkdir();
+        File linked = new File(directory, "linked.pdf");
+        File unlinked = new File(directory, "unlinked.pdf");
+        linked.createNewFile();
+        unlinked.createNewFile();
+        try {
+            BibtexEntry entry = new BibtexEntry(IdGenerator.next());
+            entry.setField("file", ":linked.pdf:PDF");
+            BibtexDatabase linkingDatabase = new BibtexDatabase();
+            linkingDatabase.insertEntry(entry);
+
+            DatabaseFileLookup lookup = new DatabaseFileLookup(linkingDatabase,
+                    new String[] {directory.getPath()});
+            Assert.assertTrue(lookup.lookupDatabase(linked));
+            Assert.assertTrue(lookup.lookupDatabase(new File(directory, "../" + directory.getName() + "/linked.pdf")));
+            Assert.assertFalse(lookup.lookupDatabase(unlinked));
+        } finally {
+            linked.delete();
+            unlinked.delete();
+            directory.delete();
+        }
+    }
+
     @Test
     @Ignore
     public void testInsertTestData() throws Exception {
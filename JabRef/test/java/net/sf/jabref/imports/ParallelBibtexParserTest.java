@@ -0,0 +1,106 @@
+package net.sf.jabref.imports;
+
+import net.sf.jabref.BibtexEntry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+public class ParallelBibtexParserTest {
+
+    private static ParserResult parseInChunks(String bibtex, int chunks) throws IOException {
+        char[] content = new char[BibtexParser.getContentStart() + bibtex.length()];
+        bibtex.getChars(0, bibtex.length(), content, BibtexParser.getContentStart());
+        return ParallelBibtexParser.parse(content, content.length, chunks);
+    }
+
+    private static String createBibtex() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("% This file was created with JabRef 2.10.\n% Encoding: UTF8\n\n");
+        sb.append("@preamble{{first}}\n\n");
+        sb.append("@string{me = {Ed von Test}}\n\n");
+        for (int i = 0; i < 500; i++) {
+            sb.append("@article{key").append(i % 450).append(",\n  author = me,\n  title = {Title {").append(i)
+                    .append("} @ home},\n  crossref = {key").append((i + 1) % 450).append("}\n}\n\n");
+            if (i == 250) {
+                sb.append("@string{me = {Someone Else}}\n\n");
+                sb.append("@preamble{{second}}\n\n");
+                sb.append("@misc{,\n  title = {No key}\n}\n\n");
+            }
+        }
+        sb.append("@comment{jabref-meta: selector_keywords:a;b;}\n\n");
+        return sb.toString();
+    }
+
+    @Test
+    public void testSameResultAsSequentialParser() throws IOException {
+        String bibtex = createBibtex();
+        ParserResult expected = BibtexParser.parse(new StringReader(bibtex));
+        ParserResult actual = parseInChunks(bibtex, 16);
+
+        Assert.assertEquals(expected.getDatabase().getEntryCount(), actual.getDatabase().getEntryCount());
+        Assert.assertEquals(expected.getDatabase().getStringCount(), actual.getDatabase().getStringCount());
+        Assert.assertEquals(expected.getDatabase().getPreamble(), actual.getDatabase().getPreamble());
+        Assert.assertEquals(expected.getJabrefVersion(), actual.getJabrefVersion());
+        Assert.assertTrue(Arrays.equals(expected.getDuplicateKeys(), actual.getDuplicateKeys()));
+        Assert.assertTrue(Arrays.equals(expected.warnings(), actual.warnings()));
+        Assert.assertEquals(expected.getMetaData().getData("selector_keywords"),
+                actual.getMetaData().getData("selector_keywords"));
+
+        for (BibtexEntry entry : expected.getDatabase().getEntries()) {
+            if ((entry.getCiteKey() == null)
+                    || Arrays.asList(expected.getDuplicateKeys()).contains(entry.getCiteKey())) {
+                continue;
+            }
+            BibtexEntry other = actual.getDatabase().getEntryByKey(entry.getCiteKey());
+            Assert.assertNotNull(other);
+            Assert.assertEquals(entry.getAllFields(), other.getAllFields());
+        }
+    }
+
+    @Test
+    public void testSingleChunk() throws IOException {
+        ParserResult result = parseInChunks("@article{test,author={Ed von Test}}", 4);
+
+        Assert.assertEquals(1, result.getDatabase().getEntryCount());
+        Assert.assertEquals("Ed von Test", result.getDatabase().getEntryByKey("test").getField("author"));
+    }
+
+    @Test
+    public void testEmptyInput() throws IOException {
+        ParserResult result = parseInChunks("", 4);
+
+        Assert.assertEquals(0, result.getDatabase().getEntryCount());
+    }
+
+    @Test
+    public void testNoSplitInsideParenthesizedEntry() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            sb.append("@article(paren").append(i).append(",\n  note = \"see\n@misc{inner").append(i)
+                    .append(", title = {x}}\"\n)\n\n");
+        }
+        ParserResult result = parseInChunks(sb.toString(), 16);
+
+        Assert.assertEquals(50, result.getDatabase().getEntryCount());
+        Assert.assertNull(result.getDatabase().getEntryByKey("inner7"));
+        Assert.assertTrue(result.getDatabase().getEntryByKey("paren7").getField("note").contains("@misc"));
+    }
+
+    @Test
+    public void testStrayBraceBetweenEntries() throws IOException {
+        StringBuilder sb = new StringBuilder("Free text with an unbalanced { brace.\n\n");
+        for (int i = 0; i < 50; i++) {
+            sb.append("@book{book").append(i).append(",\n  title = {Part ").append(i).append("}\n}\n\n");
+        }
+        String bibtex = sb.toString();
+        ParserResult expected = BibtexParser.parse(new StringReader(bibtex));
+        ParserResult actual = parseInChunks(bibtex, 16);
+
+        Assert.assertEquals(expected.getDatabase().getEntryCount(), actual.getDatabase().getEntryCount());
+        Assert.assertEquals("Part 49", actual.getDatabase().getEntryByKey("book49").getField("title"));
+    }
+}
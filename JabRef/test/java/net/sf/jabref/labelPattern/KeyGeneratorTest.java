@@ -0,0 +1,82 @@
+package net.sf.jabref.labelPattern;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.MetaData;
+import net.sf.jabref.imports.BibtexParser;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyGeneratorTest {
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    private static MetaData makeMetaData() {
+        LabelPattern pattern = new LabelPattern(Globals.prefs.getKeyPattern());
+        pattern.addLabelPattern("article", "[auth:lower][year]");
+        MetaData metaData = new MetaData();
+        metaData.setLabelPattern(pattern);
+        return metaData;
+    }
+
+    private static List<BibtexEntry> fillDatabase(BibtexDatabase database, int count) throws Exception {
+        List<BibtexEntry> entries = new ArrayList<BibtexEntry>();
+        for (int i = 0; i < count; i++) {
+            BibtexEntry entry = BibtexParser.singleFromString("@ARTICLE{old" + i + ", author={Simon "
+                    + ((i % 3) == 0 ? "Holland" : "Herland") + "}, year={" + (2000 + (i % 2)) + "}}");
+            database.insertEntry(entry);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    @Test
+    public void testBatchMatchesOneByOne() throws Exception {
+        // enough entries to expand the keys in parallel
+        int count = 1200;
+        BibtexDatabase batchDatabase = new BibtexDatabase();
+        List<BibtexEntry> batchEntries = fillDatabase(batchDatabase, count);
+        List<String> keys = new KeyGenerator(makeMetaData(), batchDatabase).generateKeys(batchEntries);
+
+        BibtexDatabase database = new BibtexDatabase();
+        List<BibtexEntry> entries = fillDatabase(database, count);
+        MetaData metaData = makeMetaData();
+        for (BibtexEntry entry : entries) {
+            database.setCiteKeyForEntry(entry.getId(), null);
+        }
+        for (BibtexEntry entry : entries) {
+            LabelPatternUtil.makeLabel(metaData, database, entry);
+        }
+
+        Assert.assertEquals(count, keys.size());
+        Assert.assertEquals(count, new HashSet<String>(keys).size());
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(entries.get(i).getCiteKey(), keys.get(i));
+        }
+        Assert.assertTrue(keys.get(0).startsWith("holland2000"));
+        // the database is left alone
+        Assert.assertEquals("old0", batchEntries.get(0).getCiteKey());
+    }
+
+    @Test
+    public void testKeepsOwnKey() throws Exception {
+        BibtexDatabase database = new BibtexDatabase();
+        List<BibtexEntry> entries = fillDatabase(database, 1);
+        KeyGenerator generator = new KeyGenerator(makeMetaData(), database);
+        String key = generator.makeKey(entries.get(0));
+        database.setCiteKeyForEntry(entries.get(0).getId(), key);
+
+        Assert.assertEquals(key, new KeyGenerator(makeMetaData(), database).makeKey(entries.get(0)));
+    }
+}
@@ -0,0 +1,107 @@
+package net.sf.jabref.search;
+
+import net.sf.jabref.*;
+import net.sf.jabref.search.rules.ContainBasedSearchRule;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+
+public class SearchIndexTest {
+
+    private BibtexDatabase database;
+    private BibtexEntry shields;
+    private BibtexEntry miller;
+
+    @Before
+    public void setUp() throws KeyCollisionException {
+        Globals.prefs = JabRefPreferences.getInstance();
+
+        database = new BibtexDatabase();
+        shields = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.INCOLLECTION);
+        shields.setField("title", "Marine finfish larviculture in {E}urope");
+        shields.setField("author", "Kevin Shields");
+        database.insertEntry(shields);
+
+        miller = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        miller.setField("title", "The \\emph{magical} number seven");
+        miller.setField("author", "George A. Miller");
+        database.insertEntry(miller);
+    }
+
+    @Test
+    public void testCandidatesContainAllMatches() {
+        SearchIndex index = database.getSearchIndex();
+
+        Set<BibtexEntry> candidates = index.getEntriesContainingAll(Arrays.asList("larvi", "europe"));
+        Assert.assertTrue(candidates.contains(shields));
+        Assert.assertFalse(candidates.contains(miller));
+
+        // LaTeX commands are indexed with and without the commands removed:
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("magical number")).contains(miller));
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("emph")).contains(miller));
+
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("nowhere")).isEmpty());
+        Assert.assertNull(index.getEntriesContainingAll(Arrays.asList("--")));
+    }
+
+    @Test
+    public void testIndexFollowsChanges() {
+        SearchIndex index = database.getSearchIndex();
+
+        miller.setField("journal", "Psychological Review");
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("psycho")).contains(miller));
+
+        miller.clearField("journal");
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("psycho")).isEmpty());
+
+        database.removeEntry(shields.getId());
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("shields")).isEmpty());
+    }
+
+    @Test
+    public void testIndexFollowsTypeUpdates() throws KeyCollisionException {
+        BibtexEntryType.addOrModifyCustomEntryType(new CustomEntryType("Patchwork",
+                new String[] {"title"}, new String[0]));
+        BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryType.getType("patchwork"));
+        database.insertEntry(entry);
+        SearchIndex index = database.getSearchIndex();
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("patchwork")).contains(entry));
+
+        // the customization is removed, and the entry becomes typeless
+        BibtexEntryType.removeType("patchwork");
+        Assert.assertFalse(entry.updateType());
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("patchwork")).isEmpty());
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("typeless")).contains(entry));
+    }
+
+    @Test
+    public void testContainBasedSearchRuleCandidates() {
+        ContainBasedSearchRule rule = new ContainBasedSearchRule(false);
+
+        Set<BibtexEntry> candidates = rule.getCandidates("MILLER seven", database.getSearchIndex());
+        Assert.assertEquals(1, candidates.size());
+        Assert.assertTrue(candidates.contains(miller));
+        Assert.assertTrue(rule.applyRule("MILLER seven", miller));
+    }
+
+    @Test
+    public void testSubstringsOfWords() {
+        SearchIndex index = database.getSearchIndex();
+
+        // found through the trigrams of the search word
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("viculT")).contains(shields));
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("viculx")).isEmpty());
+        // too short for trigrams
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("ll")).contains(miller));
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("ll")).contains(shields));
+
+        // repeated lookups see changes
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("ycholog")).isEmpty());
+        miller.setField("journal", "Psychological Review");
+        Assert.assertTrue(index.getEntriesContainingAll(Arrays.asList("ycholog")).contains(miller));
+    }
+}
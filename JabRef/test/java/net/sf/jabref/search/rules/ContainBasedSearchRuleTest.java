@@ -1,6 +1,8 @@
 package net.sf.jabref.search.rules;
 
 import net.sf.jabref.*;
+import net.sf.jabref.search.CompilableSearchRule;
+import net.sf.jabref.search.SearchPlan;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -43,6 +45,32 @@ public class ContainBasedSearchRuleTest {
 
     }
 
+    @Test
+    public void testCompiledPlans() {
+        Globals.prefs = JabRefPreferences.getInstance();
+
+        BibtexEntry be = makeBibtexEntry();
+        String[] queries = {"marine 2001 shields", "\"marine larviculture\"", "\"marine [A-Za-z]* larviculture\"",
+                "Marine", "europe kevin", "[unclosed"};
+        CompilableSearchRule[] rules = {new ContainBasedSearchRule(true), new ContainBasedSearchRule(false),
+                new RegexBasedSearchRule(true), new RegexBasedSearchRule(false)};
+
+        for (CompilableSearchRule rule : rules) {
+            for (String query : queries) {
+                SearchPlan plan = rule.compile(query);
+                Assert.assertEquals(rule.applyRule(query, be), plan.matches(be));
+                // Compiled plans are reusable:
+                Assert.assertEquals(rule.applyRule(query, be), plan.matches(be));
+            }
+        }
+
+        GrammarBasedSearchRule grammarRule = new GrammarBasedSearchRule(false, false);
+        Assert.assertTrue(grammarRule.compile("title = marine and not author = smith").matches(be));
+        Assert.assertFalse(grammarRule.compile("title = marine and author = smith").matches(be));
+        Assert.assertTrue(grammarRule.compile("entrytype = incollection").matches(be));
+        Assert.assertTrue(grammarRule.compile("journal != anything").matches(be));
+    }
+
     public BibtexEntry makeBibtexEntry() {
         BibtexEntry e = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.INCOLLECTION);
         e.setField("title", "Marine finfish larviculture in Europe");
@@ -0,0 +1,90 @@
+package net.sf.jabref.sql.exporter;
+
+import java.util.Collections;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.imports.BibtexParser;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DBChangeTrackerTest {
+
+    private BibtexDatabase database;
+
+    private DBChangeTracker tracker;
+
+    private BibtexEntry codd;
+
+    private BibtexEntry gray;
+
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+
+        database = new BibtexDatabase();
+        tracker = new DBChangeTracker();
+        database.addDatabaseChangeListener(tracker);
+
+        codd = BibtexParser.singleFromString("@article{Codd1970, author = {E. F. Codd},"
+                + " title = {A Relational Model of Data for Large Shared Data Banks}, year = {1970}}");
+        gray = BibtexParser.singleFromString("@inproceedings{Gray1981, author = {Jim Gray},"
+                + " title = {The Transaction Concept: Virtues and Limitations}, year = {1981}}");
+        database.insertEntry(codd);
+        database.insertEntry(gray);
+    }
+
+    @Test
+    public void testRemovalAndUndoAreTracked() {
+        Assert.assertEquals(2, tracker.getChangedEntries().size());
+
+        database.removeEntry(gray.getId());
+        Assert.assertEquals(Collections.singletonList(codd), tracker.getChangedEntries());
+        Assert.assertEquals(Collections.singleton(gray.getId()), tracker.getRemovedEntries());
+
+        // undoing the removal adds the entry again, with the same id
+        database.insertEntry(gray);
+        Assert.assertEquals(2, tracker.getChangedEntries().size());
+        Assert.assertTrue(tracker.getRemovedEntries().isEmpty());
+    }
+
+    @Test
+    public void testChangesDuringExportAreKept() {
+        long stamp = tracker.getStamp();
+        // both happen while the export is running
+        codd.setField("journal", "Communications of the ACM");
+        database.removeEntry(gray.getId());
+        tracker.exported(stamp, "postgresql://localhost/jabref/library", 1, "(all)",
+                Collections.singleton("1:1"));
+
+        Assert.assertEquals(Collections.singletonList(codd), tracker.getChangedEntries());
+        Assert.assertEquals(Collections.singleton(gray.getId()), tracker.getRemovedEntries());
+        Assert.assertEquals("postgresql://localhost/jabref/library", tracker.getTarget());
+        Assert.assertEquals(Collections.singleton("1:1"), tracker.getAssignments());
+
+        // the next export forgets them
+        tracker.exported(tracker.getStamp(), "postgresql://localhost/jabref/library", 1, "(all)",
+                Collections.<String> emptySet());
+        Assert.assertTrue(tracker.getChangedEntries().isEmpty());
+        Assert.assertTrue(tracker.getRemovedEntries().isEmpty());
+    }
+
+    @Test
+    public void testResetForcesFullExport() {
+        tracker.exported(tracker.getStamp(), "mysql://localhost/jabref", 3, "(all)",
+                Collections.singleton("2:5"));
+        codd.setField("year", "1969");
+
+        tracker.reset();
+        Assert.assertNull(tracker.getTarget());
+        Assert.assertNull(tracker.getGroupsSignature());
+        Assert.assertTrue(tracker.getAssignments().isEmpty());
+        // the changes themselves are still known
+        Assert.assertEquals(Collections.singletonList(codd), tracker.getChangedEntries());
+    }
+}